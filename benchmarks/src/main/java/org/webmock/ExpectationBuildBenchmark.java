@@ -0,0 +1,48 @@
+package org.webmock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long MockHTTPServerBuilder takes to turn its expectations into something a server can match against, as the number of expectations grows
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpectationBuildBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	public int expectations;
+
+	@Param({"1", "100"})
+	public int invocationsPerExpectation;
+
+	@Param({"jmock", "indexed"})
+	public String engine;
+
+	@Benchmark
+	public Object build() {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder();
+		for (int expectation = 0; expectation < expectations; expectation++) {
+			builder.createNewExpectation().withExpectedURI("/resource/" + expectation).willReturn("body " + expectation).willBeInvoked(invocationsPerExpectation);
+		}
+		if (engine.equals("indexed")) {
+			return builder.withIndexedMatching().compileExpectations();
+		}
+		builder.setUpExpectations();
+		return builder.getContext();
+	}
+}
@@ -0,0 +1,81 @@
+package org.webmock;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A GET request handed straight to MockHTTPServer.serve so matching can be measured without a socket
+ */
+class FakeSession implements NanoHTTPD.IHTTPSession {
+	private final String uri;
+	private final Map<String, String> headers = new HashMap<>();
+	private final Map<String, List<String>> parameters = new HashMap<>();
+
+	FakeSession(String uri) {
+		this.uri = uri;
+	}
+
+	@Override
+	public void execute() {
+	}
+
+	@Override
+	public NanoHTTPD.CookieHandler getCookies() {
+		return null;
+	}
+
+	@Override
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return new ByteArrayInputStream(new byte[0]);
+	}
+
+	@Override
+	public NanoHTTPD.Method getMethod() {
+		return NanoHTTPD.Method.GET;
+	}
+
+	@Override
+	@Deprecated
+	public Map<String, String> getParms() {
+		return new HashMap<>();
+	}
+
+	@Override
+	public Map<String, List<String>> getParameters() {
+		return parameters;
+	}
+
+	@Override
+	public String getQueryParameterString() {
+		return null;
+	}
+
+	@Override
+	public String getUri() {
+		return uri;
+	}
+
+	@Override
+	public void parseBody(Map<String, String> files) {
+	}
+
+	@Override
+	public String getRemoteIpAddress() {
+		return "127.0.0.1";
+	}
+
+	@Override
+	public String getRemoteHostName() {
+		return "localhost";
+	}
+}
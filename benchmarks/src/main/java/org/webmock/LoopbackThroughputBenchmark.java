@@ -0,0 +1,90 @@
+package org.webmock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webmock.server.MockHTTPServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end requests against a running MockHTTPServer over loopback, reported as throughput and as a latency distribution
+ * at several client concurrency levels. HttpURLConnection keeps connections alive between requests of the same thread
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoopbackThroughputBenchmark {
+	private static final int PORT = 17667;
+
+	@Param({"jmock", "indexed"})
+	public String engine;
+
+	@Param({"1000"})
+	public int expectations;
+
+	private MockHTTPServer server;
+	private URL url;
+
+	@Setup(Level.Trial)
+	public void startServer() throws IOException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder();
+		if (engine.equals("indexed")) {
+			builder.withIndexedMatching();
+		}
+		for (int expectation = 0; expectation < expectations; expectation++) {
+			builder.createNewExpectation().withExpectedURI("/resource/" + expectation).willReturn("body " + expectation).allowing();
+		}
+		server = builder.build(PORT);
+		url = new URL("http://localhost:" + PORT + "/resource/" + (expectations / 2));
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServer() {
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int oneClient() throws IOException {
+		return get();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public int eightClients() throws IOException {
+		return get();
+	}
+
+	@Benchmark
+	@Threads(64)
+	public int sixtyFourClients() throws IOException {
+		return get();
+	}
+
+	private int get() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try (InputStream body = connection.getInputStream()) {
+			body.readAllBytes();
+		}
+		return connection.getResponseCode();
+	}
+}
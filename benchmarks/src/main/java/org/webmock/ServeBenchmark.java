@@ -0,0 +1,72 @@
+package org.webmock;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webmock.server.MockHTTPServer;
+import org.webmock.server.MockeryRequestDispatcher;
+import org.webmock.server.RequestDispatcher;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of matching one request in MockHTTPServer.serve as the number of expectations grows, measured without a socket.
+ * The request asks for the last expectation registered, the worst case for a linear scan
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServeBenchmark {
+	private static final int PORT = 17666;
+
+	@Param({"10", "1000", "10000"})
+	public int expectations;
+
+	@Param({"jmock", "indexed"})
+	public String engine;
+
+	private MockHTTPServer server;
+	private FakeSession session;
+
+	@Setup(Level.Trial)
+	public void startServer() throws IOException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder();
+		for (int expectation = 0; expectation < expectations; expectation++) {
+			builder.createNewExpectation().withExpectedURI("/resource/" + expectation).willReturn("body " + expectation).allowing();
+		}
+		RequestDispatcher dispatcher;
+		if (engine.equals("indexed")) {
+			dispatcher = builder.withIndexedMatching().compileExpectations();
+		} else {
+			builder.setUpExpectations();
+			dispatcher = new MockeryRequestDispatcher(builder.getRequestHandler(), builder.getContext());
+		}
+		server = MockHTTPServer.startServer(PORT, dispatcher);
+		session = new FakeSession("/resource/" + (expectations - 1));
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServer() {
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Benchmark
+	public NanoHTTPD.Response serve() {
+		return server.serve(session);
+	}
+}
@@ -0,0 +1,64 @@
+package org.webmock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webmock.server.MockHTTPServer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost a test pays to get a server with its expectations and to verify it, building and stopping a server per test
+ * against resetting one server that stays bound
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerResetBenchmark {
+	private MockHTTPServer server;
+
+	@Setup(Level.Trial)
+	public void start() throws IOException {
+		server = new MockHTTPServerBuilder().withIndexedMatching().buildOnEphemeralPort();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Benchmark
+	public MockHTTPServer buildAndStop() throws IOException {
+		MockHTTPServer built = expectations().buildOnEphemeralPort();
+		built.assertThatAllExpectationsAreMet();
+		return built;
+	}
+
+	@Benchmark
+	public MockHTTPServer reset() throws IOException {
+		MockHTTPServer reset = expectations().resetServer(server);
+		reset.verify();
+		return reset;
+	}
+
+	private static MockHTTPServerBuilder expectations() {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		for (int expectation = 0; expectation < 10; expectation++) {
+			builder.createNewExpectation().withExpectedURI("/resource/" + expectation).willReturn("body " + expectation).allowing();
+		}
+		return builder;
+	}
+}
@@ -0,0 +1,59 @@
+package org.webmock.server;
+
+import org.hamcrest.Matchers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of matching a request body as the payload grows, the fragments sit at the end of the body so the whole payload is scanned.
+ * Every invocation matches a fresh RequestBody so decoding the text is part of the Hamcrest cost as it is when serving
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BodyMatchingBenchmark {
+
+	@Param({"1024", "65536", "1048576"})
+	public int payloadSize;
+
+	private byte[] payload;
+	private BodyMatcher containing;
+	private BodyMatcher hamcrest;
+
+	@Setup(Level.Trial)
+	public void createPayload() {
+		byte[] tail = "\"id\":42,\"name\":\"bob\"}".getBytes(StandardCharsets.UTF_8);
+		payload = new byte[Math.max(payloadSize, tail.length)];
+		Arrays.fill(payload, (byte) 'a');
+		System.arraycopy(tail, 0, payload, payload.length - tail.length, tail.length);
+		containing = BodyMatchers.containing("\"id\":42", "\"name\":\"bob\"");
+		hamcrest = BodyMatchers.matching(Matchers.allOf(Matchers.containsString("\"id\":42"), Matchers.containsString("\"name\":\"bob\"")));
+	}
+
+	@Benchmark
+	public boolean ahoCorasick() {
+		return containing.matches(new RequestBody(payload, payload.length, StandardCharsets.UTF_8, null));
+	}
+
+	@Benchmark
+	public boolean hamcrestContainsString() {
+		return hamcrest.matches(new RequestBody(payload, payload.length, StandardCharsets.UTF_8, null));
+	}
+}
@@ -0,0 +1,64 @@
+package org.webmock.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a replaying server takes to map a capture and index its interactions as the capture grows
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CaptureLoadBenchmark {
+
+	@Param({"1000", "100000"})
+	public int interactions;
+
+	private Path capture;
+
+	@Setup(Level.Trial)
+	public void record() throws IOException {
+		capture = Files.createTempFile("benchmark", ".capture");
+		Files.delete(capture);
+		try (CaptureWriter writer = CaptureWriter.open(capture)) {
+			for (int interaction = 0; interaction < interactions; interaction++) {
+				Map<String, List<String>> params = Map.of("id", List.of(Integer.toString(interaction)));
+				byte[] body = ("{\"id\":" + interaction + "}").getBytes(StandardCharsets.UTF_8);
+				writer.append(new MockRequest("GET", "/resource/" + interaction % 100, new HashMap<>(), params, (String) null), 200, "application/json", body);
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		Files.delete(capture);
+	}
+
+	@Benchmark
+	public RequestDispatcher load() {
+		return new IndexedRequestDispatcher(CaptureFile.load(capture, 0));
+	}
+}
@@ -0,0 +1,66 @@
+package org.webmock.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and matching one request of a keep-alive connection, matched against the slices of the parsed head or after building the
+ * header and parameter maps as a NanoHTTPD session does. Run with -prof gc to compare the bytes allocated per request
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestParsingBenchmark {
+	private static final byte[] REQUEST = ("GET /orders?id=42&page=2 HTTP/1.1\r\nHost: localhost\r\nAccept: application/json\r\n"
+			+ "User-Agent: benchmark\r\nAccept-Encoding: gzip\r\nX-Correlation-Id: 7f1c2a\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+	private HttpRequestParser parser;
+	private ExpectationIndex index;
+	private ByteBuffer in;
+
+	@Setup(Level.Trial)
+	public void createParser() {
+		parser = new HttpRequestParser(8192, 1024);
+		index = new ExpectationIndex(List.of(
+				new CompiledExpectation(0, "GET", "/orders", null, List.of(HeaderPredicate.equalTo("accept", "application/json")),
+						Map.of("id", List.of("42"), "page", List.of("2")), null, Cardinality.allowing(), new MockResponse(200, ""))));
+		in = ByteBuffer.wrap(REQUEST);
+	}
+
+	@Benchmark
+	public CompiledExpectation sliced() throws HttpParseException {
+		EngineRequest request = parse();
+		return index.select(new MockRequest(request.getMethod(), request.getUri(), request.getHead(), null));
+	}
+
+	@Benchmark
+	public CompiledExpectation materialized() throws HttpParseException {
+		EngineRequest request = parse();
+		return index.select(new MockRequest(request.getMethod(), request.getUri(), Map.copyOf(request.getHeaders()), Map.copyOf(request.getHead().parameters()), (RequestBody) null));
+	}
+
+	private EngineRequest parse() throws HttpParseException {
+		parser.reset();
+		in.rewind();
+		parser.feed(in);
+		return parser.toRequest(1);
+	}
+}
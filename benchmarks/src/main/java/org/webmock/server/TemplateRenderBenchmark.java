@@ -0,0 +1,63 @@
+package org.webmock.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of rendering a response template per request and of answering the same request from a ResponseCache instead,
+ * run with -prof gc to see the allocation per render
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateRenderBenchmark {
+	private ResponseTemplate placeholders;
+	private ResponseTemplate script;
+	private MockRequest request;
+	private ResponseCache cache;
+
+	@Setup(Level.Trial)
+	public void compileTemplates() {
+		placeholders = ResponseTemplate.compile("{\"id\":{{path.id}},\"correlation\":\"{{header.x-correlation-id}}\",\"page\":{{query.page}},\"status\":\"shipped\"}", "application/json");
+		script = ResponseTemplate.compile("{\"id\":{{path.id}},\"next\":{{script: path.get('id') * 1 + 1}}}", "application/json");
+		request = new MockRequest("GET", "/orders/42", Map.of("x-correlation-id", "c-42"), Map.of("page", List.of("3")), (String) null);
+		request.setPathVariables(Map.of("id", "42"));
+		cache = new ResponseCache(1024 * 1024);
+	}
+
+	@Benchmark
+	public long placeholders() {
+		return placeholders.forRequest(request).getLength();
+	}
+
+	@Benchmark
+	public long script() {
+		return script.forRequest(request).getLength();
+	}
+
+	@Benchmark
+	public long cachedPlaceholders() {
+		return placeholders.forRequest(request, cache).getLength();
+	}
+
+	@Benchmark
+	public long cachedScript() {
+		return script.forRequest(request, cache).getLength();
+	}
+}
@@ -0,0 +1,162 @@
+package org.webmock;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a JSON expectation file into RequestExpectations one expectation at a time, eg
+ * <pre>
+ * {"expectations": [
+ *   {"uri": "/users", "params": {"id": ["7"]}, "status": 200, "contentType": "application/json", "bodyFile": "users/7.json"},
+ *   {"uri": "/users", "bodyContaining": ["\"name\":\"alice\""], "times": 1, "status": 201, "body": "created"}
+ * ]}
+ * </pre>
+ * "uriTemplate" or "uriMatching" can take the place of "uri". An expectation may be met any number of times unless it gives "times", "atLeast" or "atMost".
+ * A "bodyFile" is resolved against the directory of the expectation file and only memory mapped when the endpoint is first requested,
+ * its Content-Type is taken from its extension unless "contentType" is given. A "bodyTemplate" is a ResponseTemplate rendered for each request. "delayMillis" and "bytesPerSecond" shape the response.
+ * "scenario" with "requiredState" and "newState" or "sequence" order the expectation as RequestExpectation.inScenario and inSequence do
+ */
+final class ExpectationFile {
+
+	private ExpectationFile() {
+	}
+
+	static void load(Path file, MockHTTPServerBuilder builder) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+			 JsonReader json = new JsonReader(in, file.toString())) {
+			json.beginObject();
+			while (json.hasNext()) {
+				String name = json.nextName();
+				if (!name.equals("expectations")) {
+					throw json.syntaxError("unknown property " + name);
+				}
+				json.beginArray();
+				while (json.hasNext()) {
+					readExpectation(json, directory, builder.createNewExpectation());
+				}
+				json.endArray();
+			}
+			json.endObject();
+			json.peek();
+		}
+	}
+
+	private static void readExpectation(JsonReader json, Path directory, RequestExpectation expectation) throws IOException {
+		int status = 200;
+		String body = null;
+		String bodyFile = null;
+		String bodyTemplate = null;
+		String contentType = null;
+		expectation.allowing();
+		json.beginObject();
+		while (json.hasNext()) {
+			String name = json.nextName();
+			switch (name) {
+				case "uri":
+					expectation.withExpectedURI(json.nextString());
+					break;
+				case "uriTemplate":
+					expectation.withUriTemplate(json.nextString());
+					break;
+				case "uriMatching":
+					expectation.withUriMatching(json.nextString());
+					break;
+				case "params":
+					json.beginObject();
+					while (json.hasNext()) {
+						String param = json.nextName();
+						expectation.withExpectedParam(param, readStrings(json));
+					}
+					json.endObject();
+					break;
+				case "bodyContaining":
+					expectation.withBodyContaining(readStrings(json).toArray(new String[0]));
+					break;
+				case "times":
+					expectation.willBeInvoked(json.nextInt());
+					break;
+				case "atLeast":
+					expectation.atLeast(json.nextInt());
+					break;
+				case "atMost":
+					expectation.atMost(json.nextInt());
+					break;
+				case "status":
+					status = json.nextInt();
+					break;
+				case "body":
+					body = json.nextString();
+					break;
+				case "bodyTemplate":
+					bodyTemplate = json.nextString();
+					break;
+				case "bodyFile":
+					bodyFile = json.nextString();
+					break;
+				case "contentType":
+					contentType = json.nextString();
+					break;
+				case "delayMillis":
+					expectation.withFixedDelay(Duration.ofMillis(json.nextLong()));
+					break;
+				case "bytesPerSecond":
+					expectation.withBandwidthLimit(json.nextLong());
+					break;
+				case "scenario":
+					expectation.inScenario(json.nextString());
+					break;
+				case "requiredState":
+					expectation.whenScenarioStateIs(json.nextString());
+					break;
+				case "newState":
+					expectation.willSetStateTo(json.nextString());
+					break;
+				case "sequence":
+					expectation.inSequence(json.nextString());
+					break;
+				default:
+					throw json.syntaxError("unknown property " + name);
+			}
+		}
+		if ((body != null ? 1 : 0) + (bodyFile != null ? 1 : 0) + (bodyTemplate != null ? 1 : 0) > 1) {
+			throw json.syntaxError("an expectation can have only one of a body, a bodyFile or a bodyTemplate");
+		}
+		json.endObject();
+		if (bodyTemplate != null) {
+			expectation.willReturnTemplate(bodyTemplate, contentType != null ? contentType : NanoHTTPD.MIME_HTML + "; charset=UTF-8", status);
+		} else if (bodyFile != null) {
+			Path resolved = directory.resolve(bodyFile);
+			expectation.willReturnFileOnFirstRequest(resolved, contentType != null ? contentType : NanoHTTPD.getMimeTypeForFile(resolved.getFileName().toString()), status);
+		} else if (body != null && contentType != null) {
+			expectation.willReturn(body.getBytes(StandardCharsets.UTF_8), contentType, status);
+		} else {
+			expectation.willReturn(body == null ? "" : body, status);
+		}
+	}
+
+	/**
+	 * @return the strings of an array or a single string as a list
+	 */
+	private static List<String> readStrings(JsonReader json) throws IOException {
+		List<String> strings = new ArrayList<>();
+		if (json.peek() == JsonReader.Token.STRING) {
+			strings.add(json.nextString());
+			return strings;
+		}
+		json.beginArray();
+		while (json.hasNext()) {
+			strings.add(json.nextString());
+		}
+		json.endArray();
+		return strings;
+	}
+}
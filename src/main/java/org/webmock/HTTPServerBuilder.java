@@ -9,7 +9,7 @@ public interface HTTPServerBuilder<S> {
     /**
      * This is used to Start the Http Server with the Configured Expectation on the port specified
      *
-     * @param port eg 8080 for normal tomcat emulation
+     * @param port eg 8080 for normal tomcat emulation or 0 for a free port chosen by the operating system
      * @return The Started MockHTTPServer instance;
      * @throws IOException if the Port is in use by other processes
      */
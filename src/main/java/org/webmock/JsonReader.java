@@ -0,0 +1,350 @@
+package org.webmock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A pull parser reading one JSON token at a time, so an expectation file is never held in memory as a tree.
+ * Errors are reported with the line they were found on
+ */
+final class JsonReader implements Closeable {
+	enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+
+	private final Reader in;
+	private final String source;
+	private int[] scopes = new int[16];
+	private int depth = 1;
+	private int line = 1;
+	private int pushedBack = -2;
+	private Token peeked;
+	private String text;
+	private boolean bool;
+
+	/**
+	 * @param in     the JSON, it is not buffered here so it should be a BufferedReader
+	 * @param source the name used for the input in error messages
+	 */
+	JsonReader(Reader in, String source) {
+		this.in = in;
+		this.source = source;
+		scopes[0] = EMPTY_DOCUMENT;
+	}
+
+	Token peek() throws IOException {
+		if (peeked != null) {
+			return peeked;
+		}
+		int c;
+		switch (scopes[depth - 1]) {
+			case EMPTY_ARRAY:
+				scopes[depth - 1] = NONEMPTY_ARRAY;
+				c = nextNonWhitespace();
+				if (c == ']') {
+					return peeked = Token.END_ARRAY;
+				}
+				break;
+			case NONEMPTY_ARRAY:
+				c = nextNonWhitespace();
+				if (c == ']') {
+					return peeked = Token.END_ARRAY;
+				}
+				if (c != ',') {
+					throw syntaxError("expected , or ]");
+				}
+				c = nextNonWhitespace();
+				break;
+			case EMPTY_OBJECT:
+			case NONEMPTY_OBJECT:
+				c = nextNonWhitespace();
+				if (c == '}') {
+					return peeked = Token.END_OBJECT;
+				}
+				if (scopes[depth - 1] == NONEMPTY_OBJECT) {
+					if (c != ',') {
+						throw syntaxError("expected , or }");
+					}
+					c = nextNonWhitespace();
+				}
+				if (c != '"') {
+					throw syntaxError("expected a name");
+				}
+				scopes[depth - 1] = DANGLING_NAME;
+				text = readString();
+				return peeked = Token.NAME;
+			case DANGLING_NAME:
+				if (nextNonWhitespace() != ':') {
+					throw syntaxError("expected :");
+				}
+				scopes[depth - 1] = NONEMPTY_OBJECT;
+				c = nextNonWhitespace();
+				break;
+			case EMPTY_DOCUMENT:
+				scopes[depth - 1] = NONEMPTY_DOCUMENT;
+				c = nextNonWhitespace();
+				break;
+			default:
+				if (nextNonWhitespace() == -1) {
+					return peeked = Token.END_DOCUMENT;
+				}
+				throw syntaxError("expected the end of the document");
+		}
+		return peeked = readValue(c);
+	}
+
+	void beginObject() throws IOException {
+		consume(Token.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	void endObject() throws IOException {
+		consume(Token.END_OBJECT);
+		depth--;
+	}
+
+	void beginArray() throws IOException {
+		consume(Token.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	void endArray() throws IOException {
+		consume(Token.END_ARRAY);
+		depth--;
+	}
+
+	/**
+	 * @return true while the current object or array has more members
+	 */
+	boolean hasNext() throws IOException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	String nextName() throws IOException {
+		consume(Token.NAME);
+		return text;
+	}
+
+	String nextString() throws IOException {
+		consume(Token.STRING);
+		return text;
+	}
+
+	long nextLong() throws IOException {
+		consume(Token.NUMBER);
+		try {
+			return Long.parseLong(text);
+		} catch (NumberFormatException e) {
+			throw syntaxError("expected a whole number but was " + text);
+		}
+	}
+
+	int nextInt() throws IOException {
+		long value = nextLong();
+		if (value != (int) value) {
+			throw syntaxError(value + " is too large");
+		}
+		return (int) value;
+	}
+
+	boolean nextBoolean() throws IOException {
+		consume(Token.BOOLEAN);
+		return bool;
+	}
+
+	/**
+	 * Skips the next value including everything nested in it
+	 */
+	void skipValue() throws IOException {
+		int nested = 0;
+		do {
+			switch (peek()) {
+				case BEGIN_OBJECT:
+					beginObject();
+					nested++;
+					break;
+				case BEGIN_ARRAY:
+					beginArray();
+					nested++;
+					break;
+				case END_OBJECT:
+					endObject();
+					nested--;
+					break;
+				case END_ARRAY:
+					endArray();
+					nested--;
+					break;
+				default:
+					peeked = null;
+			}
+		} while (nested > 0);
+	}
+
+	/**
+	 * @return an error naming the source and the line the parser is on
+	 */
+	IOException syntaxError(String message) {
+		return new IOException(source + ":" + line + " " + message);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private void consume(Token expected) throws IOException {
+		Token token = peek();
+		if (token != expected) {
+			throw syntaxError("expected " + expected + " but was " + token);
+		}
+		peeked = null;
+	}
+
+	private void push(int scope) {
+		if (depth == scopes.length) {
+			scopes = Arrays.copyOf(scopes, depth * 2);
+		}
+		scopes[depth++] = scope;
+	}
+
+	private Token readValue(int c) throws IOException {
+		switch (c) {
+			case '{':
+				return Token.BEGIN_OBJECT;
+			case '[':
+				return Token.BEGIN_ARRAY;
+			case '"':
+				text = readString();
+				return Token.STRING;
+			case 't':
+			case 'f':
+			case 'n':
+				return readLiteral(c);
+			case -1:
+				throw syntaxError("unexpected end of the document");
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					text = readNumber(c);
+					return Token.NUMBER;
+				}
+				throw syntaxError("unexpected character " + (char) c);
+		}
+	}
+
+	private Token readLiteral(int first) throws IOException {
+		StringBuilder literal = new StringBuilder().append((char) first);
+		int c;
+		while ((c = read()) >= 'a' && c <= 'z') {
+			literal.append((char) c);
+		}
+		pushedBack = c;
+		switch (literal.toString()) {
+			case "true":
+				bool = true;
+				return Token.BOOLEAN;
+			case "false":
+				bool = false;
+				return Token.BOOLEAN;
+			case "null":
+				return Token.NULL;
+			default:
+				throw syntaxError("unexpected " + literal);
+		}
+	}
+
+	private String readNumber(int first) throws IOException {
+		StringBuilder number = new StringBuilder().append((char) first);
+		int c;
+		while ((c = read()) == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+			number.append((char) c);
+		}
+		pushedBack = c;
+		return number.toString();
+	}
+
+	private String readString() throws IOException {
+		StringBuilder string = new StringBuilder();
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return string.toString();
+			}
+			if (c == -1 || c == '\n') {
+				throw syntaxError("unterminated string");
+			}
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+					case 'b':
+						string.append('\b');
+						break;
+					case 'f':
+						string.append('\f');
+						break;
+					case 'n':
+						string.append('\n');
+						break;
+					case 'r':
+						string.append('\r');
+						break;
+					case 't':
+						string.append('\t');
+						break;
+					case 'u':
+						char[] hex = new char[4];
+						for (int digit = 0; digit < hex.length; digit++) {
+							hex[digit] = (char) read();
+						}
+						try {
+							string.append((char) Integer.parseInt(new String(hex), 16));
+						} catch (NumberFormatException e) {
+							throw syntaxError("invalid escape \\u" + new String(hex));
+						}
+						break;
+					case '"':
+					case '\\':
+					case '/':
+						string.append((char) c);
+						break;
+					default:
+						throw syntaxError("invalid escape \\" + (char) c);
+				}
+			} else {
+				string.append((char) c);
+			}
+		}
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+		return c;
+	}
+
+	private int read() throws IOException {
+		if (pushedBack != -2) {
+			int c = pushedBack;
+			pushedBack = -2;
+			return c;
+		}
+		int c = in.read();
+		if (c == '\n') {
+			line++;
+		}
+		return c;
+	}
+}
@@ -1,22 +1,60 @@
 package org.webmock;
 
+import org.webmock.server.BoundedPoolAsyncRunner;
+import org.webmock.server.CaptureFile;
+import org.webmock.server.CompiledExpectation;
+import org.webmock.server.HeaderPredicate;
+import org.webmock.server.IndexedRequestDispatcher;
+import org.webmock.server.MismatchListener;
 import org.webmock.server.MockHTTPServer;
+import org.webmock.server.MockeryRequestDispatcher;
+import org.webmock.server.NioServerEngine;
+import org.webmock.server.RecordingRequestDispatcher;
+import org.webmock.server.RequestDispatcher;
 import org.webmock.server.RequestHandler;
+import org.webmock.server.Scenario;
+import org.webmock.server.Sequence;
+import org.webmock.server.ServerEngine;
+import org.webmock.server.ServerConfiguration;
+import org.webmock.server.VirtualHost;
+import org.webmock.server.VirtualHostDispatcher;
+import org.webmock.server.VirtualThreadAsyncRunner;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.lib.concurrent.Synchroniser;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 public class MockHTTPServerBuilder implements HTTPServerBuilder<MockHTTPServer> {
 	private RequestHandler requestHandler;
-	private List<RequestExpectation> requestExpectations = new ArrayList<RequestExpectation>();
+	private List<RequestExpectation> requestExpectations;
 	private Mockery context;
 	private Expectations expectations;
+	private boolean indexedMatching;
+	private String recordingTarget;
+	private Path recordingCapture;
+	private Path replayCapture;
+	private final Map<String, MockHTTPServerBuilder> virtualHosts = new LinkedHashMap<>();
+	private final Map<String, MockHTTPServerBuilder> pathPrefixes = new LinkedHashMap<>();
+	private final ServerConfiguration configuration = new ServerConfiguration();
 
 	public MockHTTPServerBuilder() {
+		newExpectations();
+	}
+
+	/**
+	 * Starts an empty set of expectations in a Mockery of its own, a server already given the previous set keeps it
+	 */
+	private void newExpectations() {
+		this.requestExpectations = new ArrayList<RequestExpectation>();
 		this.context = new Mockery();
 		context.setThreadingPolicy(new Synchroniser());
 		expectations = new Expectations();
@@ -26,8 +64,307 @@ public class MockHTTPServerBuilder implements HTTPServerBuilder<MockHTTPServer>
 
 
 	public MockHTTPServer build(int port) throws IOException {
+		return MockHTTPServer.startServer(port, createDispatcher(), configuration);
+	}
+
+	/**
+	 * Creates the dispatcher of the expectations of this builder and of its virtual hosts, the dispatcher of each virtual host is created by its own builder
+	 */
+	RequestDispatcher createDispatcher() throws IOException {
+		RequestDispatcher dispatcher = createOwnDispatcher();
+		if (virtualHosts.isEmpty() && pathPrefixes.isEmpty()) {
+			return dispatcher;
+		}
+		List<VirtualHost> hosts = new ArrayList<>();
+		for (Map.Entry<String, MockHTTPServerBuilder> host : virtualHosts.entrySet()) {
+			hosts.add(new VirtualHost(host.getKey(), host.getValue().createDispatcher()));
+		}
+		List<VirtualHost> prefixes = new ArrayList<>();
+		for (Map.Entry<String, MockHTTPServerBuilder> prefix : pathPrefixes.entrySet()) {
+			prefixes.add(new VirtualHost(prefix.getKey(), prefix.getValue().createDispatcher()));
+		}
+		return new VirtualHostDispatcher(dispatcher, hosts, prefixes);
+	}
+
+	private RequestDispatcher createOwnDispatcher() throws IOException {
+		if (recordingTarget != null) {
+			if (!requestExpectations.isEmpty()) {
+				throw new IllegalStateException("Expectations are not checked while recording, remove them or replay the capture instead");
+			}
+			return new RecordingRequestDispatcher(recordingTarget, recordingCapture);
+		}
+		if (indexedMatching) {
+			return compileExpectations();
+		}
+		for (RequestExpectation requestExpectation : requestExpectations) {
+			if (requestExpectation.isInScenarioOrSequence()) {
+				throw new IllegalStateException("Scenarios and sequences are only checked with withIndexedMatching()");
+			}
+			if (!requestExpectation.hasExactCardinality()) {
+				throw new IllegalStateException("atLeast, atMost, between and allowing are only checked with withIndexedMatching()");
+			}
+		}
 		setUpExpectations();
-        return MockHTTPServer.startServer(port, this.requestHandler, this.context);
+		return new MockeryRequestDispatcher(this.requestHandler, this.context, checksMethodOrHeaders());
+	}
+
+	/**
+	 * Swaps the expectations of this builder into a server that is already running instead of starting a new one,
+	 * so the tests of a class can share one server and each only pays for compiling its expectations. Only the expectations
+	 * and virtual hosts of this builder are used, the server keeps the configuration it was built with.
+	 * The builder and the builders of its virtual hosts are emptied of the expectations handed over, so the same builder declares
+	 * only the expectations of the next test before the next reset
+	 * example server = new MockHTTPServerBuilder().withIndexedMatching().buildOnEphemeralPort() once, then in each test
+	 * builder.createNewExpectation().withExpectedURI("/users").willReturn("[]"); builder.resetServer(server); ... server.verify();
+	 *
+	 * @param server the running server
+	 * @return the server given
+	 * @throws IOException if a recording capture can not be opened
+	 */
+	public MockHTTPServer resetServer(MockHTTPServer server) throws IOException {
+		server.reset(createDispatcher());
+		clearExpectations();
+		return server;
+	}
+
+	private void clearExpectations() {
+		newExpectations();
+		for (MockHTTPServerBuilder host : virtualHosts.values()) {
+			host.clearExpectations();
+		}
+		for (MockHTTPServerBuilder prefix : pathPrefixes.values()) {
+			prefix.clearExpectations();
+		}
+	}
+
+	/**
+	 * Starts the server on a free port chosen by the operating system so tests can run in parallel without agreeing on ports
+	 *
+	 * @return the started server, its port is given by getListeningPort()
+	 * @throws IOException if no port could be bound
+	 */
+	public MockHTTPServer buildOnEphemeralPort() throws IOException {
+		return build(0);
+	}
+
+	/**
+	 * Forwards every request to the target and appends each request and response to the capture file instead of checking expectations,
+	 * a server built withReplay from the capture answers the same requests without the target
+	 *
+	 * @param target  the base url requests are forwarded to eg http://localhost:8080
+	 * @param capture the file the interactions are appended to
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withRecording(String target, Path capture) {
+		this.recordingTarget = target;
+		this.recordingCapture = capture;
+		return this;
+	}
+
+	/**
+	 * Adds the interactions of a capture recorded withRecording as expectations that may be met any number of times,
+	 * the capture is memory mapped and read in place on build. Replaying uses indexed matching,
+	 * expectations created on this builder take precedence over the recorded ones
+	 *
+	 * @param capture the capture file
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withReplay(Path capture) {
+		this.replayCapture = capture;
+		this.indexedMatching = true;
+		return this;
+	}
+
+	/**
+	 * Creates an expectation for every entry of a JSON expectation file, the file is parsed as a stream and response bodies kept in
+	 * files are only mapped once their endpoint is requested. Combine with withIndexedMatching so building the server stays cheap for large files
+	 * example {"expectations": [{"uri": "/users", "params": {"id": ["7"]}, "contentType": "application/json", "bodyFile": "users/7.json"}]}
+	 *
+	 * @param expectationFile the JSON file, see ExpectationFile for the properties of an expectation
+	 * @return returns this for chaining and readability
+	 * @throws IOException if the file can not be read or is not a valid expectation file
+	 */
+	public MockHTTPServerBuilder loadExpectations(Path expectationFile) throws IOException {
+		ExpectationFile.load(expectationFile, this);
+		return this;
+	}
+
+	/**
+	 * Matches requests against an index of the expectations compiled on build instead of the jMock proxy,
+	 * a request is only compared with the expectations registered for its uri so the cost of a request does not grow with the number of expectations.
+	 * Requests are matched without the jMock Synchroniser so concurrent requests are served in parallel
+	 *
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withIndexedMatching() {
+		this.indexedMatching = true;
+		return this;
+	}
+
+	/**
+	 * Serves the expectations of another builder to the requests whose Host header names the host, so many services can be mocked behind
+	 * the one listener and worker pool of this server. Only the configuration of this builder applies, the server is built from this builder
+	 * and each virtual host is verified on its own with MockHTTPServer.getVirtualHost(host).assertThatAllExpectationsAreMet()
+	 * example new MockHTTPServerBuilder().withVirtualHost("users.local", users).withVirtualHost("billing.local", billing).build(8080);
+	 *
+	 * @param host         the host name without a port, compared ignoring case
+	 * @param expectations the builder holding the expectations of the host
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withVirtualHost(String host, MockHTTPServerBuilder expectations) {
+		virtualHosts.put(host, expectations);
+		return this;
+	}
+
+	/**
+	 * Serves the expectations of another builder to the requests whose uri starts with the prefix, the prefix is removed from the uri
+	 * before it is matched so a client configured with http://localhost:8080/billing as its base url meets the expectations of the service as they are written.
+	 * Requests are routed by Host header before path prefix, the requests of neither are matched against the expectations of this builder
+	 *
+	 * @param pathPrefix   eg /billing, it matches the uri up to a / or the end of the uri
+	 * @param expectations the builder holding the expectations of the service
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withPathPrefix(String pathPrefix, MockHTTPServerBuilder expectations) {
+		pathPrefixes.put(pathPrefix, expectations);
+		return this;
+	}
+
+	/**
+	 * Tunes how long persistent connections are kept open, see MockHTTPServer.getConnectionStatistics() for how well they are reused
+	 *
+	 * @param idleTimeout              how long a connection may wait for its next request before the server closes it
+	 * @param maxRequestsPerConnection the response to this many requests on one connection closes it, 0 for no limit
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withKeepAlive(Duration idleTimeout, int maxRequestsPerConnection) {
+		configuration.withKeepAlive(idleTimeout, maxRequestsPerConnection);
+		return this;
+	}
+
+	/**
+	 * Stops answering at the first request that does not match instead of when the expectations are verified,
+	 * every later request is answered with an internal error and assertThatAllExpectationsAreMet() reports the first mismatch
+	 *
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withFailFast() {
+		configuration.withFailFast();
+		return this;
+	}
+
+	/**
+	 * Fails fast and interrupts the test thread at the first mismatch so a test waiting on it wakes up
+	 * example new MockHTTPServerBuilder().withIndexedMatching().withFailFast(Thread.currentThread())
+	 * verifying, resetting or stopping the server from that thread clears the interrupt
+	 *
+	 * @param testThread the thread interrupted, never one of the server threads
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withFailFast(Thread testThread) {
+		configuration.withFailFast(testThread);
+		return this;
+	}
+
+	/**
+	 * @param mismatchListener told about each request that does not match on the thread serving it
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withMismatchListener(MismatchListener mismatchListener) {
+		configuration.withMismatchListener(mismatchListener);
+		return this;
+	}
+
+	/**
+	 * Keeps the responses rendered from templates so requests carrying the same values for the placeholders of a template are answered without rendering,
+	 * see MockHTTPServer.getResponseCacheStatistics() for the hits, misses and evictions
+	 *
+	 * @param maxBytes the bytes of rendered responses kept, the least recently used are evicted beyond it
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withResponseCache(long maxBytes) {
+		configuration.withResponseCache(maxBytes);
+		return this;
+	}
+
+	/**
+	 * Accepts connections and parses requests on a few non blocking java.nio event loops instead of a NanoHTTPD thread per connection,
+	 * so tens of thousands of keep alive connections can be held open. Only a request being answered takes a worker thread.
+	 * The expectations, metrics and verification are the same as with NanoHTTPD, the worker pool options do not apply
+	 *
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withNioEngine() {
+		return withEngine(NioServerEngine::new);
+	}
+
+	/**
+	 * @param eventLoops the number of selector threads connections are spread across
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withNioEngine(int eventLoops) {
+		return withEngine(() -> new NioServerEngine(eventLoops));
+	}
+
+	/**
+	 * Accepts connections with an engine of your own, see ServerEngine
+	 *
+	 * @param engineFactory creates the engine of each server built
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withEngine(Supplier<? extends ServerEngine> engineFactory) {
+		configuration.withEngine(engineFactory);
+		return this;
+	}
+
+	/**
+	 * Serves connections on a fixed number of worker threads instead of a new thread per connection,
+	 * connections accepted while every worker is busy wait in a queue and are closed once the queue is full
+	 *
+	 * @param workers       the number of worker threads
+	 * @param queueCapacity the number of connections that may wait for a worker
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withBoundedWorkerPool(int workers, int queueCapacity) {
+		configuration.withAsyncRunner(() -> new BoundedPoolAsyncRunner(workers, queueCapacity));
+		return this;
+	}
+
+	/**
+	 * Serves every connection on a virtual thread
+	 *
+	 * @return returns this for chaining and readability
+	 * @throws UnsupportedOperationException when not running on JDK 21 or newer
+	 */
+	public MockHTTPServerBuilder withVirtualThreads() {
+		if (!VirtualThreadAsyncRunner.isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads need JDK 21 or newer, running on " + System.getProperty("java.version"));
+		}
+		configuration.withAsyncRunner(VirtualThreadAsyncRunner::new);
+		return this;
+	}
+
+	/**
+	 * Reads request bodies from the socket into pooled buffers instead of NanoHTTPD temp files so uploads never touch disk,
+	 * bodies larger than the limit are answered with 413 Payload Too Large
+	 *
+	 * @param maxBodySize the largest request body accepted in bytes
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withStreamingRequestBody(int maxBodySize) {
+		configuration.withStreamingRequestBody(maxBodySize);
+		return this;
+	}
+
+	/**
+	 * Answers GET requests for /__admin/metrics with the hit counts, latencies and bytes recorded per expectation as json,
+	 * the same metrics are always available from MockHTTPServer.metrics()
+	 *
+	 * @return returns this for chaining and readability
+	 */
+	public MockHTTPServerBuilder withMetricsEndpoint() {
+		configuration.withMetricsEndpoint(MockHTTPServer.METRICS_PATH);
+		return this;
 	}
 
 	public void setUpExpectations() {
@@ -35,6 +372,10 @@ public class MockHTTPServerBuilder implements HTTPServerBuilder<MockHTTPServer>
 		for (RequestExpectation requestExpectation : requestExpectations) {
 			requestExpectation.initialiseExpectationsForHandler(requestHandler);
 		}
+		if (checksMethodOrHeaders()) {
+			expectations.allowing(requestHandler).method(expectations.with(Expectations.any(String.class)));
+			expectations.allowing(requestHandler).header(expectations.with(Expectations.any(String.class)), expectations.with(Expectations.any(String.class)));
+		}
 		context.checking(expectations);
 
 	}
@@ -56,6 +397,35 @@ public class MockHTTPServerBuilder implements HTTPServerBuilder<MockHTTPServer>
 		return expectation;
 	}
 
+	/**
+	 * The method and exact uri of each expectation become its dispatch key, its header predicates are interned
+	 * so expectations declaring the same header share one predicate. Each scenario and sequence is compiled into one state machine shared by its expectations
+	 */
+	RequestDispatcher compileExpectations() {
+		List<CompiledExpectation> compiled = new ArrayList<>(requestExpectations.size());
+		Map<HeaderPredicate, HeaderPredicate> headerPredicates = new HashMap<>();
+		Map<String, Scenario> scenarios = new HashMap<>();
+		Map<String, Sequence> sequences = new HashMap<>();
+		for (RequestExpectation requestExpectation : requestExpectations) {
+			if (requestExpectation.isExpectingARequest()) {
+				compiled.add(requestExpectation.compile(compiled.size(), headerPredicates, scenarios, sequences));
+			}
+		}
+		if (replayCapture != null) {
+			compiled.addAll(CaptureFile.load(replayCapture, compiled.size()));
+		}
+		return new IndexedRequestDispatcher(compiled);
+	}
+
+	private boolean checksMethodOrHeaders() {
+		for (RequestExpectation requestExpectation : requestExpectations) {
+			if (requestExpectation.checksMethodOrHeaders()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	Mockery getContext() {
 		return context;
 	}
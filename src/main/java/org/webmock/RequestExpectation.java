@@ -1,31 +1,90 @@
 package org.webmock;
 
+import fi.iki.elonen.NanoHTTPD;
+import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matcher;
+import org.jmock.syntax.ReceiverClause;
+import org.webmock.server.Cardinality;
+import org.webmock.server.BodyMatcher;
+import org.webmock.server.BodyMatchers;
+import org.webmock.server.ChunkProducer;
+import org.webmock.server.ByteBufferResponseBody;
+import org.webmock.server.CompiledExpectation;
+import org.webmock.server.HeaderPredicate;
+import org.webmock.server.LatencyDistribution;
+import org.webmock.server.LatencyDistributions;
+import org.webmock.server.LazyResponseBody;
+import org.webmock.server.MappedFileResponseBody;
+import org.webmock.server.MockResponse;
+import org.webmock.server.ResponseBody;
+import org.webmock.server.ResponseTemplate;
+import org.webmock.server.Scenario;
+import org.webmock.server.ScenarioStep;
+import org.webmock.server.Sequence;
+import org.webmock.server.ShapedResponseBody;
+import org.webmock.server.StreamingResponseBody;
+import org.webmock.server.UriPattern;
 import org.webmock.server.RequestHandler;
 import org.jmock.Expectations;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class RequestExpectation {
 
 	private HTTPServerBuilder mockHTTPServerBuilder;
 	private String uri;
-	private int numberTimeExpectationMustBeMet = 1;
+	private UriPattern uriPattern;
+	private Cardinality cardinality = Cardinality.exactly(1);
 	private String returnValue;
+	private Charset charset = StandardCharsets.UTF_8;
+	private Supplier<ResponseBody> binaryReturnValue;
 	private Map<String, List<String>> params = new HashMap<>();
 	private int statusCodeReturned = 200;
 	private Matcher<String> matcher;
-	private String method = "GET";
+	private BodyMatcher bodyMatcher;
+	private String method;
+	private List<HeaderPredicate> headers = new ArrayList<>();
+	private LatencyDistribution latency;
+	private long bandwidthLimit;
+	private String scenario;
+	private String requiredState;
+	private String nextState;
+	private String sequence;
 
 	RequestExpectation(HTTPServerBuilder mockHTTPServerBuilder) {
 		this.mockHTTPServerBuilder = mockHTTPServerBuilder;
 	}
 
 	public RequestExpectation withBodyMatching(Matcher<String> matcher) {
-		this.method="POST";
 		this.matcher = matcher;
+		this.bodyMatcher = BodyMatchers.matching(matcher);
+		return this;
+	}
+
+	/**
+	 * The body must contain every fragment given, with indexed matching the raw body is scanned once for all the fragments without being decoded
+	 * example MockHTTPServerBuilder.createRequestExpectation().withExpectedURI("resource/doSomthing").withBodyContaining("\"id\":1", "\"name\":").getMockHTTPServerBuilder().build(8080);
+	 *
+	 * @param fragments the text that must appear in the body
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withBodyContaining(String... fragments) {
+		List<Matcher<? super String>> containing = new ArrayList<>();
+		for (String fragment : fragments) {
+			containing.add(CoreMatchers.containsString(fragment));
+		}
+		this.matcher = CoreMatchers.allOf(containing);
+		this.bodyMatcher = BodyMatchers.containing(fragments);
 		return this;
 	}
 
@@ -39,6 +98,71 @@ public class RequestExpectation {
 
 	public RequestExpectation withExpectedURI(String uri) {
 		this.uri = uri;
+		this.uriPattern = null;
+		return this;
+	}
+
+	/**
+	 * Matches any uri fitting the template, a {name} matches the text of one path segment and is available from MockRequest.getPathVariables()
+	 * example MockHTTPServerBuilder.createRequestExpectation().withUriTemplate("/orders/{id}/items").getMockHTTPServerBuilder().build(8080);
+	 *
+	 * @param template the path template eg /orders/{id}/items
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withUriTemplate(String template) {
+		return withUriPattern(UriPattern.template(template));
+	}
+
+	/**
+	 * Matches any uri the regular expression matches in full, named groups are available from MockRequest.getPathVariables()
+	 * example MockHTTPServerBuilder.createRequestExpectation().withUriMatching("/orders/(?<id>[0-9]+)").getMockHTTPServerBuilder().build(8080);
+	 *
+	 * @param regex the regular expression
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withUriMatching(String regex) {
+		return withUriPattern(UriPattern.regex(regex));
+	}
+
+	private RequestExpectation withUriPattern(UriPattern uriPattern) {
+		this.uri = null;
+		this.uriPattern = uriPattern;
+		return this;
+	}
+
+	/**
+	 * The request must be made with the method, without it any method is accepted
+	 * example MockHTTPServerBuilder.createRequestExpectation().withExpectedURI("resource/doSomthing").withMethod("DELETE").getMockHTTPServerBuilder().build(8080);
+	 *
+	 * @param method GET, POST, PUT, PATCH, DELETE, HEAD or any other method NanoHTTPD accepts
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withMethod(String method) {
+		this.method = method.toUpperCase(Locale.ROOT);
+		return this;
+	}
+
+	/**
+	 * The request must carry the header with exactly the value given
+	 *
+	 * @param name  the header name, compared ignoring case
+	 * @param value the header value
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withHeader(String name, String value) {
+		this.headers.add(HeaderPredicate.equalTo(name, value));
+		return this;
+	}
+
+	/**
+	 * The value of the header must satisfy the matcher, the matcher is given null when the request does not carry the header
+	 *
+	 * @param name    the header name, compared ignoring case
+	 * @param matcher eg containsString("json")
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withHeader(String name, Matcher<String> matcher) {
+		this.headers.add(HeaderPredicate.matching(name, matcher));
 		return this;
 	}
 
@@ -57,10 +181,112 @@ public class RequestExpectation {
 	}
 
 	/**
+	 * The request must be made exactly the number of times specified
 	 *
+	 * @param numberTimeExpectationMustBeMet the exact number of calls
+	 * @return returns this for chaining and readability
 	 */
 	public RequestExpectation willBeInvoked(int numberTimeExpectationMustBeMet) {
-		this.numberTimeExpectationMustBeMet = numberTimeExpectationMustBeMet;
+		this.cardinality = Cardinality.exactly(numberTimeExpectationMustBeMet);
+		return this;
+	}
+
+	/**
+	 * The request must be made at least the number of times specified and may be made any number of times after that
+	 * Needs withIndexedMatching, see allowing()
+	 *
+	 * @param required the minimum number of calls
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation atLeast(int required) {
+		this.cardinality = Cardinality.atLeast(required);
+		return this;
+	}
+
+	/**
+	 * The request may be made up to the number of times specified
+	 * Needs withIndexedMatching, see allowing()
+	 *
+	 * @param maximum the maximum number of calls
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation atMost(int maximum) {
+		this.cardinality = Cardinality.atMost(maximum);
+		return this;
+	}
+
+	/**
+	 * The request must be made at least required times and no more than maximum times
+	 * Needs withIndexedMatching, see allowing()
+	 *
+	 * @param required the minimum number of calls
+	 * @param maximum  the maximum number of calls
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation between(int required, int maximum) {
+		this.cardinality = Cardinality.between(required, maximum);
+		return this;
+	}
+
+	/**
+	 * The request may be made any number of times including never
+	 * Needs withIndexedMatching: the jMock engine asks the RequestHandler for the response without the uri, so a request would be answered
+	 * by the first expectation that is still open ended rather than the one it matched
+	 *
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation allowing() {
+		this.cardinality = Cardinality.allowing();
+		return this;
+	}
+
+	/**
+	 * The expectation takes part in the scenario, it is only matched while the scenario is in the state given to whenScenarioStateIs
+	 * and moves the scenario to the state given to willSetStateTo. Every scenario starts in Scenario.STARTED, scenarios need withIndexedMatching
+	 * example MockHTTPServerBuilder.createRequestExpectation().withExpectedURI("/cart").inScenario("checkout").whenScenarioStateIs("paid").willReturn("empty").getMockHTTPServerBuilder().build(8080);
+	 *
+	 * @param scenario the name of the scenario, expectations giving the same name share its state
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation inScenario(String scenario) {
+		if (sequence != null) {
+			throw new IllegalStateException("An expectation can be in a scenario or in a sequence but not both, it is in sequence " + sequence);
+		}
+		this.scenario = scenario;
+		return this;
+	}
+
+	/**
+	 * @param state the state the scenario must be in, without it the expectation is matched in any state
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation whenScenarioStateIs(String state) {
+		this.requiredState = state;
+		return this;
+	}
+
+	/**
+	 * @param state the state the scenario moves to each time the expectation is matched
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation willSetStateTo(String state) {
+		this.nextState = state;
+		return this;
+	}
+
+	/**
+	 * Expectations in the same sequence must be met in the order they were created, a request for a later expectation is only matched
+	 * once the earlier ones are satisfied and an earlier expectation is not matched again after it. Sequences need withIndexedMatching
+	 * example MockHTTPServerBuilder.createRequestExpectation().withExpectedURI("/login").inSequence("session").getMockHTTPServerBuilder().createNewExpectation().withExpectedURI("/logout").inSequence("session");
+	 *
+	 * @param sequence the name of the sequence
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation inSequence(String sequence) {
+		if (scenario != null) {
+			throw new IllegalStateException("An expectation can be in a scenario or in a sequence but not both, it is in scenario " + scenario);
+		}
+		this.sequence = sequence;
 		return this;
 	}
 
@@ -85,11 +311,173 @@ public class RequestExpectation {
 	 * @return returns this for chaining and readability
 	 */
 	public RequestExpectation willReturn(String returnValue, int statusCode) {
+		return willReturn(returnValue, StandardCharsets.UTF_8, statusCode);
+	}
+
+	/**
+	 * The return value is encoded with the charset given once when the server is built and the same bytes are sent with every response
+	 *
+	 * @param returnValue the Exact return of the call
+	 * @param charset     the charset used to encode the return value, also sent in the Content-Type
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation willReturn(String returnValue, Charset charset) {
+		return willReturn(returnValue, charset, 200);
+	}
+
+	public RequestExpectation willReturn(String returnValue, Charset charset, int statusCode) {
 		this.returnValue = returnValue;
+		this.charset = charset;
+		this.binaryReturnValue = null;
 		this.statusCodeReturned = statusCode;
 		return this;
 	}
 
+	/**
+	 * The bytes are sent as they are with every response, the array is not copied so it must not be changed after it is handed over
+	 *
+	 * @param returnValue the Exact bytes returned by the call
+	 * @param contentType the Content-Type sent with the bytes eg application/json
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation willReturn(byte[] returnValue, String contentType) {
+		return willReturn(returnValue, contentType, 200);
+	}
+
+	public RequestExpectation willReturn(byte[] returnValue, String contentType, int statusCode) {
+		return willReturn(ByteBufferResponseBody.of(returnValue, contentType), statusCode);
+	}
+
+	/**
+	 * The bytes between the position and the limit of the buffer are sent with every response, the buffer is not copied so a direct buffer stays off the heap
+	 *
+	 * @param returnValue the Exact bytes returned by the call
+	 * @param contentType the Content-Type sent with the bytes eg application/json
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation willReturn(ByteBuffer returnValue, String contentType) {
+		return willReturn(returnValue, contentType, 200);
+	}
+
+	public RequestExpectation willReturn(ByteBuffer returnValue, String contentType, int statusCode) {
+		return willReturn(ByteBufferResponseBody.of(returnValue, contentType), statusCode);
+	}
+
+	/**
+	 * The file is memory mapped when the server is built and streamed from the mapping on every response,
+	 * so the payload is never held on the heap. The Content-Type is taken from the file extension
+	 *
+	 * @param file the file returned by the call, it must not be truncated while the server is running
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation willReturnFile(Path file) {
+		return willReturnFile(file, 200);
+	}
+
+	public RequestExpectation willReturnFile(Path file, int statusCode) {
+		return willReturn(() -> MappedFileResponseBody.of(file), statusCode);
+	}
+
+	public RequestExpectation willReturnFile(Path file, String contentType, int statusCode) {
+		return willReturn(() -> MappedFileResponseBody.of(file, contentType), statusCode);
+	}
+
+	/**
+	 * The file is only memory mapped when the first request for it is answered, so an endpoint that is never requested never touches the file
+	 */
+	RequestExpectation willReturnFileOnFirstRequest(Path file, String contentType, int statusCode) {
+		return willReturn(LazyResponseBody.of(contentType, () -> MappedFileResponseBody.of(file, contentType)), statusCode);
+	}
+
+	/**
+	 * The response echoes the request, the template is parsed once when the server is built and rendered for every request.
+	 * {{path.id}}, {{query.name}}, {{header.x-request-id}}, {{method}}, {{uri}} and {{body}} are replaced with that part of the request
+	 * and {{script: expression}} with the value of the JavaScript expression, which can read request and path
+	 * example MockHTTPServerBuilder.createRequestExpectation().withUriTemplate("/orders/{id}").willReturnTemplate("{\"id\":{{path.id}}}", "application/json", 200).getMockHTTPServerBuilder().build(8080);
+	 *
+	 * @param template the response with placeholders
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation willReturnTemplate(String template) {
+		return willReturnTemplate(template, NanoHTTPD.MIME_HTML + "; charset=UTF-8", 200);
+	}
+
+	public RequestExpectation willReturnTemplate(String template, String contentType, int statusCode) {
+		return willReturn(() -> ResponseTemplate.compile(template, contentType), statusCode);
+	}
+
+	/**
+	 * The response is sent chunked as the producer produces it, one chunk every interval, and the producer waits whenever the client falls behind
+	 * example MockHTTPServerBuilder.createRequestExpectation().withExpectedURI("/feed").willStream("application/x-ndjson", Duration.ofMillis(100), index -> index < 10 ? ("{\"n\":" + index + "}\n").getBytes() : null).getMockHTTPServerBuilder().build(8080);
+	 *
+	 * @param contentType the Content-Type sent with the stream
+	 * @param interval    the time between chunks
+	 * @param producer    produces the chunks from index 0 for every request, null ends the response
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation willStream(String contentType, Duration interval, ChunkProducer producer) {
+		return willStream(StreamingResponseBody.of(contentType, interval, producer));
+	}
+
+	/**
+	 * The response is one of the StreamingResponseBody streams, eg StreamingResponseBody.serverSentEvents(Duration.ofSeconds(1), events)
+	 *
+	 * @param stream the stream sent to every request
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation willStream(StreamingResponseBody stream) {
+		return willReturn(stream, 200);
+	}
+
+	private RequestExpectation willReturn(ResponseBody returnValue, int statusCode) {
+		return willReturn(() -> returnValue, statusCode);
+	}
+
+	private RequestExpectation willReturn(Supplier<ResponseBody> returnValue, int statusCode) {
+		this.returnValue = null;
+		this.binaryReturnValue = returnValue;
+		this.statusCodeReturned = statusCode;
+		return this;
+	}
+
+	/**
+	 * Every response waits the delay before it is sent, the delay is timed on a shared scheduler rather than by sleeping in the worker.
+	 * On the NIO engine no thread is held while the response waits, on the NanoHTTPD runners the thread of the connection is parked
+	 * for the delay so many concurrent delayed responses need the virtual thread runner
+	 *
+	 * @param delay the time between the request being matched and the response being sent
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withFixedDelay(Duration delay) {
+		return withLatencyDistribution(LatencyDistributions.fixed(delay));
+	}
+
+	/**
+	 * Every response waits a delay sampled from the distribution before it is sent
+	 * example MockHTTPServerBuilder.createRequestExpectation().withExpectedURI("resource/doSomthing").withLatencyDistribution(LatencyDistributions.logNormal(Duration.ofMillis(20), 0.5)).getMockHTTPServerBuilder().build(8080);
+	 *
+	 * @param latency one of the LatencyDistributions
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withLatencyDistribution(LatencyDistribution latency) {
+		this.latency = latency;
+		return this;
+	}
+
+	/**
+	 * The response body is sent no faster than the limit, on the NIO engine no thread waits between the slices of the body
+	 *
+	 * @param bytesPerSecond the bandwidth of the response body
+	 * @return returns this for chaining and readability
+	 */
+	public RequestExpectation withBandwidthLimit(long bytesPerSecond) {
+		if (bytesPerSecond <= 0) {
+			throw new IllegalArgumentException("bandwidth limit must be positive but was " + bytesPerSecond);
+		}
+		this.bandwidthLimit = bytesPerSecond;
+		return this;
+	}
+
 	/**
 	 * The MockHTTPServerBuilder the Expectation belongs to
 	 *
@@ -102,30 +490,106 @@ public class RequestExpectation {
 
 	void initialiseExpectationsForHandler(RequestHandler requestHandler) {
 		Expectations expectations = mockHTTPServerBuilder.getExpectations();
-		for (int executionCount = 0; executionCount < numberTimeExpectationMustBeMet; executionCount++) {
-			if (uri != null) {
-				expectations.oneOf(requestHandler).url(expectations.with(uri));
-				if (returnValue != null) {
-					expectations.oneOf(requestHandler).returnValue();
-					expectations.will(expectations.returnValue(returnValue));
-
-				} else {
-					expectations.oneOf(requestHandler).returnValue();
-				}
-
-				expectations.oneOf(requestHandler).getResponseStatus();
-				expectations.will(expectations.returnValue(statusCodeReturned));
-				if (matcher!=null) {
-					expectations.oneOf(requestHandler).bodyMatching(expectations.with(matcher));
-				}
+		if (uri != null || uriPattern != null) {
+			times(expectations).of(requestHandler).url(uriPattern != null ? expectations.with(uriPattern.asMatcher()) : expectations.with(uri));
+			times(expectations).of(requestHandler).returnValue();
+			expectations.will(expectations.returnValue(responseBody()));
 
+			times(expectations).of(requestHandler).getResponseStatus();
+			expectations.will(expectations.returnValue(statusCodeReturned));
+			if (matcher!=null) {
+				times(expectations).of(requestHandler).bodyMatching(expectations.with(matcher));
 			}
+			if (method != null) {
+				times(expectations).of(requestHandler).method(expectations.with(method));
+			}
+			for (HeaderPredicate header : headers) {
+				times(expectations).of(requestHandler).header(expectations.with(header.getName()), expectations.with(header.getMatcher()));
+			}
+
+		}
 
-			if (!params.isEmpty()) {
-				for (String param : params.keySet()) {
-					expectations.oneOf(requestHandler).param(expectations.with(param), expectations.with(params.get(param)));
-				}
+		if (!params.isEmpty()) {
+			for (String param : params.keySet()) {
+				times(expectations).of(requestHandler).param(expectations.with(param), expectations.with(params.get(param)));
 			}
 		}
 	}
+
+	private ReceiverClause times(Expectations expectations) {
+		if (cardinality.getRequired() == cardinality.getMaximum()) {
+			return expectations.exactly(cardinality.getRequired());
+		}
+		if (cardinality.isUnbounded()) {
+			return expectations.atLeast(cardinality.getRequired());
+		}
+		if (cardinality.getRequired() == 0) {
+			return expectations.atMost(cardinality.getMaximum());
+		}
+		return expectations.between(cardinality.getRequired(), cardinality.getMaximum());
+	}
+
+	/**
+	 * @return true when the jMock engine has to pass the method and headers of each request to the RequestHandler
+	 */
+	boolean checksMethodOrHeaders() {
+		return method != null || !headers.isEmpty();
+	}
+
+	/**
+	 * @return true when the expectation must be met an exact number of times, the only cardinality the jMock engine answers correctly
+	 * as the response and status calls of the RequestHandler carry no uri and go to the first expectation that still accepts them
+	 */
+	boolean hasExactCardinality() {
+		return cardinality.getRequired() == cardinality.getMaximum();
+	}
+
+	/**
+	 * @return true when the order of the requests matters, which only the indexed engine checks
+	 */
+	boolean isInScenarioOrSequence() {
+		return scenario != null || sequence != null || requiredState != null || nextState != null;
+	}
+
+	boolean isExpectingARequest() {
+		return uri != null || uriPattern != null || !params.isEmpty();
+	}
+
+	/**
+	 * Encodes or maps the return value, called once when the server is built
+	 */
+	private ResponseBody responseBody() {
+		ResponseBody body = binaryReturnValue != null ? binaryReturnValue.get() : ByteBufferResponseBody.of(returnValue == null ? "" : returnValue, charset);
+		if (latency != null || bandwidthLimit > 0) {
+			return ShapedResponseBody.of(body, latency, bandwidthLimit);
+		}
+		return body;
+	}
+
+	/**
+	 * @param headerPredicates the header predicates of the expectations compiled so far, equal predicates are shared
+	 * @param scenarios        the scenarios by name, the scenario of this expectation is added when it is the first to name it
+	 * @param sequences        the sequences by name, this expectation becomes the next step of its sequence
+	 */
+	CompiledExpectation compile(int ordinal, Map<HeaderPredicate, HeaderPredicate> headerPredicates, Map<String, Scenario> scenarios, Map<String, Sequence> sequences) {
+		MockResponse response = new MockResponse(statusCodeReturned, responseBody());
+		List<HeaderPredicate> interned = new ArrayList<>(headers.size());
+		for (HeaderPredicate header : headers) {
+			interned.add(headerPredicates.computeIfAbsent(header, predicate -> predicate));
+		}
+		return new CompiledExpectation(ordinal, method, uri, uriPattern, interned, params, bodyMatcher, cardinality, response, step(scenarios, sequences));
+	}
+
+	private ScenarioStep step(Map<String, Scenario> scenarios, Map<String, Sequence> sequences) {
+		if (sequence != null) {
+			return sequences.computeIfAbsent(sequence, Sequence::new).nextStep();
+		}
+		if (scenario != null) {
+			return scenarios.computeIfAbsent(scenario, Scenario::new).step(requiredState, nextState);
+		}
+		if (requiredState != null || nextState != null) {
+			throw new IllegalStateException("The expectation for " + (uriPattern != null ? uriPattern : uri) + " has a scenario state but no scenario, call inScenario");
+		}
+		return null;
+	}
 }
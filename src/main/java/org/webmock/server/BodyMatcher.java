@@ -0,0 +1,11 @@
+package org.webmock.server;
+
+import org.hamcrest.SelfDescribing;
+
+/**
+ * Decides if a request body meets an expectation
+ */
+public interface BodyMatcher extends SelfDescribing {
+
+	boolean matches(RequestBody body);
+}
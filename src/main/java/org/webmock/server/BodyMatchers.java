@@ -0,0 +1,59 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Factory methods for the BodyMatcher implementations
+ */
+public final class BodyMatchers {
+
+	private BodyMatchers() {
+	}
+
+	/**
+	 * Matches the body decoded as text, the body is decoded at most once per request however many expectations check it
+	 */
+	public static BodyMatcher matching(Matcher<String> matcher) {
+		return new BodyMatcher() {
+			@Override
+			public boolean matches(RequestBody body) {
+				return matcher.matches(body.asString());
+			}
+
+			@Override
+			public void describeTo(Description description) {
+				description.appendDescriptionOf(matcher);
+			}
+		};
+	}
+
+	/**
+	 * Matches a body containing every fragment given, the raw bytes are scanned once by an Aho-Corasick automaton without decoding the body
+	 *
+	 * @param fragments up to 64 fragments, encoded as UTF-8
+	 */
+	public static BodyMatcher containing(String... fragments) {
+		return new ContainsBodyMatcher(fragments);
+	}
+
+	/**
+	 * Matches a body holding exactly the bytes between the position and the limit of the buffer, compared without decoding the body
+	 */
+	public static BodyMatcher equalTo(ByteBuffer expected) {
+		ByteBuffer bytes = expected.slice().asReadOnlyBuffer();
+		return new BodyMatcher() {
+			@Override
+			public boolean matches(RequestBody body) {
+				return body.getLength() == bytes.remaining() && ByteBuffer.wrap(body.array(), 0, body.getLength()).equals(bytes);
+			}
+
+			@Override
+			public void describeTo(Description description) {
+				description.appendText("a body of " + bytes.remaining() + " recorded bytes");
+			}
+		};
+	}
+}
@@ -0,0 +1,29 @@
+package org.webmock.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves connections on a fixed number of worker threads, connections accepted while every worker is busy wait in a bounded queue
+ * and are rejected once the queue is full. A keep alive connection holds its worker until it is closed
+ */
+public class BoundedPoolAsyncRunner extends ExecutorAsyncRunner {
+
+	public BoundedPoolAsyncRunner(int workers, int queueCapacity) {
+		super(() -> new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory()));
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "MockHTTPServer Worker #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
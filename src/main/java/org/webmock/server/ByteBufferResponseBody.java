@@ -0,0 +1,70 @@
+package org.webmock.server;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A body held in a read only buffer, text is encoded once when the body is created and every response reads a duplicate of the same buffer
+ */
+public final class ByteBufferResponseBody implements ResponseBody {
+	public static final String OCTET_STREAM = "application/octet-stream";
+
+	private final ByteBuffer buffer;
+	private final String contentType;
+	private final String text;
+
+	private ByteBufferResponseBody(ByteBuffer buffer, String contentType, String text) {
+		this.buffer = buffer.asReadOnlyBuffer();
+		this.contentType = contentType;
+		this.text = text;
+	}
+
+	/**
+	 * @param bytes       the body, the array is shared not copied so it must not be changed afterwards
+	 * @param contentType the Content-Type sent with the body
+	 */
+	public static ByteBufferResponseBody of(byte[] bytes, String contentType) {
+		return new ByteBufferResponseBody(ByteBuffer.wrap(bytes), contentType, null);
+	}
+
+	/**
+	 * @param buffer      the body between the position and the limit of the buffer, the content is shared not copied so it must not be changed afterwards
+	 * @param contentType the Content-Type sent with the body
+	 */
+	public static ByteBufferResponseBody of(ByteBuffer buffer, String contentType) {
+		return new ByteBufferResponseBody(buffer.slice(), contentType, null);
+	}
+
+	/**
+	 * A html body encoded once with the charset given
+	 */
+	public static ByteBufferResponseBody of(String text, Charset charset) {
+		return new ByteBufferResponseBody(ByteBuffer.wrap(text.getBytes(charset)), NanoHTTPD.MIME_HTML + "; charset=" + charset.name(), text);
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public long getLength() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public InputStream openStream() {
+		return new ByteBufferInputStream(buffer.duplicate());
+	}
+
+	/**
+	 * @return the text the body was encoded from or a description of the bytes for a binary body
+	 */
+	@Override
+	public String toString() {
+		return text != null ? text : "<" + getLength() + " bytes of " + contentType + ">";
+	}
+}
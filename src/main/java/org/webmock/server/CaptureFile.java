@@ -0,0 +1,184 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The binary file a RecordingRequestDispatcher appends its interactions to and a replaying server is built from.
+ * After an 8 byte header every interaction is one entry of an int length followed by the request method, uri, parameters and body
+ * and the response status, Content-Type and body. Strings and bodies are written as an int length and their bytes, -1 for null.
+ * Loading maps the file and reads the entries in place, response bodies are slices of the mapping so they are never copied onto the heap
+ */
+public final class CaptureFile {
+	static final int MAGIC = 0x574D4350;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+
+	private CaptureFile() {
+	}
+
+	/**
+	 * Loads the interactions of a capture as expectations, a request that was recorded more than once is answered with the recorded responses in turn
+	 * and the last response is repeated from then on. An entry cut short by a recording that did not finish is ignored
+	 *
+	 * @param capture      the capture file, it must not be changed while a server replays it
+	 * @param firstOrdinal the ordinal of the first interaction, the expectations created before it take precedence
+	 * @throws UncheckedIOException if the file can not be mapped or is not a capture
+	 */
+	public static List<CompiledExpectation> load(Path capture, int firstOrdinal) {
+		ByteBuffer buffer = map(capture);
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			throw new UncheckedIOException(new IOException(capture + " is not a version " + VERSION + " capture file"));
+		}
+		List<Interaction> interactions = new ArrayList<>();
+		while (buffer.remaining() >= Integer.BYTES) {
+			int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				break;
+			}
+			ByteBuffer entry = slice(buffer, length);
+			buffer.position(buffer.position() + length);
+			try {
+				interactions.add(new Interaction(entry));
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+				throw new UncheckedIOException(new IOException("corrupt entry " + interactions.size() + " in " + capture, e));
+			}
+		}
+		int[] nextWithSameRequestLine = chainByRequestLine(interactions);
+		List<CompiledExpectation> expectations = new ArrayList<>(interactions.size());
+		for (int index = 0; index < interactions.size(); index++) {
+			Interaction interaction = interactions.get(index);
+			Cardinality cardinality = isRecordedAgain(interactions, nextWithSameRequestLine, index) ? Cardinality.atMost(1) : Cardinality.allowing();
+			expectations.add(interaction.compile(firstOrdinal + index, cardinality));
+		}
+		return expectations;
+	}
+
+	/**
+	 * Links every interaction to the next one with the same method and uri, -1 when there is none.
+	 * Only those have to be compared in full to find the repeated requests, which keeps loading linear
+	 */
+	private static int[] chainByRequestLine(List<Interaction> interactions) {
+		int[] next = new int[interactions.size()];
+		Map<String, Integer> last = new HashMap<>(interactions.size() * 2);
+		for (int index = 0; index < interactions.size(); index++) {
+			next[index] = -1;
+			Integer previous = last.put(interactions.get(index).requestLine(), index);
+			if (previous != null) {
+				next[previous] = index;
+			}
+		}
+		return next;
+	}
+
+	private static boolean isRecordedAgain(List<Interaction> interactions, int[] nextWithSameRequestLine, int index) {
+		Interaction interaction = interactions.get(index);
+		for (int later = nextWithSameRequestLine[index]; later >= 0; later = nextWithSameRequestLine[later]) {
+			if (interaction.isSameRequest(interactions.get(later))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static ByteBuffer map(Path capture) {
+		try (FileChannel channel = FileChannel.open(capture, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(capture + " is larger than the 2GB a capture can hold");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not map " + capture, e);
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int length) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(slice.position() + length);
+		return slice.slice();
+	}
+
+	private static ByteBuffer readBytes(ByteBuffer entry) {
+		int length = entry.getInt();
+		if (length < 0) {
+			return null;
+		}
+		ByteBuffer bytes = slice(entry, length);
+		entry.position(entry.position() + length);
+		return bytes;
+	}
+
+	/**
+	 * One recorded request and response read from the mapping
+	 */
+	private static final class Interaction {
+		private final String method;
+		private final String uri;
+		private final Map<String, List<String>> params;
+		private final ByteBuffer requestBody;
+		private final int status;
+		private final String contentType;
+		private final ByteBuffer responseBody;
+
+		Interaction(ByteBuffer entry) {
+			this.method = readText(entry);
+			this.uri = readText(entry);
+			int paramCount = entry.getInt();
+			Map<String, List<String>> params = new HashMap<>();
+			for (int param = 0; param < paramCount; param++) {
+				String name = readText(entry);
+				int valueCount = entry.getInt();
+				List<String> values = new ArrayList<>(valueCount);
+				for (int value = 0; value < valueCount; value++) {
+					values.add(readText(entry));
+				}
+				params.put(name, values);
+			}
+			this.params = params.isEmpty() ? Collections.emptyMap() : params;
+			this.requestBody = readBytes(entry);
+			this.status = entry.getInt();
+			this.contentType = readText(entry);
+			this.responseBody = readBytes(entry);
+		}
+
+		String requestLine() {
+			return method + " " + uri;
+		}
+
+		/**
+		 * @return true when both interactions would be matched by the same requests, ByteBuffer compares the body content
+		 */
+		boolean isSameRequest(Interaction other) {
+			return params.equals(other.params) && Objects.equals(requestBody, other.requestBody);
+		}
+
+		CompiledExpectation compile(int ordinal, Cardinality cardinality) {
+			BodyMatcher bodyMatcher = requestBody == null || !requestBody.hasRemaining() ? null : BodyMatchers.equalTo(requestBody);
+			ByteBuffer body = responseBody == null ? ByteBuffer.allocate(0) : responseBody;
+			MockResponse response = new MockResponse(status, ByteBufferResponseBody.of(body, contentType));
+			return new CompiledExpectation(ordinal, method, uri, params, bodyMatcher, cardinality, response);
+		}
+
+		private static String readText(ByteBuffer entry) {
+			int length = entry.getInt();
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			entry.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
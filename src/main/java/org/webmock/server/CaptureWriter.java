@@ -0,0 +1,96 @@
+package org.webmock.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends interactions to a CaptureFile, each entry is encoded off the lock and written with a single append
+ * so concurrent requests never interleave their entries
+ */
+final class CaptureWriter implements Closeable {
+	private final FileChannel channel;
+
+	private CaptureWriter(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Opens the capture for appending, a new or empty file is given the capture header first
+	 */
+	static CaptureWriter open(Path capture) throws IOException {
+		FileChannel channel = FileChannel.open(capture, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		if (channel.size() == 0) {
+			ByteBuffer header = ByteBuffer.allocate(CaptureFile.HEADER_SIZE).putInt(CaptureFile.MAGIC).putInt(CaptureFile.VERSION);
+			header.flip();
+			writeFully(channel, header);
+		}
+		return new CaptureWriter(channel);
+	}
+
+	void append(MockRequest request, int status, String contentType, byte[] responseBody) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + responseBody.length);
+		DataOutputStream entry = new DataOutputStream(bytes);
+		entry.writeInt(0);
+		writeString(entry, request.getMethod());
+		writeString(entry, request.getUri());
+		Map<String, List<String>> params = request.getParameters();
+		entry.writeInt(params.size());
+		for (Map.Entry<String, List<String>> param : params.entrySet()) {
+			writeString(entry, param.getKey());
+			entry.writeInt(param.getValue().size());
+			for (String value : param.getValue()) {
+				writeString(entry, value);
+			}
+		}
+		RequestBody requestBody = request.getRequestBody();
+		if (requestBody == null) {
+			entry.writeInt(-1);
+		} else {
+			entry.writeInt(requestBody.getLength());
+			entry.write(requestBody.array(), 0, requestBody.getLength());
+		}
+		entry.writeInt(status);
+		writeString(entry, contentType);
+		entry.writeInt(responseBody.length);
+		entry.write(responseBody);
+		entry.flush();
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		buffer.putInt(0, buffer.remaining() - Integer.BYTES);
+		synchronized (this) {
+			writeFully(channel, buffer);
+		}
+	}
+
+	private static void writeString(DataOutputStream entry, String value) throws IOException {
+		if (value == null) {
+			entry.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		entry.writeInt(bytes.length);
+		entry.write(bytes);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel.isOpen()) {
+			channel.force(false);
+			channel.close();
+		}
+	}
+}
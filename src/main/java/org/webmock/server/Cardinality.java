@@ -0,0 +1,78 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+import org.hamcrest.SelfDescribing;
+
+/**
+ * The number of times an expectation must and may be invoked, an expectation keeps a single counter checked against it
+ * instead of one copy of itself per expected invocation
+ */
+public final class Cardinality implements SelfDescribing {
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	private final int required;
+	private final int maximum;
+
+	private Cardinality(int required, int maximum) {
+		if (required < 0 || maximum < required) {
+			throw new IllegalArgumentException("invalid cardinality between " + required + " and " + maximum);
+		}
+		this.required = required;
+		this.maximum = maximum;
+	}
+
+	public static Cardinality exactly(int count) {
+		return new Cardinality(count, count);
+	}
+
+	public static Cardinality atLeast(int required) {
+		return new Cardinality(required, UNBOUNDED);
+	}
+
+	public static Cardinality atMost(int maximum) {
+		return new Cardinality(0, maximum);
+	}
+
+	public static Cardinality between(int required, int maximum) {
+		return new Cardinality(required, maximum);
+	}
+
+	public static Cardinality allowing() {
+		return new Cardinality(0, UNBOUNDED);
+	}
+
+	public int getRequired() {
+		return required;
+	}
+
+	public int getMaximum() {
+		return maximum;
+	}
+
+	public boolean isUnbounded() {
+		return maximum == UNBOUNDED;
+	}
+
+	public boolean allowsMoreInvocations(int invocationCount) {
+		return isUnbounded() || invocationCount < maximum;
+	}
+
+	public boolean isSatisfied(int invocationCount) {
+		return invocationCount >= required;
+	}
+
+	@Override
+	public void describeTo(Description description) {
+		if (required == maximum) {
+			description.appendText("exactly ").appendValue(required);
+		} else if (required == 0 && isUnbounded()) {
+			description.appendText("allowed");
+		} else if (isUnbounded()) {
+			description.appendText("at least ").appendValue(required);
+		} else if (required == 0) {
+			description.appendText("at most ").appendValue(maximum);
+		} else {
+			description.appendText("between ").appendValue(required).appendText(" and ").appendValue(maximum);
+		}
+	}
+}
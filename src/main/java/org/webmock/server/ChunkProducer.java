@@ -0,0 +1,14 @@
+package org.webmock.server;
+
+/**
+ * Produces the chunks of a streamed response one at a time, called on the shared timer thread so it must return promptly
+ */
+@FunctionalInterface
+public interface ChunkProducer {
+
+	/**
+	 * @param index the number of chunks produced for the response before this one
+	 * @return the next chunk or null to end the response
+	 */
+	byte[] nextChunk(long index);
+}
@@ -0,0 +1,325 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.StringDescription;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An immutable snapshot of a RequestExpectation taken when the server is built, used by the IndexedRequestDispatcher
+ */
+public final class CompiledExpectation implements SelfDescribing {
+	private final int ordinal;
+	private final String method;
+	private final String uri;
+	private final UriPattern uriPattern;
+	private final HeaderPredicate[] headers;
+	private final Map<String, List<String>> params;
+	private final byte[][] paramNames;
+	private final byte[][][] paramValues;
+	private final BodyMatcher bodyMatcher;
+	private final Cardinality cardinality;
+	private final MockResponse response;
+	private final ScenarioStep step;
+	private volatile RequestMetrics metrics;
+	private final AtomicInteger invocations = new AtomicInteger();
+	private final LongAdder unboundedInvocations;
+
+	/**
+	 * @param ordinal             the registration order, when more than one expectation matches a request the lowest ordinal wins
+	 * @param method              the http method to match or null for any method
+	 * @param uri                 the exact uri to match or null for any uri
+	 * @param params              the exact parameters the request must carry
+	 * @param bodyMatcher         the matcher the request body must satisfy or null when the body is not checked
+	 * @param cardinality         the number of times the expectation must and may be met
+	 * @param response            the response returned when the expectation is matched
+	 */
+	public CompiledExpectation(int ordinal, String method, String uri, Map<String, List<String>> params, BodyMatcher bodyMatcher, Cardinality cardinality, MockResponse response) {
+		this(ordinal, method, uri, null, Collections.emptyList(), params, bodyMatcher, cardinality, response);
+	}
+
+	/**
+	 * @param uriPattern the template or regular expression the uri must match
+	 */
+	public CompiledExpectation(int ordinal, String method, UriPattern uriPattern, Map<String, List<String>> params, BodyMatcher bodyMatcher, Cardinality cardinality, MockResponse response) {
+		this(ordinal, method, null, uriPattern, Collections.emptyList(), params, bodyMatcher, cardinality, response);
+	}
+
+	/**
+	 * @param uri        the exact uri to match, null when the uriPattern is given or for any uri
+	 * @param uriPattern the template or regular expression the uri must match or null
+	 * @param headers    the checks every request header must pass
+	 */
+	public CompiledExpectation(int ordinal, String method, String uri, UriPattern uriPattern, List<HeaderPredicate> headers, Map<String, List<String>> params, BodyMatcher bodyMatcher, Cardinality cardinality, MockResponse response) {
+		this(ordinal, method, uri, uriPattern, headers, params, bodyMatcher, cardinality, response, null);
+	}
+
+	/**
+	 * @param step the place of the expectation in a Scenario or a Sequence or null when it can be matched in any order
+	 */
+	public CompiledExpectation(int ordinal, String method, String uri, UriPattern uriPattern, List<HeaderPredicate> headers, Map<String, List<String>> params, BodyMatcher bodyMatcher, Cardinality cardinality, MockResponse response, ScenarioStep step) {
+		this.ordinal = ordinal;
+		this.method = method;
+		this.uri = uri;
+		this.uriPattern = uriPattern;
+		this.headers = headers.toArray(new HeaderPredicate[0]);
+		this.params = params.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(params));
+		this.paramNames = new byte[this.params.size()][];
+		this.paramValues = new byte[this.params.size()][][];
+		int param = 0;
+		for (Map.Entry<String, List<String>> expected : this.params.entrySet()) {
+			paramNames[param] = expected.getKey().getBytes(StandardCharsets.UTF_8);
+			paramValues[param] = new byte[expected.getValue().size()][];
+			for (int value = 0; value < paramValues[param].length; value++) {
+				paramValues[param][value] = expected.getValue().get(value).getBytes(StandardCharsets.UTF_8);
+			}
+			param++;
+		}
+		this.bodyMatcher = bodyMatcher;
+		this.cardinality = cardinality;
+		this.unboundedInvocations = cardinality.isUnbounded() ? new LongAdder() : null;
+		this.response = response.forExpectation(this);
+		this.step = step;
+		if (step != null) {
+			step.bind(this);
+		}
+	}
+
+	public int getOrdinal() {
+		return ordinal;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the exact uri to match or null when the expectation has a UriPattern or matches any uri
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+	public UriPattern getUriPattern() {
+		return uriPattern;
+	}
+
+	public Cardinality getCardinality() {
+		return cardinality;
+	}
+
+	public MockResponse getResponse() {
+		return response;
+	}
+
+	/**
+	 * @return the metrics of the requests served by this expectation, created on first use so an expectation that is never met costs no histograms
+	 */
+	public RequestMetrics getMetrics() {
+		RequestMetrics current = metrics;
+		if (current == null) {
+			synchronized (this) {
+				current = metrics;
+				if (current == null) {
+					StringDescription description = new StringDescription();
+					describeRequestTo(description);
+					current = new RequestMetrics(description.toString());
+					metrics = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Checks the parts of the request that are not part of the dispatch key, the method is checked again
+	 * for the candidates that are not found by it, those with a UriPattern or without a uri
+	 */
+	boolean matches(MockRequest request) {
+		if (method != null && !method.equals(request.getMethod())) {
+			return false;
+		}
+		Map<String, String> pathVariables = null;
+		if (uriPattern != null && (pathVariables = uriPattern.extract(request.getUri())) == null) {
+			return false;
+		}
+		if (!request.hasParameters(params, paramNames, paramValues)) {
+			return false;
+		}
+		for (HeaderPredicate header : headers) {
+			if (!header.matches(request)) {
+				return false;
+			}
+		}
+		if (!matchesBody(request)) {
+			return false;
+		}
+		if (pathVariables != null) {
+			request.matched(uriPattern, pathVariables);
+		}
+		return true;
+	}
+
+	/**
+	 * @return how many of the method, uri, parameters, headers and body match, used to find the expectation closest to a request that matched none
+	 */
+	int countMatchingParts(MockRequest request) {
+		int matching = 0;
+		matching += method == null || method.equals(request.getMethod()) ? 1 : 0;
+		matching += matchesUri(request) ? 1 : 0;
+		matching += params.equals(request.getParameters()) ? 1 : 0;
+		for (HeaderPredicate header : headers) {
+			matching += header.matches(request) ? 1 : 0;
+		}
+		matching += matchesBody(request) ? 1 : 0;
+		return matching;
+	}
+
+	/**
+	 * Describes this expectation followed by each part of the request it does not match
+	 */
+	void describeMismatch(MockRequest request, Description description) {
+		describeTo(description);
+		boolean differs = false;
+		if (method != null && !method.equals(request.getMethod())) {
+			differs = describeDifference(description, "method", method, request.getMethod());
+		}
+		if (!matchesUri(request)) {
+			differs = describeDifference(description, "uri", uriPattern != null ? uriPattern : uri, request.getUri());
+		}
+		if (!params.equals(request.getParameters())) {
+			differs = describeDifference(description, "params", params, request.getParameters());
+		}
+		for (HeaderPredicate header : headers) {
+			if (!header.matches(request)) {
+				differs = describeDifference(description, "header " + header.getName(), header, request.getHeader(header.getName()));
+			}
+		}
+		if (!matchesBody(request)) {
+			differs = describeDifference(description, "body", bodyMatcher, request.getBody());
+		}
+		if (step != null && step.permittedState() < 0) {
+			step.describeMismatch(description.appendText("\n      "));
+			differs = true;
+		}
+		if (!differs) {
+			description.appendText("\n      every part matches but it allows no more invocations");
+		}
+	}
+
+	private static boolean describeDifference(Description description, String part, Object expected, Object actual) {
+		description.appendText("\n      " + part + ": expected ");
+		if (expected instanceof SelfDescribing) {
+			description.appendDescriptionOf((SelfDescribing) expected);
+		} else {
+			description.appendValue(expected);
+		}
+		description.appendText(" but was ").appendValue(actual);
+		return true;
+	}
+
+	private boolean matchesUri(MockRequest request) {
+		if (uriPattern != null) {
+			return uriPattern.matches(request.getUri());
+		}
+		return uri == null || uri.equals(request.getUri());
+	}
+
+	private boolean matchesBody(MockRequest request) {
+		return bodyMatcher == null || (request.getRequestBody() != null && bodyMatcher.matches(request.getRequestBody()));
+	}
+
+	boolean canBeInvoked() {
+		return (step == null || step.permittedState() >= 0) && (cardinality.isUnbounded() || cardinality.allowsMoreInvocations(invocations.get()));
+	}
+
+	/**
+	 * Counts an invocation and then moves the scenario or sequence of the expectation on, when another request changed its state
+	 * in between the invocation is given back so the request is matched again against the new state
+	 *
+	 * @return false when another request used up the last allowed invocation or changed the state first
+	 */
+	boolean tryInvoke() {
+		if (step == null) {
+			return countInvocation();
+		}
+		int observed = step.permittedState();
+		if (observed < 0 || !countInvocation()) {
+			return false;
+		}
+		if (step.advance(observed)) {
+			return true;
+		}
+		if (cardinality.isUnbounded()) {
+			unboundedInvocations.decrement();
+		} else {
+			invocations.decrementAndGet();
+		}
+		return false;
+	}
+
+	/**
+	 * Counts an invocation if the cardinality still allows one, an unbounded expectation counts on a striped LongAdder
+	 * so concurrent requests for the same expectation do not contend on a single counter
+	 *
+	 * @return false when another request used up the last allowed invocation first
+	 */
+	private boolean countInvocation() {
+		if (cardinality.isUnbounded()) {
+			unboundedInvocations.increment();
+			return true;
+		}
+		int current;
+		do {
+			current = invocations.get();
+			if (!cardinality.allowsMoreInvocations(current)) {
+				return false;
+			}
+		} while (!invocations.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	int getInvocationCount() {
+		if (cardinality.isUnbounded()) {
+			return (int) Math.min(unboundedInvocations.sum(), Integer.MAX_VALUE);
+		}
+		return invocations.get();
+	}
+
+	boolean isSatisfied() {
+		return cardinality.isSatisfied(getInvocationCount());
+	}
+
+	@Override
+	public void describeTo(Description description) {
+		description.appendText("expected ").appendDescriptionOf(cardinality)
+				.appendText(", invoked ").appendValue(getInvocationCount())
+				.appendText(": ");
+		describeRequestTo(description);
+	}
+
+	private void describeRequestTo(Description description) {
+		description.appendText(method == null ? "ANY" : method)
+				.appendText(" ").appendText(uriPattern != null ? uriPattern.toString() : uri == null ? "<any uri>" : uri);
+		if (headers.length > 0) {
+			description.appendList(" with headers ", ", ", "", Arrays.asList(headers));
+		}
+		if (!params.isEmpty()) {
+			description.appendText(" with params ").appendValue(params);
+		}
+		if (bodyMatcher != null) {
+			description.appendText(" with body ").appendDescriptionOf(bodyMatcher);
+		}
+		if (step != null) {
+			description.appendDescriptionOf(step);
+		}
+	}
+}
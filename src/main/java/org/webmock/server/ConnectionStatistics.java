@@ -0,0 +1,85 @@
+package org.webmock.server;
+
+/**
+ * A point in time view of how a MockHTTPServer reuses its connections, a load test whose requests per connection stays near one is paying for a connection per request
+ */
+public final class ConnectionStatistics {
+	private final long openedConnections;
+	private final long openConnections;
+	private final long requests;
+	private final long maxRequestsOnAConnection;
+	private final long closedAtRequestLimit;
+
+	public ConnectionStatistics(long openedConnections, long openConnections, long requests, long maxRequestsOnAConnection, long closedAtRequestLimit) {
+		this.openedConnections = openedConnections;
+		this.openConnections = openConnections;
+		this.requests = requests;
+		this.maxRequestsOnAConnection = maxRequestsOnAConnection;
+		this.closedAtRequestLimit = closedAtRequestLimit;
+	}
+
+	/**
+	 * @return the connections accepted since the server started
+	 */
+	public long getOpenedConnections() {
+		return openedConnections;
+	}
+
+	/**
+	 * @return the connections accepted and not yet closed
+	 */
+	public long getOpenConnections() {
+		return openConnections;
+	}
+
+	/**
+	 * @return the requests served on all connections
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return the requests served on a connection that had already served one
+	 */
+	public long getReusedRequests() {
+		return requests - Math.min(requests, openedConnections);
+	}
+
+	/**
+	 * @return the mean number of requests served on each connection
+	 */
+	public double getRequestsPerConnection() {
+		return openedConnections == 0 ? 0 : (double) requests / openedConnections;
+	}
+
+	/**
+	 * @return the most requests served on one connection
+	 */
+	public long getMaxRequestsOnAConnection() {
+		return maxRequestsOnAConnection;
+	}
+
+	/**
+	 * @return the connections the server closed because they reached the maximum requests per connection
+	 */
+	public long getClosedAtRequestLimit() {
+		return closedAtRequestLimit;
+	}
+
+	void appendJson(StringBuilder json) {
+		json.append("{\"opened\":").append(openedConnections)
+				.append(",\"open\":").append(openConnections)
+				.append(",\"requests\":").append(requests)
+				.append(",\"reusedRequests\":").append(getReusedRequests())
+				.append(",\"maxRequestsOnAConnection\":").append(maxRequestsOnAConnection)
+				.append(",\"closedAtRequestLimit\":").append(closedAtRequestLimit)
+				.append('}');
+	}
+
+	@Override
+	public String toString() {
+		return "opened=" + openedConnections + ", open=" + openConnections + ", requests=" + requests + ", reused=" + getReusedRequests()
+				+ ", max per connection=" + maxRequestsOnAConnection + ", closed at limit=" + closedAtRequestLimit;
+	}
+}
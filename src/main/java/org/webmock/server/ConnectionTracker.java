@@ -0,0 +1,77 @@
+package org.webmock.server;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the connections of a server and the requests served on each. NanoHTTPD serves every request of a connection on the thread
+ * that accepted it, so its connections are attached to that thread rather than kept in a map of open connections.
+ * Other engines count the requests of a connection themselves
+ */
+final class ConnectionTracker {
+	private final ThreadLocal<Connection> current = new ThreadLocal<>();
+	private final LongAdder opened = new LongAdder();
+	private final LongAdder closed = new LongAdder();
+	private final LongAdder requests = new LongAdder();
+	private final LongAccumulator maxRequests = new LongAccumulator(Math::max, 0);
+	private final LongAdder closedAtLimit = new LongAdder();
+
+	void opened() {
+		opened.increment();
+	}
+
+	void closed() {
+		closed.increment();
+	}
+
+	/**
+	 * Opens a connection served by the calling thread until it is detached
+	 */
+	void attach() {
+		opened();
+		current.set(new Connection());
+	}
+
+	void detach() {
+		current.remove();
+		closed();
+	}
+
+	/**
+	 * Counts a request on the connection attached to the calling thread
+	 *
+	 * @return the number of requests served on the connection including this one or 0 when the request did not arrive on a tracked connection
+	 */
+	long served() {
+		Connection connection = current.get();
+		if (connection == null) {
+			requests.increment();
+			return 0;
+		}
+		long served = ++connection.requests;
+		served(served);
+		return served;
+	}
+
+	/**
+	 * @param requestsOnConnection the number of requests served on the connection including this one
+	 */
+	void served(long requestsOnConnection) {
+		requests.increment();
+		maxRequests.accumulate(requestsOnConnection);
+	}
+
+	void closedAtLimit() {
+		closedAtLimit.increment();
+	}
+
+	ConnectionStatistics snapshot() {
+		long closedConnections = closed.sum();
+		long openedConnections = opened.sum();
+		return new ConnectionStatistics(openedConnections, Math.max(0, openedConnections - closedConnections), requests.sum(), maxRequests.get(), closedAtLimit.sum());
+	}
+
+	private static final class Connection {
+		private long requests;
+	}
+}
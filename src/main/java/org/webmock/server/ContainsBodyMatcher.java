@@ -0,0 +1,137 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton over the UTF-8 bytes of the fragments, compiled once into a transition table so a body is matched
+ * in a single pass whatever the number of fragments. A Scan keeps its state between chunks so a body can be fed as it arrives.
+ * A body in another charset is decoded and searched as text, and an empty fragment is found in every body as with containsString
+ */
+final class ContainsBodyMatcher implements BodyMatcher {
+	private static final int ALPHABET = 256;
+	private static final int MAX_FRAGMENTS = 64;
+
+	private final String[] fragments;
+	private final int[][] transitions;
+	private final long[] found;
+	private final long all;
+
+	ContainsBodyMatcher(String... fragments) {
+		if (fragments.length == 0 || fragments.length > MAX_FRAGMENTS) {
+			throw new IllegalArgumentException("between 1 and " + MAX_FRAGMENTS + " fragments can be matched, got " + fragments.length);
+		}
+		this.fragments = fragments.clone();
+		List<int[]> trie = new ArrayList<>();
+		List<Long> outputs = new ArrayList<>();
+		trie.add(newState());
+		outputs.add(0L);
+		for (int fragment = 0; fragment < fragments.length; fragment++) {
+			int state = 0;
+			for (byte b : fragments[fragment].getBytes(StandardCharsets.UTF_8)) {
+				int symbol = b & 0xFF;
+				if (trie.get(state)[symbol] < 0) {
+					trie.get(state)[symbol] = trie.size();
+					trie.add(newState());
+					outputs.add(0L);
+				}
+				state = trie.get(state)[symbol];
+			}
+			outputs.set(state, outputs.get(state) | 1L << fragment);
+		}
+		this.transitions = trie.toArray(new int[0][]);
+		this.found = new long[transitions.length];
+		for (int state = 0; state < found.length; state++) {
+			found[state] = outputs.get(state);
+		}
+		this.all = fragments.length == MAX_FRAGMENTS ? -1L : (1L << fragments.length) - 1;
+		link();
+	}
+
+	private static int[] newState() {
+		int[] state = new int[ALPHABET];
+		Arrays.fill(state, -1);
+		return state;
+	}
+
+	/**
+	 * Turns the trie into a complete transition table by following the failure links breadth first
+	 */
+	private void link() {
+		int[] failure = new int[transitions.length];
+		Queue<Integer> queue = new ArrayDeque<>();
+		for (int symbol = 0; symbol < ALPHABET; symbol++) {
+			int next = transitions[0][symbol];
+			if (next < 0) {
+				transitions[0][symbol] = 0;
+			} else {
+				failure[next] = 0;
+				queue.add(next);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.remove();
+			found[state] |= found[failure[state]];
+			for (int symbol = 0; symbol < ALPHABET; symbol++) {
+				int next = transitions[state][symbol];
+				if (next < 0) {
+					transitions[state][symbol] = transitions[failure[state]][symbol];
+				} else {
+					failure[next] = transitions[failure[state]][symbol];
+					queue.add(next);
+				}
+			}
+		}
+	}
+
+	Scan scan() {
+		return new Scan();
+	}
+
+	@Override
+	public boolean matches(RequestBody body) {
+		if (!StandardCharsets.UTF_8.equals(body.getCharset())) {
+			String text = body.asString();
+			for (String fragment : fragments) {
+				if (!text.contains(fragment)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		Scan scan = scan();
+		scan.update(body.array(), 0, body.getLength());
+		return scan.isComplete();
+	}
+
+	@Override
+	public void describeTo(Description description) {
+		description.appendValueList("containing ", ", ", "", fragments);
+	}
+
+	/**
+	 * The progress of the automaton through one body
+	 */
+	final class Scan {
+		private int state;
+		private long seen = found[0];
+
+		void update(byte[] bytes, int offset, int length) {
+			int end = offset + length;
+			for (int index = offset; index < end && seen != all; index++) {
+				state = transitions[state][bytes[index] & 0xFF];
+				seen |= found[state];
+			}
+		}
+
+		boolean isComplete() {
+			return seen == all;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package org.webmock.server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every response delay and every streamed chunk on one shared timer thread instead of sleeping in the worker.
+ * The NIO engine schedules the rest of a delayed response as a task so no thread waits, a NanoHTTPD connection owns its thread
+ * and parks it on a future so only with virtual threads do thousands of delayed responses need no platform threads
+ */
+final class DelayScheduler {
+	private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+	private DelayScheduler() {
+	}
+
+	private static ScheduledThreadPoolExecutor createTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "web-mock-delay");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	/**
+	 * Runs the task on the timer thread after the delay, the task must not block as it holds up every other delay
+	 */
+	static ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+		return TIMER.schedule(task, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Waits until the delay has passed, returns early with the interrupt flag set when the waiting thread is interrupted
+	 */
+	static void await(long delayNanos) {
+		if (delayNanos <= 0) {
+			return;
+		}
+		CompletableFuture<Void> elapsed = new CompletableFuture<>();
+		ScheduledFuture<?> timeout = TIMER.schedule(() -> elapsed.complete(null), delayNanos, TimeUnit.NANOSECONDS);
+		try {
+			elapsed.get();
+		} catch (InterruptedException e) {
+			timeout.cancel(false);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package org.webmock.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Direct buffers of one size shared by the event loops and workers of a NioServerEngine, a buffer released beyond the capacity of the pool is left to the collector
+ */
+final class DirectBufferPool {
+	private final int bufferSize;
+	private final BlockingQueue<ByteBuffer> free;
+
+	DirectBufferPool(int bufferSize, int capacity) {
+		this.bufferSize = bufferSize;
+		this.free = new ArrayBlockingQueue<>(capacity);
+	}
+
+	ByteBuffer acquire() {
+		ByteBuffer buffer = free.poll();
+		return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	void release(ByteBuffer buffer) {
+		buffer.clear();
+		free.offer(buffer);
+	}
+
+	int getBufferSize() {
+		return bufferSize;
+	}
+}
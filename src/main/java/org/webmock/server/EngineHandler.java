@@ -0,0 +1,17 @@
+package org.webmock.server;
+
+/**
+ * What a ServerEngine hands its connections and requests to
+ */
+public interface EngineHandler {
+
+	void connectionOpened();
+
+	void connectionClosed();
+
+	/**
+	 * Answers a request, called on a worker thread of the engine. The latency of the response is not waited out here but returned
+	 * in EngineResponse.getDelayNanos for the engine to send it once the delay has passed
+	 */
+	EngineResponse serve(EngineRequest request);
+}
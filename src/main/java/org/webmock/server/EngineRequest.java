@@ -0,0 +1,92 @@
+package org.webmock.server;
+
+import java.util.Map;
+
+/**
+ * A request as a ServerEngine parsed it, before its parameters and body are decoded
+ */
+public final class EngineRequest {
+	private final String method;
+	private final String uri;
+	private final String queryString;
+	private final Map<String, String> headers;
+	private final RequestHead head;
+	private final byte[] body;
+	private final int bodyLength;
+	private final long requestsOnConnection;
+
+	/**
+	 * @param uri                  the decoded path of the request target
+	 * @param queryString          the undecoded text after the ? of the request target or null when there is none
+	 * @param headers              the headers with names in lower case
+	 * @param body                 the body from index 0 up to bodyLength, null when the request has none
+	 * @param requestsOnConnection the number of requests read from the connection including this one
+	 */
+	public EngineRequest(String method, String uri, String queryString, Map<String, String> headers, byte[] body, int bodyLength, long requestsOnConnection) {
+		this.method = method;
+		this.uri = uri;
+		this.queryString = queryString;
+		this.headers = headers;
+		this.head = null;
+		this.body = body;
+		this.bodyLength = bodyLength;
+		this.requestsOnConnection = requestsOnConnection;
+	}
+
+	/**
+	 * A request whose headers and query stay slices of the parser's buffer, it is only valid until the parser reads the next request
+	 */
+	EngineRequest(RequestHead head, byte[] body, int bodyLength, long requestsOnConnection) {
+		this.method = head.getMethod();
+		this.uri = head.getPath();
+		this.queryString = null;
+		this.headers = null;
+		this.head = head;
+		this.body = body;
+		this.bodyLength = bodyLength;
+		this.requestsOnConnection = requestsOnConnection;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public String getQueryString() {
+		return head == null ? queryString : head.queryString();
+	}
+
+	public Map<String, String> getHeaders() {
+		return head == null ? headers : head.headers();
+	}
+
+	/**
+	 * @param name the header name in lower case
+	 * @return the value of the header or null when the request does not carry it
+	 */
+	public String getHeader(String name) {
+		return head == null ? headers.get(name) : head.header(name);
+	}
+
+	/**
+	 * @return the parsed head the headers and parameters are read from or null when the engine handed over maps
+	 */
+	RequestHead getHead() {
+		return head;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	public int getBodyLength() {
+		return bodyLength;
+	}
+
+	public long getRequestsOnConnection() {
+		return requestsOnConnection;
+	}
+}
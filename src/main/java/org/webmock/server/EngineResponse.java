@@ -0,0 +1,68 @@
+package org.webmock.server;
+
+/**
+ * The answer to an EngineRequest, a body of unknown length is sent with chunked transfer encoding
+ */
+public final class EngineResponse {
+	private final int status;
+	private final String statusLine;
+	private final ResponseBody body;
+	private final boolean closeConnection;
+	private final long delayNanos;
+
+	/**
+	 * @param statusLine      the status code and reason phrase eg 200 OK
+	 * @param body            the body, its Content-Type may be null
+	 * @param closeConnection true to close the connection once the response is sent
+	 */
+	public EngineResponse(int status, String statusLine, ResponseBody body, boolean closeConnection) {
+		this(status, statusLine, body, closeConnection, 0);
+	}
+
+	/**
+	 * @param delayNanos how long the engine waits before it sends the response, it must not hold a thread while it waits
+	 *                   and sends the body detached from the thread that rendered it
+	 */
+	public EngineResponse(int status, String statusLine, ResponseBody body, boolean closeConnection, long delayNanos) {
+		this.status = status;
+		this.statusLine = statusLine;
+		this.body = body;
+		this.closeConnection = closeConnection;
+		this.delayNanos = delayNanos;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getStatusLine() {
+		return statusLine;
+	}
+
+	public ResponseBody getBody() {
+		return body;
+	}
+
+	public boolean isCloseConnection() {
+		return closeConnection;
+	}
+
+	/**
+	 * @return the latency sampled for the response, 0 to send it at once
+	 */
+	public long getDelayNanos() {
+		return delayNanos;
+	}
+
+	/**
+	 * @return the response with a body that stays valid once the rendering worker has moved on to another request
+	 */
+	EngineResponse detached() {
+		ResponseBody own = body == null ? null : body.detached();
+		return own == body ? this : new EngineResponse(status, statusLine, own, closeConnection, delayNanos);
+	}
+
+	EngineResponse closingConnection() {
+		return closeConnection ? this : new EngineResponse(status, statusLine, body, true, delayNanos);
+	}
+}
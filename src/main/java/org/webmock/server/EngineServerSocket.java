@@ -0,0 +1,86 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Stands in for NanoHTTPD's server socket when a MockHTTPServer runs on another ServerEngine, so the server starts, stops and reports its port as before.
+ * Binding it binds the engine and closing it closes the engine, NanoHTTPD's accept thread waits in accept until then without ever being handed a connection
+ */
+final class EngineServerSocket extends ServerSocket {
+	private final ServerEngine engine;
+	private final int idleTimeoutMillis;
+	private final EngineHandler handler;
+	private final CountDownLatch closed = new CountDownLatch(1);
+	private volatile boolean bound;
+
+	EngineServerSocket(ServerEngine engine, int idleTimeoutMillis, EngineHandler handler) throws IOException {
+		this.engine = engine;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.handler = handler;
+	}
+
+	@Override
+	public void bind(SocketAddress endpoint) throws IOException {
+		bind(endpoint, 0);
+	}
+
+	@Override
+	public void bind(SocketAddress endpoint, int backlog) throws IOException {
+		if (isClosed()) {
+			throw new SocketException("Socket is closed");
+		}
+		engine.bind(endpoint == null ? new InetSocketAddress(0) : (InetSocketAddress) endpoint, idleTimeoutMillis, handler);
+		bound = true;
+	}
+
+	@Override
+	public boolean isBound() {
+		return bound;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return engine.getLocalPort();
+	}
+
+	/**
+	 * The engine accepts the connections, this waits until the server is stopped
+	 */
+	@Override
+	public Socket accept() throws IOException {
+		try {
+			closed.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		throw new SocketException("Socket is closed");
+	}
+
+	/**
+	 * The engine binds with SO_REUSEADDR itself
+	 */
+	@Override
+	public void setReuseAddress(boolean on) {
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed.getCount() == 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (isClosed()) {
+			return;
+		}
+		engine.close();
+		closed.countDown();
+		super.close();
+	}
+}
@@ -0,0 +1,81 @@
+package org.webmock.server;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs each connection of a MockHTTPServer as a task on an ExecutorService, a connection the executor refuses is closed and counted.
+ * The executor is created for the first connection after the server starts and shut down when the server stops, so a server can be started again
+ */
+abstract class ExecutorAsyncRunner implements ReportingAsyncRunner {
+	private final Set<NanoHTTPD.ClientHandler> running = ConcurrentHashMap.newKeySet();
+	private final LongAdder rejected = new LongAdder();
+	private final Supplier<ExecutorService> executorFactory;
+	private ExecutorService executor;
+
+	ExecutorAsyncRunner(Supplier<ExecutorService> executorFactory) {
+		this.executorFactory = executorFactory;
+	}
+
+	@Override
+	public void exec(NanoHTTPD.ClientHandler clientHandler) {
+		running.add(clientHandler);
+		try {
+			executor().execute(clientHandler);
+		} catch (RejectedExecutionException e) {
+			running.remove(clientHandler);
+			rejected.increment();
+			clientHandler.close();
+		}
+	}
+
+	@Override
+	public void closed(NanoHTTPD.ClientHandler clientHandler) {
+		running.remove(clientHandler);
+	}
+
+	/**
+	 * Closes the connections being served, NanoHTTPD calls it from stop while the workers are kept for a restart until shutdown
+	 */
+	@Override
+	public void closeAll() {
+		for (NanoHTTPD.ClientHandler clientHandler : running) {
+			clientHandler.close();
+		}
+		running.clear();
+	}
+
+	/**
+	 * Stops the workers, called by the server once it has stopped listening. The next connection creates a new executor
+	 */
+	synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private synchronized ExecutorService executor() {
+		if (executor == null) {
+			executor = executorFactory.get();
+		}
+		return executor;
+	}
+
+	@Override
+	public RunnerStatistics getStatistics() {
+		int queueDepth = getQueueDepth();
+		return new RunnerStatistics(Math.max(0, running.size() - queueDepth), queueDepth, rejected.sum());
+	}
+
+	private synchronized int getQueueDepth() {
+		return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+	}
+}
@@ -0,0 +1,85 @@
+package org.webmock.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expectations grouped by exact uri and method so a request only has to be matched against the expectations sharing both,
+ * expectations with a UriPattern are found through a RouteTrie and expectations without a uri are the only ones scanned for every request
+ */
+public final class ExpectationIndex {
+	private static final CompiledExpectation[] NONE = new CompiledExpectation[0];
+	private static final String ANY_METHOD = "*";
+
+	private final Map<String, Map<String, CompiledExpectation[]>> byUri;
+	private final CompiledExpectation[] anyUri;
+	private final RouteTrie routes;
+	private final List<CompiledExpectation> expectations;
+
+	public ExpectationIndex(List<CompiledExpectation> expectations) {
+		Map<String, Map<String, List<CompiledExpectation>>> grouped = new HashMap<>();
+		List<CompiledExpectation> withoutUri = new ArrayList<>();
+		List<CompiledExpectation> withPattern = new ArrayList<>();
+		for (CompiledExpectation expectation : expectations) {
+			if (expectation.getUriPattern() != null) {
+				withPattern.add(expectation);
+			} else if (expectation.getUri() == null) {
+				withoutUri.add(expectation);
+			} else {
+				grouped.computeIfAbsent(expectation.getUri(), uri -> new HashMap<>())
+						.computeIfAbsent(expectation.getMethod() == null ? ANY_METHOD : expectation.getMethod(), method -> new ArrayList<>()).add(expectation);
+			}
+		}
+		this.byUri = new HashMap<>();
+		for (Map.Entry<String, Map<String, List<CompiledExpectation>>> uri : grouped.entrySet()) {
+			Map<String, CompiledExpectation[]> byMethod = new HashMap<>();
+			for (Map.Entry<String, List<CompiledExpectation>> method : uri.getValue().entrySet()) {
+				byMethod.put(method.getKey(), method.getValue().toArray(NONE));
+			}
+			byUri.put(uri.getKey(), byMethod);
+		}
+		this.anyUri = withoutUri.toArray(NONE);
+		this.routes = withPattern.isEmpty() ? null : new RouteTrie(withPattern);
+		this.expectations = Collections.unmodifiableList(new ArrayList<>(expectations));
+	}
+
+	/**
+	 * Looks the request up by its uri and then its method, two lookups of Strings the request already holds so no key is built per request
+	 *
+	 * @return the first registered expectation matching the request that can still be invoked or null if there is none
+	 */
+	CompiledExpectation select(MockRequest request) {
+		CompiledExpectation selected = null;
+		Map<String, CompiledExpectation[]> byMethod = byUri.get(request.getUri());
+		if (byMethod != null) {
+			selected = select(byMethod.get(request.getMethod()), request, null);
+			selected = select(byMethod.get(ANY_METHOD), request, selected);
+		}
+		if (routes != null) {
+			selected = routes.select(request, selected);
+		}
+		return select(anyUri, request, selected);
+	}
+
+	List<CompiledExpectation> getExpectations() {
+		return expectations;
+	}
+
+	static CompiledExpectation select(CompiledExpectation[] candidates, MockRequest request, CompiledExpectation selected) {
+		if (candidates == null) {
+			return selected;
+		}
+		for (CompiledExpectation candidate : candidates) {
+			if (selected != null && selected.getOrdinal() < candidate.getOrdinal()) {
+				return selected;
+			}
+			if (candidate.canBeInvoked() && candidate.matches(request)) {
+				return candidate;
+			}
+		}
+		return selected;
+	}
+}
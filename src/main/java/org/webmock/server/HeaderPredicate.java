@@ -0,0 +1,78 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.core.IsEqual;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A check of one request header. Predicates for an exact value are equal when their header and value are,
+ * so expectations compiled together share one instance however many declare the same header
+ */
+public final class HeaderPredicate implements SelfDescribing {
+	private final String name;
+	private final String value;
+	private final Matcher<String> matcher;
+
+	private HeaderPredicate(String name, String value, Matcher<String> matcher) {
+		this.name = name.toLowerCase(Locale.ROOT);
+		this.value = value;
+		this.matcher = matcher;
+	}
+
+	/**
+	 * @param name  the header name, compared ignoring case
+	 * @param value the exact value the header must have
+	 */
+	public static HeaderPredicate equalTo(String name, String value) {
+		return new HeaderPredicate(name, value, IsEqual.equalTo(value));
+	}
+
+	/**
+	 * @param name    the header name, compared ignoring case
+	 * @param matcher the matcher the value must satisfy, it is given null when the request does not carry the header
+	 */
+	public static HeaderPredicate matching(String name, Matcher<String> matcher) {
+		return new HeaderPredicate(name, null, matcher);
+	}
+
+	/**
+	 * @return the header name in lower case as NanoHTTPD hands headers over
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public Matcher<String> getMatcher() {
+		return matcher;
+	}
+
+	boolean matches(MockRequest request) {
+		return value != null ? request.hasHeader(name, value) : matcher.matches(request.getHeader(name));
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof HeaderPredicate)) {
+			return false;
+		}
+		HeaderPredicate predicate = (HeaderPredicate) other;
+		return name.equals(predicate.name) && (value != null ? value.equals(predicate.value) : predicate.value == null && matcher == predicate.matcher);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, value != null ? value : System.identityHashCode(matcher));
+	}
+
+	@Override
+	public void describeTo(Description description) {
+		description.appendText(name).appendText(": ").appendDescriptionOf(matcher);
+	}
+}
@@ -0,0 +1,19 @@
+package org.webmock.server;
+
+import java.io.IOException;
+
+/**
+ * A request the HttpRequestParser can not accept, answered with the status and the connection closed
+ */
+class HttpParseException extends IOException {
+	private final String statusLine;
+
+	HttpParseException(String statusLine, String message) {
+		super(message);
+		this.statusLine = statusLine;
+	}
+
+	String getStatusLine() {
+		return statusLine;
+	}
+}
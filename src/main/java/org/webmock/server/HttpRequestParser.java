@@ -0,0 +1,252 @@
+package org.webmock.server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Parses HTTP/1.1 requests from whatever bytes have arrived so far, a request split across many reads is picked up where the last read stopped.
+ * Bodies are read by Content-Length or chunked transfer encoding. Feeding stops at the end of each request so pipelined requests are
+ * left in the buffer until the connection is ready for them. One parser serves every request of a connection, the head and body arrays are kept
+ * between requests so a connection that keeps sending requests of a similar size allocates nothing to read them
+ */
+final class HttpRequestParser {
+	private static final int REQUEST_LINE = 0;
+	private static final int HEADERS = 1;
+	private static final int BODY = 2;
+	private static final int CHUNK_SIZE = 3;
+	private static final int CHUNK_DATA = 4;
+	private static final int CHUNK_END = 5;
+	private static final int TRAILERS = 6;
+	private static final int COMPLETE = 7;
+	private static final byte[] NO_BODY = new byte[0];
+	/**
+	 * Bodies up to this size leave their array to the next request, larger ones are dropped so an idle connection does not hold on to them
+	 */
+	static final int RETAINED_BODY_SIZE = 64 * 1024;
+
+	private final int maxHeaderBytes;
+	private final int maxBodySize;
+	private final RequestHead head = new RequestHead();
+	private int state = REQUEST_LINE;
+	private int lineStart;
+	private int headerBytes;
+	private byte[] retainedBody = NO_BODY;
+	private byte[] body;
+	private int bodyLength;
+	private long remaining;
+	private boolean expectsContinue;
+
+	HttpRequestParser(int maxHeaderBytes, int maxBodySize) {
+		this.maxHeaderBytes = maxHeaderBytes;
+		this.maxBodySize = maxBodySize;
+	}
+
+	/**
+	 * Consumes bytes until a whole request has been read or the buffer is empty
+	 *
+	 * @return true once the request is complete, the buffer is left at the first byte after it
+	 * @throws HttpParseException when the request is malformed or larger than allowed
+	 */
+	boolean feed(ByteBuffer in) throws HttpParseException {
+		while (state != COMPLETE && in.hasRemaining()) {
+			switch (state) {
+				case BODY:
+				case CHUNK_DATA:
+					int count = (int) Math.min(remaining, in.remaining());
+					in.get(body, bodyLength, count);
+					bodyLength += count;
+					remaining -= count;
+					if (remaining == 0) {
+						state = state == BODY ? COMPLETE : CHUNK_END;
+					}
+					break;
+				default:
+					int lineEnd = readLine(in);
+					if (lineEnd >= 0) {
+						onLine(lineEnd);
+						lineStart = head.size();
+					}
+			}
+		}
+		return state == COMPLETE;
+	}
+
+	/**
+	 * Appends the bytes of the current line to the head
+	 *
+	 * @return the end of the line without its line break or -1 when the line has not been read completely
+	 */
+	private int readLine(ByteBuffer in) throws HttpParseException {
+		while (in.hasRemaining()) {
+			byte next = in.get();
+			if (++headerBytes > maxHeaderBytes) {
+				throw new HttpParseException("431 Request Header Fields Too Large", "request headers are longer than " + maxHeaderBytes + " bytes");
+			}
+			if (next == '\n') {
+				int lineEnd = head.size();
+				return lineEnd > lineStart && head.byteAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+			}
+			head.append(next);
+		}
+		return -1;
+	}
+
+	private void onLine(int lineEnd) throws HttpParseException {
+		switch (state) {
+			case REQUEST_LINE:
+				if (lineEnd > lineStart) {
+					head.requestLine(lineStart, lineEnd);
+					state = HEADERS;
+				} else {
+					head.truncate(lineStart);
+				}
+				break;
+			case HEADERS:
+				if (lineEnd == lineStart) {
+					head.truncate(lineStart);
+					startBody();
+				} else {
+					head.header(lineStart, lineEnd);
+				}
+				break;
+			case CHUNK_SIZE:
+				headerBytes = 0;
+				startChunk(lineEnd);
+				head.truncate(lineStart);
+				break;
+			case CHUNK_END:
+				if (lineEnd != lineStart) {
+					throw new HttpParseException("400 Bad Request", "chunk is longer than its size");
+				}
+				head.truncate(lineStart);
+				state = CHUNK_SIZE;
+				break;
+			case TRAILERS:
+				if (lineEnd == lineStart) {
+					state = COMPLETE;
+				}
+				head.truncate(lineStart);
+				break;
+			default:
+				throw new IllegalStateException("no line is read in state " + state);
+		}
+	}
+
+	private void startBody() throws HttpParseException {
+		headerBytes = 0;
+		expectsContinue = head.headerContains("expect", "100-continue");
+		if (head.headerContains("transfer-encoding", "chunked")) {
+			body = retainedBody.length > 0 ? retainedBody : new byte[1024];
+			state = CHUNK_SIZE;
+			return;
+		}
+		long length;
+		try {
+			length = Math.max(0, head.contentLength());
+		} catch (NumberFormatException e) {
+			throw new HttpParseException("400 Bad Request", "malformed Content-Length " + head.header("content-length"));
+		}
+		if (length > maxBodySize) {
+			throw tooLarge(length);
+		}
+		if (length == 0) {
+			state = COMPLETE;
+			return;
+		}
+		body = length <= retainedBody.length ? retainedBody : new byte[(int) length];
+		remaining = length;
+		state = BODY;
+	}
+
+	private void startChunk(int lineEnd) throws HttpParseException {
+		int index = lineStart;
+		while (index < lineEnd && (head.byteAt(index) == ' ' || head.byteAt(index) == '\t')) {
+			index++;
+		}
+		long size = 0;
+		int digits = 0;
+		for (; index < lineEnd && head.byteAt(index) != ';'; index++) {
+			int digit = Character.digit(head.byteAt(index), 16);
+			if (digit < 0) {
+				break;
+			}
+			size = size << 4 | digit;
+			if (++digits > 15) {
+				throw tooLarge(Long.MAX_VALUE);
+			}
+		}
+		while (index < lineEnd && (head.byteAt(index) == ' ' || head.byteAt(index) == '\t')) {
+			index++;
+		}
+		if (digits == 0 || (index < lineEnd && head.byteAt(index) != ';')) {
+			throw new HttpParseException("400 Bad Request", "malformed chunk size " + head.text(lineStart, lineEnd));
+		}
+		if (size == 0) {
+			state = TRAILERS;
+			return;
+		}
+		if (bodyLength + size > maxBodySize) {
+			throw tooLarge(bodyLength + size);
+		}
+		if (bodyLength + size > body.length) {
+			body = Arrays.copyOf(body, (int) Math.min(maxBodySize, Math.max(body.length * 2L, bodyLength + size)));
+		}
+		remaining = size;
+		state = CHUNK_DATA;
+	}
+
+	private HttpParseException tooLarge(long length) {
+		return new HttpParseException("413 Payload Too Large", "Request body of " + length + " bytes is larger than " + maxBodySize);
+	}
+
+	/**
+	 * @return true when the headers have been read, the client waits for 100 Continue before it sends the body and it has not been read yet
+	 */
+	boolean awaitsContinue() {
+		return expectsContinue && (state == BODY || state == CHUNK_SIZE) && bodyLength == 0;
+	}
+
+	void continueSent() {
+		expectsContinue = false;
+	}
+
+	boolean isStarted() {
+		return state != REQUEST_LINE || head.size() > 0;
+	}
+
+	/**
+	 * @return true when the connection may be kept open after the response, by default for HTTP/1.1 and only when asked for with HTTP/1.0
+	 */
+	boolean isKeepAlive() {
+		if (head.isHttp10()) {
+			return head.headerContains("connection", "keep-alive");
+		}
+		return !head.headerContains("connection", "close");
+	}
+
+	String getMethod() {
+		return head.getMethod();
+	}
+
+	/**
+	 * Builds the request that was read, its head and body stay valid until the parser is reset for the next one
+	 */
+	EngineRequest toRequest(long requestsOnConnection) throws HttpParseException {
+		head.decode();
+		return new EngineRequest(head, bodyLength > 0 ? body : null, bodyLength, requestsOnConnection);
+	}
+
+	void reset() {
+		state = REQUEST_LINE;
+		lineStart = 0;
+		headerBytes = 0;
+		head.reset();
+		if (body != null && body.length <= RETAINED_BODY_SIZE && body.length > retainedBody.length) {
+			retainedBody = body;
+		}
+		body = null;
+		bodyLength = 0;
+		remaining = 0;
+		expectsContinue = false;
+	}
+}
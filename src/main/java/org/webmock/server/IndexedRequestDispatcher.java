@@ -0,0 +1,108 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+import org.hamcrest.SelfDescribing;
+import org.jmock.api.ExpectationError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dispatches requests through an ExpectationIndex compiled when the server is built instead of the jMock proxy.
+ * Dispatching takes no lock, the index is immutable and every expectation counts its own invocations atomically,
+ * so concurrent requests are only serialised when they race for the last allowed invocation of the same expectation
+ */
+public class IndexedRequestDispatcher implements RequestDispatcher, SelfDescribing {
+	private static final long QUIESCE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	private final ExpectationIndex index;
+	private final LongAdder inFlight = new LongAdder();
+
+	public IndexedRequestDispatcher(List<CompiledExpectation> expectations) {
+		this.index = new ExpectationIndex(expectations);
+	}
+
+	@Override
+	public MockResponse dispatch(MockRequest request) {
+		inFlight.increment();
+		try {
+			CompiledExpectation expectation;
+			do {
+				expectation = index.select(request);
+				if (expectation == null) {
+					throw new UnexpectedRequestError(request);
+				}
+			} while (!expectation.tryInvoke());
+			UriPattern pattern = expectation.getUriPattern();
+			if (pattern != null) {
+				Map<String, String> variables = request.variablesMatchedBy(pattern);
+				request.setPathVariables(variables != null ? variables : pattern.extract(request.getUri()));
+			}
+			return expectation.getResponse();
+		} finally {
+			inFlight.decrement();
+		}
+	}
+
+	/**
+	 * Waits for the requests still being dispatched to be counted before the invocation counts are checked,
+	 * the server is stopped before this is called so no new requests are accepted while waiting
+	 */
+	@Override
+	public void assertIsSatisfied() {
+		awaitQuiescence();
+		for (CompiledExpectation expectation : index.getExpectations()) {
+			if (!expectation.isSatisfied()) {
+				throw ExpectationError.notAllSatisfied(this);
+			}
+		}
+	}
+
+	@Override
+	public List<RequestMetrics> getExpectationMetrics() {
+		List<RequestMetrics> metrics = new ArrayList<>();
+		for (CompiledExpectation expectation : index.getExpectations()) {
+			metrics.add(expectation.getMetrics());
+		}
+		return Collections.unmodifiableList(metrics);
+	}
+
+	/**
+	 * Describes the expectation matching the most parts of the request, the earliest one when several match as many
+	 */
+	@Override
+	public void describeMismatch(MockRequest request, Description description) {
+		CompiledExpectation closest = null;
+		int closestScore = -1;
+		for (CompiledExpectation expectation : index.getExpectations()) {
+			int score = expectation.countMatchingParts(request);
+			if (score > closestScore) {
+				closest = expectation;
+				closestScore = score;
+			}
+		}
+		if (closest == null) {
+			description.appendText("no expectations were set");
+			return;
+		}
+		description.appendText("closest expectation ");
+		closest.describeMismatch(request, description);
+	}
+
+	private void awaitQuiescence() {
+		long deadline = System.nanoTime() + QUIESCE_TIMEOUT_NANOS;
+		while (inFlight.sum() > 0 && System.nanoTime() - deadline < 0) {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+	}
+
+	@Override
+	public void describeTo(Description description) {
+		description.appendList("expectations:\n  ", "\n  ", "", index.getExpectations());
+	}
+}
@@ -0,0 +1,12 @@
+package org.webmock.server;
+
+/**
+ * The delay a shaped response waits before it is sent, sampled once per response
+ */
+public interface LatencyDistribution {
+
+	/**
+	 * @return the delay of the next response in nanoseconds
+	 */
+	long nextDelayNanos();
+}
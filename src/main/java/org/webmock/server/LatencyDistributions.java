@@ -0,0 +1,87 @@
+package org.webmock.server;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Factory methods for the LatencyDistribution implementations
+ */
+public final class LatencyDistributions {
+
+	private LatencyDistributions() {
+	}
+
+	public static LatencyDistribution fixed(Duration delay) {
+		long nanos = delay.toNanos();
+		return () -> nanos;
+	}
+
+	/**
+	 * Every delay between min and max is equally likely
+	 */
+	public static LatencyDistribution uniform(Duration min, Duration max) {
+		long lower = min.toNanos();
+		long upper = max.toNanos();
+		if (upper < lower) {
+			throw new IllegalArgumentException("max " + max + " is less than min " + min);
+		}
+		return () -> lower == upper ? lower : ThreadLocalRandom.current().nextLong(lower, upper + 1);
+	}
+
+	/**
+	 * The long tailed shape of most service latencies
+	 *
+	 * @param median the delay half the responses wait less than
+	 * @param sigma  the standard deviation of the logarithm of the delay, 0.5 puts the 99th percentile at about 3.2 times the median
+	 */
+	public static LatencyDistribution logNormal(Duration median, double sigma) {
+		double mu = Math.log(median.toNanos());
+		return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+	}
+
+	/**
+	 * Interpolates linearly between the given percentiles, eg {50=20ms, 99=250ms, 100=1s} as read from a production dashboard.
+	 * Below the lowest percentile given the delay rises linearly from zero
+	 *
+	 * @param percentiles the delay at each percentile between 0 and 100
+	 */
+	public static LatencyDistribution percentiles(Map<Double, Duration> percentiles) {
+		if (percentiles.isEmpty()) {
+			throw new IllegalArgumentException("at least one percentile is needed");
+		}
+		SortedMap<Double, Duration> sorted = new TreeMap<>(percentiles);
+		double[] ranks = new double[sorted.size() + 1];
+		long[] delays = new long[sorted.size() + 1];
+		int index = 1;
+		for (Map.Entry<Double, Duration> percentile : sorted.entrySet()) {
+			if (percentile.getKey() <= 0 || percentile.getKey() > 100) {
+				throw new IllegalArgumentException("percentile " + percentile.getKey() + " is not above 0 and at most 100");
+			}
+			ranks[index] = percentile.getKey();
+			delays[index] = percentile.getValue().toNanos();
+			index++;
+		}
+		return () -> {
+			double rank = ThreadLocalRandom.current().nextDouble(ranks[ranks.length - 1]);
+			int upper = 1;
+			while (ranks[upper] < rank) {
+				upper++;
+			}
+			double fraction = (rank - ranks[upper - 1]) / (ranks[upper] - ranks[upper - 1]);
+			return delays[upper - 1] + (long) (fraction * (delays[upper] - delays[upper - 1]));
+		};
+	}
+
+	/**
+	 * Replays the latencies recorded in a histogram, eg the serve time of a server that fronted the real service
+	 */
+	public static LatencyDistribution sampling(LatencyHistogram histogram) {
+		if (histogram.getCount() == 0) {
+			throw new IllegalArgumentException("the histogram has no recorded values");
+		}
+		return () -> histogram.getValueAtPercentile(ThreadLocalRandom.current().nextDouble(100));
+	}
+}
@@ -0,0 +1,79 @@
+package org.webmock.server;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * A ResponseBody that is only loaded when the first response needs it, so declaring an endpoint costs nothing until it is requested.
+ * The loaded body is kept and shared by every later response
+ */
+public final class LazyResponseBody implements ResponseBody {
+	private final String contentType;
+	private final Supplier<? extends ResponseBody> loader;
+	private volatile ResponseBody body;
+
+	private LazyResponseBody(String contentType, Supplier<? extends ResponseBody> loader) {
+		this.contentType = contentType;
+		this.loader = loader;
+	}
+
+	/**
+	 * @param contentType the Content-Type sent with the body, known up front so it does not load the body
+	 * @param loader      loads the body, called at most once unless it throws
+	 */
+	public static LazyResponseBody of(String contentType, Supplier<? extends ResponseBody> loader) {
+		return new LazyResponseBody(contentType, loader);
+	}
+
+	/**
+	 * @return true once a response has loaded the body
+	 */
+	public boolean isLoaded() {
+		return body != null;
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public long getLength() {
+		return body().getLength();
+	}
+
+	@Override
+	public InputStream openStream() {
+		return body().openStream();
+	}
+
+	@Override
+	public ResponseBody forRequest(MockRequest request) {
+		return body().forRequest(request);
+	}
+
+	@Override
+	public ResponseBody forRequest(MockRequest request, ResponseCache cache) {
+		return body().forRequest(request, cache);
+	}
+
+	private ResponseBody body() {
+		ResponseBody loaded = body;
+		if (loaded == null) {
+			synchronized (this) {
+				loaded = body;
+				if (loaded == null) {
+					loaded = loader.get();
+					body = loaded;
+				}
+			}
+		}
+		return loaded;
+	}
+
+	@Override
+	public String toString() {
+		ResponseBody loaded = body;
+		return loaded == null ? "<" + contentType + " loaded on first request>" : loaded.toString();
+	}
+}
@@ -0,0 +1,86 @@
+package org.webmock.server;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A body read from a memory mapped file, the payload stays in the page cache instead of on the heap however large the file is.
+ * Files larger than a single mapping are mapped as consecutive regions
+ */
+public final class MappedFileResponseBody implements ResponseBody {
+	private static final int MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+	private final Path file;
+	private final String contentType;
+	private final ByteBuffer[] regions;
+	private final long length;
+
+	MappedFileResponseBody(Path file, String contentType, int regionSize) {
+		this.file = file;
+		this.contentType = contentType;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			this.length = channel.size();
+			List<ByteBuffer> mapped = new ArrayList<>();
+			for (long position = 0; position < length; position += regionSize) {
+				mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, length - position)).asReadOnlyBuffer());
+			}
+			this.regions = mapped.toArray(new ByteBuffer[0]);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not map " + file, e);
+		}
+	}
+
+	/**
+	 * @param file        the file sent as the body, it must not be truncated while the server is running
+	 * @param contentType the Content-Type sent with the body
+	 * @throws UncheckedIOException if the file can not be mapped
+	 */
+	public static MappedFileResponseBody of(Path file, String contentType) {
+		return new MappedFileResponseBody(file, contentType, MAX_REGION_SIZE);
+	}
+
+	/**
+	 * @param file the file sent as the body with the Content-Type NanoHTTPD knows for its extension
+	 */
+	public static MappedFileResponseBody of(Path file) {
+		return of(file, NanoHTTPD.getMimeTypeForFile(file.getFileName().toString()));
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public InputStream openStream() {
+		if (regions.length == 1) {
+			return new ByteBufferInputStream(regions[0].duplicate());
+		}
+		List<InputStream> streams = new ArrayList<>(regions.length);
+		for (ByteBuffer region : regions) {
+			streams.add(new ByteBufferInputStream(region.duplicate()));
+		}
+		return new SequenceInputStream(Collections.enumeration(streams));
+	}
+
+	@Override
+	public String toString() {
+		return "<" + length + " bytes of " + contentType + " mapped from " + file + ">";
+	}
+}
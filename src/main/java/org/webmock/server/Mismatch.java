@@ -0,0 +1,51 @@
+package org.webmock.server;
+
+/**
+ * A request the server could not answer from its expectations, captured as it happened and only described when a report is built
+ */
+public final class Mismatch {
+	private final long sequence;
+	private final long timeMillis;
+	private final MockRequest request;
+	private final Throwable cause;
+
+	Mismatch(long sequence, long timeMillis, MockRequest request, Throwable cause) {
+		this.sequence = sequence;
+		this.timeMillis = timeMillis;
+		this.request = request;
+		this.cause = cause;
+	}
+
+	/**
+	 * @return the number of mismatches the server recorded before this one
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return when the request was received in milliseconds since the epoch
+	 */
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	/**
+	 * @return a copy of the request that does not depend on the connection it arrived on
+	 */
+	public MockRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return what the dispatcher threw for the request
+	 */
+	public Throwable getCause() {
+		return cause;
+	}
+
+	@Override
+	public String toString() {
+		return "#" + sequence + " " + request;
+	}
+}
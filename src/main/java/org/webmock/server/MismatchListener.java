@@ -0,0 +1,10 @@
+package org.webmock.server;
+
+/**
+ * Told about every request that did not match as soon as it is received, on the thread serving the request
+ */
+@FunctionalInterface
+public interface MismatchListener {
+
+	void mismatched(Mismatch mismatch);
+}
@@ -0,0 +1,117 @@
+package org.webmock.server;
+
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.StringDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The most recent mismatches of a server in a ring of slots claimed by an atomic sequence, so concurrent requests record without a lock
+ * and a burst of mismatches overwrites the oldest records instead of growing. The first mismatch is kept apart as it usually explains the rest
+ */
+final class MismatchLog {
+	static final int CAPACITY = 64;
+
+	private final AtomicReferenceArray<Mismatch> slots = new AtomicReferenceArray<>(CAPACITY);
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicReference<Mismatch> first = new AtomicReference<>();
+
+	/**
+	 * A writer that was overtaken by one a lap ahead leaves the slot to the newer mismatch
+	 *
+	 * @return the mismatch recorded for a copy of the request
+	 */
+	Mismatch record(MockRequest request, Throwable cause) {
+		long sequence = recorded.getAndIncrement();
+		Mismatch mismatch = new Mismatch(sequence, System.currentTimeMillis(), request.snapshot(), cause);
+		if (sequence == 0) {
+			first.set(mismatch);
+		}
+		int slot = (int) (sequence % CAPACITY);
+		Mismatch held;
+		do {
+			held = slots.get(slot);
+			if (held != null && held.getSequence() > sequence) {
+				break;
+			}
+		} while (!slots.compareAndSet(slot, held, mismatch));
+		return mismatch;
+	}
+
+	long getCount() {
+		return recorded.get();
+	}
+
+	/**
+	 * @return the mismatch with sequence 0, null until it has been recorded
+	 */
+	Mismatch getFirst() {
+		return first.get();
+	}
+
+	/**
+	 * @return the mismatches still held in the order they were recorded, a slot being overwritten while it is read is skipped
+	 */
+	List<Mismatch> recent() {
+		long end = recorded.get();
+		List<Mismatch> recent = new ArrayList<>();
+		for (long sequence = Math.max(0, end - CAPACITY); sequence < end; sequence++) {
+			Mismatch mismatch = slots.get((int) (sequence % CAPACITY));
+			if (mismatch != null && mismatch.getSequence() == sequence) {
+				recent.add(mismatch);
+			}
+		}
+		return recent;
+	}
+
+	/**
+	 * @return the first mismatch followed by the recent ones, the first only once when it is still held
+	 */
+	List<Mismatch> firstAndRecent() {
+		List<Mismatch> recent = recent();
+		Mismatch first = getFirst();
+		if (first != null && (recent.isEmpty() || recent.get(0).getSequence() > first.getSequence())) {
+			recent.add(0, first);
+		}
+		return recent;
+	}
+
+	/**
+	 * Describes the first mismatch and the ones still held, each with why the dispatcher did not match it.
+	 * A mismatch still being recorded is counted but may be missing from the description
+	 */
+	AssertionError report(RequestDispatcher dispatcher) {
+		long count = recorded.get();
+		Mismatch first = getFirst();
+		List<Mismatch> recent = recent();
+		StringDescription description = new StringDescription();
+		description.appendText(count + (count == 1 ? " request" : " requests") + " did not match an expectation");
+		if (first != null && !recent.isEmpty() && recent.get(0).getSequence() > first.getSequence()) {
+			description.appendText(", the first and the last " + recent.size() + " were:\n");
+			describe(first, dispatcher, description);
+		} else {
+			description.appendText(":\n");
+		}
+		for (Mismatch mismatch : recent) {
+			describe(mismatch, dispatcher, description);
+		}
+		Mismatch cause = first != null ? first : recent.isEmpty() ? null : recent.get(0);
+		return new AssertionError(description.toString(), cause == null ? null : cause.getCause());
+	}
+
+	private static void describe(Mismatch mismatch, RequestDispatcher dispatcher, StringDescription description) {
+		description.appendText(mismatch.toString()).appendText("\n    ");
+		if (mismatch.getCause() instanceof UnexpectedRequestError) {
+			dispatcher.describeMismatch(mismatch.getRequest(), description);
+		} else if (mismatch.getCause() instanceof SelfDescribing) {
+			description.appendDescriptionOf((SelfDescribing) mismatch.getCause());
+		} else {
+			description.appendText(String.valueOf(mismatch.getCause()));
+		}
+		description.appendText("\n");
+	}
+}
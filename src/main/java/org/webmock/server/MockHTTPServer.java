@@ -4,15 +4,39 @@ import fi.iki.elonen.NanoHTTPD;
 import org.jmock.Mockery;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 public class MockHTTPServer extends NanoHTTPD {
-	private static Map<Integer, MockHTTPServer> mockServers = new HashMap<Integer, MockHTTPServer>();
-	private RequestHandler requestHandler;
-	private Mockery context;
-	private Throwable thrown;
+	public static final String METRICS_PATH = "/__admin/metrics";
+	private static final int READ_CHUNK_SIZE = 8 * 1024;
+	private static final ConcurrentMap<Integer, MockHTTPServer> mockServers = new ConcurrentHashMap<>();
+	private volatile ExpectationSet expectations;
+	private final MismatchListener mismatchListener;
+	private final boolean failFast;
+	private final Thread failFastTarget;
+	private RequestBodyReader bodyReader;
+	private final int maxBodySize;
+	private final ServerMetrics metrics;
+	private final String metricsPath;
+	private volatile int registeredPort;
+	private final int idleTimeoutMillis;
+	private final int maxRequestsPerConnection;
+	private final ResponseCache responseCache;
 
 	public static MockHTTPServer getServerOnPort(int port) {
 		return mockServers.get(port);
@@ -20,37 +44,178 @@ public class MockHTTPServer extends NanoHTTPD {
 
 	public static void stopAllServers() {
 		for (Integer port : mockServers.keySet()) {
-			mockServers.get(port).stop();
+			MockHTTPServer server = mockServers.remove(port);
+			if (server != null) {
+				server.stop();
+			}
 		}
-		mockServers.clear();
 	}
 
 
 	public static MockHTTPServer startServer(int port, RequestHandler requestHandler, Mockery context) throws IOException {
+		return startServer(port, new MockeryRequestDispatcher(requestHandler, context));
+	}
 
-		MockHTTPServer currentServer = mockServers.get(port);
-		if (currentServer == null) {
-			currentServer = new MockHTTPServer(port, requestHandler, context);
-			mockServers.put(port, currentServer);
-			currentServer.start();
-		}
+	public static MockHTTPServer startServer(int port, RequestDispatcher dispatcher) throws IOException {
+		return startServer(port, dispatcher, new ServerConfiguration());
+	}
 
-		return currentServer;
+	/**
+	 * Starts a server on the port unless one is already running there, in which case that server is returned.
+	 * Port 0 always starts a new server on a free port chosen by the operating system, read it back with getListeningPort()
+	 */
+	public static MockHTTPServer startServer(int port, RequestDispatcher dispatcher, ServerConfiguration configuration) throws IOException {
+		if (port == 0) {
+			MockHTTPServer server = new MockHTTPServer(port, dispatcher, configuration);
+			server.start();
+			server.registeredPort = server.getListeningPort();
+			mockServers.put(server.registeredPort, server);
+			return server;
+		}
+		try {
+			return mockServers.computeIfAbsent(port, unused -> {
+				MockHTTPServer server = new MockHTTPServer(port, dispatcher, configuration);
+				try {
+					server.start();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				server.registeredPort = port;
+				return server;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
 	}
 
 	MockHTTPServer(int port, RequestHandler requestHandler, Mockery context) throws IOException {
+		this(port, new MockeryRequestDispatcher(requestHandler, context));
+	}
+
+	MockHTTPServer(int port, RequestDispatcher dispatcher) {
+		this(port, dispatcher, new ServerConfiguration());
+	}
+
+	MockHTTPServer(int port, RequestDispatcher dispatcher, ServerConfiguration configuration) {
 		super(port);
-		this.requestHandler = requestHandler;
-		this.context = context;
+		this.failFast = configuration.isFailFast();
+		this.failFastTarget = configuration.getFailFastTarget();
+		this.expectations = new ExpectationSet(dispatcher, failFast, failFastTarget);
+		this.responseCache = configuration.getResponseCacheBytes() > 0 ? new ResponseCache(configuration.getResponseCacheBytes()) : null;
+		this.metrics = new ServerMetrics(() -> expectations.dispatcher.getExpectationMetrics(), responseCache);
+		this.metricsPath = configuration.getMetricsPath();
+		this.idleTimeoutMillis = configuration.getIdleTimeoutMillis();
+		this.maxRequestsPerConnection = configuration.getMaxRequestsPerConnection();
+		this.mismatchListener = configuration.getMismatchListener();
+		if (configuration.getAsyncRunnerFactory() != null) {
+			setAsyncRunner(configuration.getAsyncRunnerFactory().get());
+		}
+		this.maxBodySize = configuration.getMaxRequestBodySize();
+		if (configuration.isStreamingRequestBody()) {
+			this.bodyReader = new RequestBodyReader(configuration.getMaxStreamedBodySize());
+		}
+		if (configuration.getEngineFactory() != null) {
+			Supplier<? extends ServerEngine> engineFactory = configuration.getEngineFactory();
+			setServerSocketFactory(() -> new EngineServerSocket(engineFactory.get(), idleTimeoutMillis, new ServingEngineHandler()));
+		}
+	}
+
+	/**
+	 * @return the connections currently served, queued and rejected by this server
+	 */
+	public RunnerStatistics getRunnerStatistics() {
+		if (asyncRunner instanceof ReportingAsyncRunner) {
+			return ((ReportingAsyncRunner) asyncRunner).getStatistics();
+		}
+		int running = asyncRunner instanceof DefaultAsyncRunner ? ((DefaultAsyncRunner) asyncRunner).getRunning().size() : 0;
+		return new RunnerStatistics(running, 0, 0);
+	}
+
+	/**
+	 * @return how many requests this server has served on each connection
+	 */
+	public ConnectionStatistics getConnectionStatistics() {
+		return metrics.getConnections();
+	}
+
+	/**
+	 * @return the hits, misses and evictions of the response cache or null when the server was not configured with one
+	 */
+	public ResponseCacheStatistics getResponseCacheStatistics() {
+		return metrics.getResponseCache();
+	}
+
+	/**
+	 * Starts listening with the idle timeout of the configuration as the read timeout of every connection
+	 */
+	@Override
+	public void start() throws IOException {
+		start(idleTimeoutMillis);
+	}
+
+	/**
+	 * Stops listening, closes the connections and then stops the workers of a pooled or virtual thread runner
+	 */
+	@Override
+	public void stop() {
+		expectations.retire();
+		super.stop();
+		if (asyncRunner instanceof ExecutorAsyncRunner) {
+			((ExecutorAsyncRunner) asyncRunner).shutdown();
+		}
+	}
+
+	@Override
+	protected ClientHandler createClientHandler(Socket socket, InputStream inputStream) {
+		return new TrackedClientHandler(inputStream, socket);
+	}
+
+	/**
+	 * @return the hit counts, latencies and bytes recorded by this server while it serves requests
+	 */
+	public ServerMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Serves the request and asks the client to close the connection once it has served the maximum requests per connection.
+	 * NanoHTTPD keeps a HTTP/1.1 connection open between requests and reads pipelined requests from it in order
+	 */
+	@Override
+	public NanoHTTPD.Response serve(NanoHTTPD.IHTTPSession session) {
+		long served = metrics.connections().served();
+		Response response = respond(session);
+		if (maxRequestsPerConnection > 0 && served >= maxRequestsPerConnection) {
+			response.addHeader("Connection", "close");
+			response.closeConnection(true);
+			metrics.connections().closedAtLimit();
+		}
+		return response;
 	}
 
-    @Override
-    public NanoHTTPD.Response serve(NanoHTTPD.IHTTPSession session) {
+    private NanoHTTPD.Response respond(NanoHTTPD.IHTTPSession session) {
+		long started = System.nanoTime();
+		if (metricsPath != null && session.getMethod() == Method.GET && metricsPath.equals(session.getUri())) {
+			return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", metrics.toJson());
+		}
+		Map<String, String> headers = session.getHeaders();
+		long contentLength = contentLength(headers);
+		if (contentLength > maxBodySize) {
+			Response response = NanoHTTPD.newFixedLengthResponse(Response.Status.PAYLOAD_TOO_LARGE, NanoHTTPD.MIME_PLAINTEXT,
+					"Request body of " + contentLength + " bytes is larger than " + maxBodySize);
+			response.closeConnection(true);
+			return response;
+		}
+		if (bodyReader != null) {
+			return serveStreamingBody(session, headers, contentLength, started);
+		}
 		String body =null;
 		if (session.getMethod().equals(Method.POST)) {
 			body = getBody(session);
-        }
-        return serve(session.getUri(), session.getMethod(), session.getHeaders(), session.getParameters(), body);
+        } else if (contentLength > 0) {
+			body = readBody(session, (int) contentLength, charsetOf(headers.get("content-type")));
+		}
+        return serve(new MockRequest(session.getMethod().name(), session.getUri(), headers, session.getParameters(), body), started);
     }
 
     private String getBody(IHTTPSession session) {
@@ -68,25 +233,275 @@ public class MockHTTPServer extends NanoHTTPD {
 
 
 
-    private NanoHTTPD.Response serve(String uri, Method method, Map<String, String> headers, Map<String, List<String>> params, String body) {
+	/**
+	 * parseBody only keeps the body of a POST, PUT bodies go to a temp file and other methods are not read at all,
+	 * so their body is read from the connection as it is sent. The buffer grows with what arrives rather than with the declared length
+	 *
+	 * @param contentLength the declared length of the body, already checked against the maximum body size
+	 */
+	private String readBody(IHTTPSession session, int contentLength, Charset charset) {
 		try {
-			requestHandler.url(uri);
-			for (String param : params.keySet()) {
-				requestHandler.param(param, params.get(param));
+			byte[] bytes = new byte[Math.min(contentLength, READ_CHUNK_SIZE)];
+			int read = 0;
+			while (read < contentLength) {
+				if (read == bytes.length) {
+					bytes = Arrays.copyOf(bytes, (int) Math.min(contentLength, bytes.length * 2L));
+				}
+				int count = session.getInputStream().read(bytes, read, bytes.length - read);
+				if (count < 0) {
+					break;
+				}
+				read += count;
 			}
+			return new String(bytes, 0, read, charset);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
 
-			if (body!=null) {
-				requestHandler.bodyMatching(body);
+    /**
+     * Reads the body straight from the connection into a pooled buffer instead of letting parseBody spool it to a temp file,
+     * form posts are still decoded into parameters
+     */
+    private Response serveStreamingBody(IHTTPSession session, Map<String, String> headers, long contentLength, long started) {
+		Map<String, List<String>> params = session.getParameters();
+		RequestBody body = null;
+		ExpectationSet current = expectations;
+		current.inFlight.increment();
+		try {
+			if (contentLength > 0) {
+				String contentType = headers.get("content-type");
+				body = bodyReader.read(session.getInputStream(), (int) contentLength, charsetOf(contentType));
+				if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+					params = mergeParameters(params, decodeParameters(body.asString()));
+					body.release();
+					body = null;
+				}
+			}
+			return serve(new MockRequest(session.getMethod().name(), session.getUri(), headers, params, body), started);
+		} catch (IOException e) {
+			mismatched(current, new MockRequest(session.getMethod().name(), session.getUri(), headers, params, (RequestBody) null), e);
+			return NanoHTTPD.newFixedLengthResponse(Response.Status.INTERNAL_ERROR, null, "Unexpected event :" + e.getMessage());
+		} finally {
+			if (body != null) {
+				body.release();
 			}
-			Response response = NanoHTTPD.newFixedLengthResponse(getStatus(requestHandler.getResponseStatus()), null, requestHandler.returnValue().toString());
-            return response;
+			current.inFlight.decrement();
+		}
+	}
+
+	private static long contentLength(Map<String, String> headers) {
+		String contentLength = headers.get("content-length");
+		if (contentLength == null) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(contentLength.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static Charset charsetOf(String contentType) {
+		if (contentType == null || !contentType.toLowerCase().contains("charset=")) {
+			return StandardCharsets.UTF_8;
+		}
+		try {
+			return Charset.forName(new ContentType(contentType).getEncoding());
+		} catch (IllegalArgumentException e) {
+			return StandardCharsets.UTF_8;
+		}
+	}
+
+	private static Map<String, List<String>> mergeParameters(Map<String, List<String>> query, Map<String, List<String>> form) {
+		Map<String, List<String>> merged = new HashMap<>(query);
+		for (Map.Entry<String, List<String>> param : form.entrySet()) {
+			merged.merge(param.getKey(), param.getValue(), (first, second) -> {
+				List<String> values = new ArrayList<>(first);
+				values.addAll(second);
+				return values;
+			});
+		}
+		return merged;
+	}
+
+    private NanoHTTPD.Response serve(MockRequest request, long started) {
+		EngineResponse answer = answer(request, started);
+		DelayScheduler.await(answer.getDelayNanos());
+		ResponseBody body = answer.getBody();
+		Response.IStatus status = getStatus(answer.getStatus());
+		return body.getLength() < 0
+				? new StreamedResponse(status, body.getContentType(), body.openStream())
+				: NanoHTTPD.newFixedLengthResponse(status, body.getContentType(), body.openStream(), body.getLength());
+	}
+
+	/**
+	 * Dispatches the request and records its metrics whichever engine the request arrived on, the latency of the response is
+	 * sampled into the EngineResponse for the engine to wait out. The request counts as in flight until a mismatch is recorded
+	 * so a verification running meanwhile waits to see it
+	 */
+	private EngineResponse answer(MockRequest request, long started) {
+		long requestBytes = request.getRequestBody() == null ? 0 : request.getRequestBody().getLength();
+		ExpectationSet current = expectations;
+		current.inFlight.increment();
+		try {
+			return answer(current, request, requestBytes, started);
+		} finally {
+			current.inFlight.decrement();
+		}
+	}
+
+	private EngineResponse answer(ExpectationSet current, MockRequest request, long requestBytes, long started) {
+		Mismatch first = current.failFast ? current.mismatches.getFirst() : null;
+		if (first != null) {
+			return internalError("Failing fast after " + first);
+		}
+		long matching = System.nanoTime();
+		try {
+			MockResponse mockResponse = current.dispatcher.dispatch(request);
+			long matched = System.nanoTime();
+			ResponseBody body = mockResponse.getBody().forRequest(request, responseCache);
+			metrics.recordMatch(mockResponse.getMetrics(), matched - matching, System.nanoTime() - started, requestBytes, Math.max(0, body.getLength()));
+			long delay = body instanceof ShapedResponseBody ? ((ShapedResponseBody) body).nextDelayNanos() : 0;
+			return new EngineResponse(mockResponse.getStatus(), getStatus(mockResponse.getStatus()).getDescription(), body, false, delay);
 		} catch (java.lang.Throwable e) {
-			this.thrown = e;
-			//stop();
+			metrics.recordMismatch(System.nanoTime() - matching, System.nanoTime() - started, requestBytes, 0);
+			mismatched(current, request, e);
+			return internalError("Unexpected event :" + e.getMessage());
+		}
+	}
+
+	private static EngineResponse internalError(String message) {
+		return new EngineResponse(500, Response.Status.INTERNAL_ERROR.getDescription(), ByteBufferResponseBody.of(message.getBytes(StandardCharsets.UTF_8), null), false);
+	}
+
+	/**
+	 * Records the mismatch, tells the listener and on the first mismatch of a fail fast server interrupts its target
+	 */
+	private void mismatched(ExpectationSet current, MockRequest request, Throwable cause) {
+		Mismatch mismatch = current.mismatches.record(request, cause);
+		if (mismatch.getSequence() == 0) {
+			current.interruptTarget();
+		}
+		if (mismatchListener != null) {
+			try {
+				mismatchListener.mismatched(mismatch);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return the first mismatch and the most recent ones in the order they were received, the 64 most recent are kept
+	 */
+	public List<Mismatch> getMismatches() {
+		return expectations.mismatches.firstAndRecent();
+	}
+
+	/**
+	 * @param name the host name or path prefix the virtual host was built with
+	 * @return the virtual host, to verify its expectations on their own
+	 * @throws IllegalArgumentException when the server has no virtual host by that name
+	 */
+	public VirtualHost getVirtualHost(String name) {
+		RequestDispatcher dispatcher = expectations.dispatcher;
+		VirtualHost virtualHost = dispatcher instanceof VirtualHostDispatcher ? ((VirtualHostDispatcher) dispatcher).getVirtualHost(name) : null;
+		if (virtualHost == null) {
+			throw new IllegalArgumentException("The server has no virtual host " + name);
+		}
+		return virtualHost;
+	}
+
+	/**
+	 * Answers the requests of a ServerEngine bound in place of NanoHTTPD's server socket
+	 */
+	private final class ServingEngineHandler implements EngineHandler {
+
+		@Override
+		public void connectionOpened() {
+			metrics.connections().opened();
+		}
+
+		@Override
+		public void connectionClosed() {
+			metrics.connections().closed();
+		}
+
+		@Override
+		public EngineResponse serve(EngineRequest request) {
+			long started = System.nanoTime();
+			metrics.connections().served(request.getRequestsOnConnection());
+			EngineResponse response = respond(request, started);
+			if (maxRequestsPerConnection > 0 && request.getRequestsOnConnection() >= maxRequestsPerConnection) {
+				metrics.connections().closedAtLimit();
+				return response.closingConnection();
+			}
+			return response;
+		}
+
+		private EngineResponse respond(EngineRequest request, long started) {
+			if (metricsPath != null && "GET".equals(request.getMethod()) && metricsPath.equals(request.getUri())) {
+				return new EngineResponse(200, Response.Status.OK.getDescription(), ByteBufferResponseBody.of(metrics.toJson().getBytes(StandardCharsets.UTF_8), "application/json"), false);
+			}
+			RequestBody body = null;
+			if (request.getBody() != null && request.getBodyLength() > 0) {
+				String contentType = request.getHeader("content-type");
+				body = new RequestBody(request.getBody(), request.getBodyLength(), charsetOf(contentType), null);
+				if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+					Map<String, List<String>> params = mergeParameters(queryParameters(request), decodeParameters(body.asString()));
+					return answer(new MockRequest(request.getMethod(), request.getUri(), request.getHeaders(), params, (RequestBody) null), started);
+				}
+			}
+			if (request.getHead() != null) {
+				return answer(new MockRequest(request.getMethod(), request.getUri(), request.getHead(), body), started);
+			}
+			return answer(new MockRequest(request.getMethod(), request.getUri(), request.getHeaders(), queryParameters(request), body), started);
 		}
 
-		return NanoHTTPD.newFixedLengthResponse(Response.Status.INTERNAL_ERROR, null, "Unexpected event :" + thrown.getMessage());
+		private Map<String, List<String>> queryParameters(EngineRequest request) {
+			if (request.getHead() != null) {
+				return request.getHead().parameters();
+			}
+			return request.getQueryString() == null ? new HashMap<>() : decodeParameters(request.getQueryString());
+		}
+	}
 
+	/**
+	 * A streamed response must reach the client chunk by chunk, gzip would hold the chunks back until its buffer fills
+	 */
+	@Override
+	protected boolean useGzipWhenAccepted(Response response) {
+		return !(response instanceof StreamedResponse) && super.useGzipWhenAccepted(response);
+	}
+
+	/**
+	 * Runs every request of one connection on the thread that accepted it, so the connection is tracked for as long as the thread serves it
+	 */
+	private final class TrackedClientHandler extends ClientHandler {
+		private TrackedClientHandler(InputStream inputStream, Socket socket) {
+			super(inputStream, socket);
+		}
+
+		@Override
+		public void run() {
+			metrics.connections().attach();
+			try {
+				super.run();
+			} finally {
+				metrics.connections().detach();
+			}
+		}
+	}
+
+	/**
+	 * A response of unknown length, NanoHTTPD sends it with chunked transfer encoding writing one chunk for every read of the stream
+	 */
+	private static final class StreamedResponse extends Response {
+		private StreamedResponse(IStatus status, String mimeType, InputStream data) {
+			super(status, mimeType, data, -1);
+		}
 	}
 
     private Response.IStatus getStatus(int responseStatus) {
@@ -104,15 +519,106 @@ public class MockHTTPServer extends NanoHTTPD {
 		stop();
 
 		releaseServerInstance();
-		if (thrown != null) {
-			throw new AssertionError(thrown);
+		expectations.verify();
+	}
+
+	/**
+	 * Verifies the expectations set by the last reset, or by the build when the server was not reset, and keeps the server running
+	 * so the next test can reset it instead of binding a new server. Requests still being answered are waited for
+	 */
+	public void verify() {
+		expectations.verify();
+	}
+
+	/**
+	 * Swaps in the expectations of the next test while the listener, its connections and the workers stay up, so a test costs
+	 * the compiling of its expectations instead of a bind, a close and new threads. The expectations and mismatches of the previous test
+	 * are replaced in one write, a request being answered while the server is reset is matched and recorded against the set it started with.
+	 * The configuration the server was built with still applies and cached template responses are dropped
+	 *
+	 * @param dispatcher matches the requests from now on, see MockHTTPServerBuilder.resetServer
+	 */
+	public void reset(RequestDispatcher dispatcher) {
+		ExpectationSet previous = expectations;
+		expectations = new ExpectationSet(dispatcher, failFast, failFastTarget);
+		previous.retire();
+		if (responseCache != null) {
+			responseCache.clear();
+		}
+	}
+
+	/**
+	 * The dispatcher of one set of expectations with the mismatches recorded against it, replaced as a whole when the server is reset
+	 */
+	private static final class ExpectationSet {
+		private static final long QUIESCE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+		private final RequestDispatcher dispatcher;
+		private final MismatchLog mismatches = new MismatchLog();
+		private final LongAdder inFlight = new LongAdder();
+		private final boolean failFast;
+		private final Thread failFastTarget;
+		private boolean retired;
+		private boolean interrupted;
+
+		/**
+		 * @param failFast       whether requests after the first mismatch are answered with an internal error
+		 * @param failFastTarget the thread interrupted at the first mismatch or null for none
+		 */
+		private ExpectationSet(RequestDispatcher dispatcher, boolean failFast, Thread failFastTarget) {
+			this.dispatcher = dispatcher;
+			this.failFast = failFast;
+			this.failFastTarget = failFastTarget;
+		}
+
+		/**
+		 * Interrupts the target unless the set was replaced or the server stopped while the mismatched request was answered
+		 */
+		private synchronized void interruptTarget() {
+			if (failFastTarget != null && !retired) {
+				interrupted = true;
+				failFastTarget.interrupt();
+			}
+		}
+
+		/**
+		 * No interrupt is sent for this set from now on, one already sent is cleared when the target is the calling thread
+		 */
+		private synchronized void retire() {
+			retired = true;
+			clearInterrupt();
+		}
+
+		private synchronized void clearInterrupt() {
+			if (interrupted && failFastTarget == Thread.currentThread()) {
+				interrupted = false;
+				Thread.interrupted();
+			}
+		}
+
+		/**
+		 * Waits for the requests being answered against this set to be dispatched and their mismatches recorded before the log is read
+		 */
+		private void verify() {
+			awaitQuiescence();
+			if (mismatches.getCount() > 0) {
+				clearInterrupt();
+				throw mismatches.report(dispatcher);
+			}
+			dispatcher.assertIsSatisfied();
+		}
+
+		private void awaitQuiescence() {
+			long deadline = System.nanoTime() + QUIESCE_TIMEOUT_NANOS;
+			while (inFlight.sum() > 0 && System.nanoTime() - deadline < 0) {
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+			}
 		}
-		context.assertIsSatisfied();
 	}
 
     private void releaseServerInstance() {
 
-		mockServers.remove(this.getListeningPort());
+		mockServers.remove(registeredPort, this);
     }
 
 
@@ -0,0 +1,167 @@
+package org.webmock.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of an incoming http request the expectations are matched against
+ */
+public final class MockRequest {
+	private final String method;
+	private final String uri;
+	private final RequestHead head;
+	private Map<String, String> headers;
+	private Map<String, List<String>> parameters;
+	private final RequestBody body;
+	private Map<String, String> pathVariables = Collections.emptyMap();
+	private UriPattern matchedPattern;
+	private Map<String, String> matchedVariables;
+
+	public MockRequest(String method, String uri, Map<String, String> headers, Map<String, List<String>> parameters, String body) {
+		this(method, uri, headers, parameters, body == null ? null : RequestBody.of(body));
+	}
+
+	public MockRequest(String method, String uri, Map<String, String> headers, Map<String, List<String>> parameters, RequestBody body) {
+		this.method = method;
+		this.uri = uri;
+		this.head = null;
+		this.headers = headers;
+		this.parameters = parameters;
+		this.body = body;
+	}
+
+	/**
+	 * A request whose headers and parameters are read from the slices of a parsed head and only turned into maps when asked for,
+	 * it must not be kept once it has been answered as the head is reused for the next request of the connection
+	 */
+	MockRequest(String method, String uri, RequestHead head, RequestBody body) {
+		this.method = method;
+		this.uri = uri;
+		this.head = head;
+		this.body = body;
+	}
+
+	private MockRequest(MockRequest request, String uri) {
+		this.method = request.method;
+		this.uri = uri;
+		this.head = request.head;
+		this.headers = request.headers;
+		this.parameters = request.parameters;
+		this.body = request.body;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public Map<String, String> getHeaders() {
+		if (headers == null) {
+			headers = head.headers();
+		}
+		return headers;
+	}
+
+	/**
+	 * @param name the header name in lower case
+	 * @return the value of the header or null when the request does not carry it
+	 */
+	public String getHeader(String name) {
+		return head == null ? headers.get(name) : head.header(name);
+	}
+
+	public Map<String, List<String>> getParameters() {
+		if (parameters == null) {
+			parameters = head.parameters();
+		}
+		return parameters;
+	}
+
+	/**
+	 * @param name the header name in lower case
+	 */
+	boolean hasHeader(String name, String value) {
+		return head == null ? value.equals(headers.get(name)) : head.headerEquals(name, value);
+	}
+
+	/**
+	 * @param names  the UTF-8 encoded names of the expected parameters
+	 * @param values the UTF-8 encoded values of each name
+	 * @return true when the request carries exactly the expected parameters, compared as bytes when the request was parsed into a head
+	 */
+	boolean hasParameters(Map<String, List<String>> expected, byte[][] names, byte[][][] values) {
+		return head == null ? expected.equals(parameters) : head.parametersEqual(names, values);
+	}
+
+	/**
+	 * @return the raw request body or null when the request did not carry one
+	 */
+	public String getBody() {
+		return body == null ? null : body.asString();
+	}
+
+	/**
+	 * @return the undecoded request body or null when the request did not carry one
+	 */
+	public RequestBody getRequestBody() {
+		return body;
+	}
+
+	/**
+	 * @return the variables of the uri template or the named groups of the uri regular expression of the expectation that matched,
+	 * empty until the request is dispatched or when the expectation has an exact uri
+	 */
+	public Map<String, String> getPathVariables() {
+		return pathVariables;
+	}
+
+	/**
+	 * @return a copy holding its own maps and body, valid after the request has been answered and its connection has moved on
+	 */
+	MockRequest snapshot() {
+		Map<String, List<String>> parameters = new HashMap<>();
+		for (Map.Entry<String, List<String>> parameter : getParameters().entrySet()) {
+			parameters.put(parameter.getKey(), new ArrayList<>(parameter.getValue()));
+		}
+		MockRequest snapshot = new MockRequest(method, uri, new HashMap<>(getHeaders()), parameters, getBody());
+		snapshot.pathVariables = pathVariables;
+		return snapshot;
+	}
+
+	/**
+	 * @return the same request for another uri, sharing the headers, parameters and body of this one
+	 */
+	MockRequest withUri(String uri) {
+		return new MockRequest(this, uri);
+	}
+
+	void setPathVariables(Map<String, String> pathVariables) {
+		this.pathVariables = pathVariables;
+	}
+
+	/**
+	 * Keeps the variables extracted while the request was matched to a UriPattern so the pattern is not run again once it is dispatched
+	 */
+	void matched(UriPattern pattern, Map<String, String> variables) {
+		this.matchedPattern = pattern;
+		this.matchedVariables = variables;
+	}
+
+	/**
+	 * @return the variables kept for the pattern or null when another pattern matched the request last
+	 */
+	Map<String, String> variablesMatchedBy(UriPattern pattern) {
+		return matchedPattern == pattern ? matchedVariables : null;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + uri + (getParameters().isEmpty() ? "" : " " + getParameters()) + (body == null ? "" : " body \"" + body + "\"");
+	}
+}
@@ -0,0 +1,48 @@
+package org.webmock.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The response a RequestDispatcher selected for a request
+ */
+public final class MockResponse {
+	private final int status;
+	private final ResponseBody body;
+	private final CompiledExpectation expectation;
+
+	public MockResponse(int status, ResponseBody body) {
+		this(status, body, null);
+	}
+
+	private MockResponse(int status, ResponseBody body, CompiledExpectation expectation) {
+		this.status = status;
+		this.body = body;
+		this.expectation = expectation;
+	}
+
+	/**
+	 * A html response encoded once as UTF-8
+	 */
+	public MockResponse(int status, String body) {
+		this(status, ByteBufferResponseBody.of(body, StandardCharsets.UTF_8));
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public ResponseBody getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the metrics of the expectation this response belongs to or null when the dispatcher does not record them
+	 */
+	RequestMetrics getMetrics() {
+		return expectation == null ? null : expectation.getMetrics();
+	}
+
+	MockResponse forExpectation(CompiledExpectation expectation) {
+		return new MockResponse(status, body, expectation);
+	}
+}
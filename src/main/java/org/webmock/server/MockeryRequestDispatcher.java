@@ -0,0 +1,58 @@
+package org.webmock.server;
+
+import org.jmock.Mockery;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dispatches every part of a request through the jMock proxy of the RequestHandler
+ */
+public class MockeryRequestDispatcher implements RequestDispatcher {
+	private final RequestHandler requestHandler;
+	private final Mockery context;
+	private final boolean checksMethodAndHeaders;
+
+	public MockeryRequestDispatcher(RequestHandler requestHandler, Mockery context) {
+		this(requestHandler, context, false);
+	}
+
+	/**
+	 * @param checksMethodAndHeaders also pass the method and every header to the RequestHandler, the expectations must then allow those calls
+	 */
+	public MockeryRequestDispatcher(RequestHandler requestHandler, Mockery context, boolean checksMethodAndHeaders) {
+		this.requestHandler = requestHandler;
+		this.context = context;
+		this.checksMethodAndHeaders = checksMethodAndHeaders;
+	}
+
+	@Override
+	public MockResponse dispatch(MockRequest request) {
+		requestHandler.url(request.getUri());
+		if (checksMethodAndHeaders) {
+			requestHandler.method(request.getMethod());
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				requestHandler.header(header.getKey(), header.getValue());
+			}
+		}
+		Map<String, List<String>> params = request.getParameters();
+		for (String param : params.keySet()) {
+			requestHandler.param(param, params.get(param));
+		}
+
+		if (request.getBody() != null) {
+			requestHandler.bodyMatching(request.getBody());
+		}
+		int status = requestHandler.getResponseStatus();
+		Object returnValue = requestHandler.returnValue();
+		if (returnValue instanceof ResponseBody) {
+			return new MockResponse(status, (ResponseBody) returnValue);
+		}
+		return new MockResponse(status, returnValue == null ? "" : returnValue.toString());
+	}
+
+	@Override
+	public void assertIsSatisfied() {
+		context.assertIsSatisfied();
+	}
+}
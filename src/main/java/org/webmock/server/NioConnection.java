@@ -0,0 +1,599 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A connection of a NioServerEngine. Its event loop reads and parses one request at a time and stops reading while the request is answered,
+ * so pipelined requests are answered in order and a client sending faster than it is answered is held back by TCP.
+ * The worker answering a request writes the response into pooled buffers queued for the event loop to send,
+ * and waits while more than HIGH_WATER bytes are queued so a slow client bounds the memory its responses take.
+ * No thread waits out a delay: a delayed response and every slice of a throttled body are resumed on a worker by the DelayScheduler,
+ * whichever worker is free, so their body is detached from the worker that rendered it before the first wait
+ */
+final class NioConnection {
+	private static final int HIGH_WATER = 256 * 1024;
+	private static final int LOW_WATER = 64 * 1024;
+	private static final int CHUNK_FRAMING = 12;
+	private static final int SLICES_PER_SECOND = 20;
+	private static final long BACKLOG_RETRY_NANOS = 10_000_000L;
+	private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final NioServerEngine engine;
+	private final NioEventLoop loop;
+	private final SocketChannel channel;
+	private final HttpRequestParser parser;
+	private SelectionKey key;
+	private ByteBuffer pipelined;
+	private boolean answering;
+	private boolean closeAfterWrite;
+	private long requests;
+	private long lastActivity = System.nanoTime();
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition drained = lock.newCondition();
+	private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private long queuedBytes;
+	private volatile boolean closed;
+
+	NioConnection(NioServerEngine engine, NioEventLoop loop, SocketChannel channel) {
+		this.engine = engine;
+		this.loop = loop;
+		this.channel = channel;
+		this.parser = engine.newParser();
+	}
+
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	/**
+	 * Reads what has arrived into the buffer of the event loop and parses it, called on the event loop
+	 */
+	void read(ByteBuffer readBuffer) {
+		readBuffer.clear();
+		int read;
+		try {
+			read = channel.read(readBuffer);
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		if (read < 0) {
+			close();
+			return;
+		}
+		lastActivity = System.nanoTime();
+		readBuffer.flip();
+		parse(readBuffer);
+	}
+
+	private void parse(ByteBuffer in) {
+		try {
+			if (!parser.feed(in)) {
+				if (parser.awaitsContinue()) {
+					parser.continueSent();
+					queue(ByteBuffer.wrap(CONTINUE));
+				}
+				return;
+			}
+			if (in.hasRemaining()) {
+				pipelined = in.isDirect() ? ByteBuffer.allocate(in.remaining()).put(in).flip() : in;
+			}
+			answer(parser.toRequest(++requests), parser.isKeepAlive(), "HEAD".equals(parser.getMethod()));
+		} catch (HttpParseException e) {
+			reject(e);
+		}
+	}
+
+	private void answer(EngineRequest request, boolean keepAlive, boolean head) {
+		answering = true;
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		try {
+			engine.getWorkers().execute(() -> respond(request, keepAlive, head));
+		} catch (RejectedExecutionException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Answers a request that could not be parsed and closes the connection once the answer is sent
+	 */
+	private void reject(HttpParseException e) {
+		answering = true;
+		closeAfterWrite = true;
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		byte[] message = e.getMessage().getBytes(StandardCharsets.UTF_8);
+		String head = "HTTP/1.1 " + e.getStatusLine() + "\r\nContent-Type: text/plain; charset=UTF-8\r\nContent-Length: " + message.length + "\r\nConnection: close\r\n\r\n";
+		ByteBuffer response = ByteBuffer.allocate(head.length() + message.length);
+		response.put(head.getBytes(StandardCharsets.US_ASCII)).put(message).flip();
+		queue(response);
+	}
+
+	/**
+	 * Runs on a worker, a response with a delay is left to the timer so the worker is free while it waits
+	 */
+	private void respond(EngineRequest request, boolean keepAlive, boolean head) {
+		EngineResponse response;
+		try {
+			response = engine.getHandler().serve(request);
+		} catch (RuntimeException | Error e) {
+			response = new EngineResponse(500, "500 Internal Server Error", ByteBufferResponseBody.of(("Unexpected event :" + e.getMessage()).getBytes(StandardCharsets.UTF_8), null), true);
+		}
+		boolean close = !keepAlive || response.isCloseConnection();
+		if (response.getDelayNanos() > 0) {
+			EngineResponse answer = response.detached();
+			DelayScheduler.schedule(() -> resume(() -> send(answer, close, head)), answer.getDelayNanos());
+		} else {
+			send(response, close, head);
+		}
+	}
+
+	/**
+	 * Hands the next step of a response back to a worker, called on the timer which must not block
+	 */
+	private void resume(Runnable step) {
+		try {
+			engine.getWorkers().execute(step);
+		} catch (RejectedExecutionException e) {
+			loop.execute(this::close);
+		}
+	}
+
+	private void send(EngineResponse response, boolean close, boolean head) {
+		try {
+			if (write(response, close, head)) {
+				loop.execute(() -> responded(close));
+			}
+		} catch (IOException e) {
+			loop.execute(this::close);
+		}
+	}
+
+	/**
+	 * @return false when a throttled or streamed body goes on being sent by a ThrottledWrite or StreamedWrite, which reports the response once it is sent
+	 */
+	private boolean write(EngineResponse response, boolean close, boolean head) throws IOException {
+		ResponseBody body = response.getBody();
+		long length = body == null ? 0 : body.getLength();
+		StringBuilder header = new StringBuilder(160).append("HTTP/1.1 ").append(response.getStatusLine()).append("\r\n");
+		if (body != null && body.getContentType() != null) {
+			header.append("Content-Type: ").append(body.getContentType()).append("\r\n");
+		}
+		header.append("Date: ").append(engine.date()).append("\r\n");
+		header.append(length < 0 ? "Transfer-Encoding: chunked\r\n" : "Content-Length: " + length + "\r\n");
+		header.append(close ? "Connection: close\r\n\r\n" : "Connection: keep-alive\r\n\r\n");
+		ByteBuffer buffer = engine.getBuffers().acquire();
+		putAscii(buffer, header);
+		if (head || length == 0) {
+			enqueue(buffer);
+			return true;
+		}
+		if (body instanceof ShapedResponseBody && ((ShapedResponseBody) body).getBandwidthLimit() > 0) {
+			ShapedResponseBody shaped = (ShapedResponseBody) body.detached();
+			enqueue(buffer);
+			new ThrottledWrite(shaped.openUnthrottledStream(), shaped.getBandwidthLimit(), length < 0, close).run();
+			return false;
+		}
+		ResponseBody unshaped = body instanceof ShapedResponseBody ? ((ShapedResponseBody) body).getBody() : body;
+		if (unshaped instanceof StreamingResponseBody) {
+			enqueue(buffer);
+			new StreamedWrite(((StreamingResponseBody) unshaped).openChunks(), close).start();
+			return false;
+		}
+		byte[] scratch = engine.acquireScratch();
+		try (InputStream in = body.openStream()) {
+			buffer = length < 0 ? writeChunked(in, buffer, scratch) : writeFixedLength(in, buffer, scratch);
+		} finally {
+			engine.releaseScratch(scratch);
+		}
+		if (buffer.position() > 0) {
+			enqueue(buffer);
+		} else {
+			engine.getBuffers().release(buffer);
+		}
+		return true;
+	}
+
+	/**
+	 * Sends a buffer once it is full or the stream returned less than asked for, so a throttled body leaves as it is read
+	 */
+	private ByteBuffer writeFixedLength(InputStream in, ByteBuffer buffer, byte[] scratch) throws IOException {
+		while (true) {
+			if (!buffer.hasRemaining()) {
+				enqueue(buffer);
+				buffer = engine.getBuffers().acquire();
+			}
+			int asked = Math.min(scratch.length, buffer.remaining());
+			int read = in.read(scratch, 0, asked);
+			if (read < 0) {
+				return buffer;
+			}
+			buffer.put(scratch, 0, read);
+			if (read < asked && buffer.position() > 0) {
+				enqueue(buffer);
+				buffer = engine.getBuffers().acquire();
+			}
+		}
+	}
+
+	/**
+	 * Sends every read of the stream as one chunk as soon as it is read
+	 */
+	private ByteBuffer writeChunked(InputStream in, ByteBuffer buffer, byte[] scratch) throws IOException {
+		int read;
+		while ((read = in.read(scratch, 0, Math.min(scratch.length, buffer.capacity() - CHUNK_FRAMING))) >= 0) {
+			if (read == 0) {
+				continue;
+			}
+			if (buffer.remaining() < read + CHUNK_FRAMING) {
+				enqueue(buffer);
+				buffer = engine.getBuffers().acquire();
+			}
+			putAscii(buffer, Integer.toHexString(read));
+			putAscii(buffer, "\r\n");
+			buffer.put(scratch, 0, read);
+			putAscii(buffer, "\r\n");
+			enqueue(buffer);
+			buffer = engine.getBuffers().acquire();
+		}
+		if (buffer.remaining() < 5) {
+			enqueue(buffer);
+			buffer = engine.getBuffers().acquire();
+		}
+		putAscii(buffer, "0\r\n\r\n");
+		return buffer;
+	}
+
+	private static void putAscii(ByteBuffer buffer, CharSequence text) {
+		for (int index = 0; index < text.length(); index++) {
+			buffer.put((byte) text.charAt(index));
+		}
+	}
+
+	/**
+	 * Queues a filled buffer for the event loop to send, called on a worker which waits while the client is too far behind
+	 */
+	private void enqueue(ByteBuffer buffer) throws IOException {
+		enqueue(buffer, true);
+	}
+
+	private void enqueue(ByteBuffer buffer, boolean holdBack) throws IOException {
+		buffer.flip();
+		lock.lock();
+		try {
+			if (closed) {
+				engine.getBuffers().release(buffer);
+				throw new IOException("the connection is closed");
+			}
+			outbound.add(buffer);
+			queuedBytes += buffer.remaining();
+			scheduleFlush();
+			while (holdBack && queuedBytes > HIGH_WATER && !closed) {
+				drained.awaitUninterruptibly();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues a buffer from the event loop itself, it is never held back
+	 */
+	private void queue(ByteBuffer buffer) {
+		lock.lock();
+		try {
+			outbound.add(buffer);
+			queuedBytes += buffer.remaining();
+		} finally {
+			lock.unlock();
+		}
+		flush();
+	}
+
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			loop.execute(this::flush);
+		}
+	}
+
+	/**
+	 * Writes as much of the queue as the socket takes and waits for it to become writable again for the rest, called on the event loop
+	 */
+	void flush() {
+		flushScheduled.set(false);
+		if (closed) {
+			return;
+		}
+		boolean empty;
+		try {
+			empty = writeQueued();
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		key.interestOps(empty ? key.interestOps() & ~SelectionKey.OP_WRITE : key.interestOps() | SelectionKey.OP_WRITE);
+		if (empty && closeAfterWrite) {
+			close();
+		}
+	}
+
+	/**
+	 * @return true when the whole queue was written
+	 */
+	private boolean writeQueued() throws IOException {
+		lock.lock();
+		try {
+			ByteBuffer next;
+			while ((next = outbound.peek()) != null) {
+				int before = next.remaining();
+				channel.write(next);
+				queuedBytes -= before - next.remaining();
+				if (next.hasRemaining()) {
+					break;
+				}
+				outbound.poll();
+				release(next);
+			}
+			if (queuedBytes <= LOW_WATER) {
+				drained.signalAll();
+			}
+			return outbound.isEmpty();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called on the event loop once the whole response is queued, picks up the next pipelined request or goes back to reading
+	 */
+	private void responded(boolean close) {
+		if (closed) {
+			return;
+		}
+		if (close) {
+			closeAfterWrite = true;
+			flush();
+			return;
+		}
+		answering = false;
+		lastActivity = System.nanoTime();
+		parser.reset();
+		ByteBuffer next = pipelined;
+		pipelined = null;
+		if (next != null) {
+			parse(next);
+		}
+		if (!answering && !closed) {
+			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+		}
+	}
+
+	void closeIfIdle(long now, long idleTimeoutNanos) {
+		if (answering || now - lastActivity <= idleTimeoutNanos) {
+			return;
+		}
+		lock.lock();
+		try {
+			if (!outbound.isEmpty()) {
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		close();
+	}
+
+	/**
+	 * Closes the channel and wakes a worker waiting to queue more of a response, called on the event loop
+	 */
+	void close() {
+		if (closed) {
+			return;
+		}
+		lock.lock();
+		try {
+			closed = true;
+			for (ByteBuffer buffer : outbound) {
+				release(buffer);
+			}
+			outbound.clear();
+			queuedBytes = 0;
+			drained.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		if (key != null) {
+			key.cancel();
+		}
+		NioEventLoop.closeQuietly(channel);
+		engine.getHandler().connectionClosed();
+	}
+
+	private boolean backlogged() {
+		lock.lock();
+		try {
+			return queuedBytes > HIGH_WATER;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release(ByteBuffer buffer) {
+		if (buffer.isDirect() && buffer.capacity() == NioServerEngine.BUFFER_SIZE) {
+			engine.getBuffers().release(buffer);
+		}
+	}
+
+	/**
+	 * Sends a StreamingResponseBody as its producer queues chunks. The producer resumes a worker for each chunk and the worker sends
+	 * every chunk that is ready without waiting for the next, so an open stream holds no thread between chunks
+	 */
+	private final class StreamedWrite implements Runnable {
+		private final StreamingResponseBody.ChunkStream chunks;
+		private final boolean close;
+		private final AtomicBoolean running = new AtomicBoolean(true);
+
+		private StreamedWrite(StreamingResponseBody.ChunkStream chunks, boolean close) {
+			this.chunks = chunks;
+			this.close = close;
+		}
+
+		private void start() {
+			chunks.onChunk(this::signal);
+			run();
+		}
+
+		/**
+		 * Called on the timer when a chunk is queued, a worker is resumed unless one is already sending
+		 */
+		private void signal() {
+			if (running.compareAndSet(false, true)) {
+				resume(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					if (closed) {
+						chunks.close();
+						return;
+					}
+					if (backlogged()) {
+						DelayScheduler.schedule(() -> resume(this), BACKLOG_RETRY_NANOS);
+						return;
+					}
+					byte[] chunk = chunks.poll();
+					if (chunk == null) {
+						running.set(false);
+						if (chunks.ready() && running.compareAndSet(false, true)) {
+							continue;
+						}
+						return;
+					}
+					if (chunk.length == 0) {
+						ByteBuffer buffer = engine.getBuffers().acquire();
+						putAscii(buffer, "0\r\n\r\n");
+						enqueue(buffer, false);
+						chunks.close();
+						loop.execute(() -> responded(close));
+						return;
+					}
+					writeChunk(chunk);
+				}
+			} catch (IOException e) {
+				chunks.close();
+				loop.execute(NioConnection.this::close);
+			}
+		}
+
+		private void writeChunk(byte[] chunk) throws IOException {
+			ByteBuffer buffer = engine.getBuffers().acquire();
+			putAscii(buffer, Integer.toHexString(chunk.length));
+			putAscii(buffer, "\r\n");
+			int offset = 0;
+			while (offset < chunk.length) {
+				if (!buffer.hasRemaining()) {
+					enqueue(buffer, false);
+					buffer = engine.getBuffers().acquire();
+				}
+				int put = Math.min(buffer.remaining(), chunk.length - offset);
+				buffer.put(chunk, offset, put);
+				offset += put;
+			}
+			if (buffer.remaining() < 2) {
+				enqueue(buffer, false);
+				buffer = engine.getBuffers().acquire();
+			}
+			putAscii(buffer, "\r\n");
+			enqueue(buffer, false);
+		}
+	}
+
+	/**
+	 * Sends a body no faster than its bandwidth limit one slice at a time. Each slice is read and queued on a worker the timer resumes
+	 * when the slice is due, and a slice is held back while the client has not taken what is already queued
+	 */
+	private final class ThrottledWrite implements Runnable {
+		private final InputStream in;
+		private final long bytesPerSecond;
+		private final boolean chunked;
+		private final boolean close;
+		private final int sliceSize;
+		private final long started = System.nanoTime();
+		private long sent;
+
+		private ThrottledWrite(InputStream in, long bytesPerSecond, boolean chunked, boolean close) {
+			this.in = in;
+			this.bytesPerSecond = bytesPerSecond;
+			this.chunked = chunked;
+			this.close = close;
+			this.sliceSize = (int) Math.max(1, Math.min(NioServerEngine.BUFFER_SIZE - CHUNK_FRAMING, bytesPerSecond / SLICES_PER_SECOND));
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (closed) {
+					in.close();
+					return;
+				}
+				if (backlogged()) {
+					DelayScheduler.schedule(() -> resume(this), BACKLOG_RETRY_NANOS);
+					return;
+				}
+				ByteBuffer buffer = engine.getBuffers().acquire();
+				byte[] scratch = engine.acquireScratch();
+				int read;
+				try {
+					read = in.read(scratch, 0, Math.min(scratch.length, sliceSize));
+					if (read > 0) {
+						if (chunked) {
+							putAscii(buffer, Integer.toHexString(read));
+							putAscii(buffer, "\r\n");
+						}
+						buffer.put(scratch, 0, read);
+						if (chunked) {
+							putAscii(buffer, "\r\n");
+						}
+					} else if (read < 0 && chunked) {
+						putAscii(buffer, "0\r\n\r\n");
+					}
+				} finally {
+					engine.releaseScratch(scratch);
+				}
+				if (buffer.position() > 0) {
+					enqueue(buffer, false);
+				} else {
+					engine.getBuffers().release(buffer);
+				}
+				if (read < 0) {
+					in.close();
+					loop.execute(() -> responded(close));
+					return;
+				}
+				sent += Math.max(0, read);
+				long due = started + sent * 1_000_000_000L / bytesPerSecond;
+				DelayScheduler.schedule(() -> resume(this), due - System.nanoTime());
+			} catch (IOException e) {
+				try {
+					in.close();
+				} catch (IOException ignored) {
+				}
+				loop.execute(NioConnection.this::close);
+			}
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One selector thread of a NioServerEngine. Every change to a connection registered with it runs on this thread,
+ * other threads hand their changes over as tasks
+ */
+final class NioEventLoop implements Runnable {
+	private static final long SELECT_TIMEOUT_MILLIS = 250;
+	private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+	private static final long TERMINATION_TIMEOUT_MILLIS = 5000;
+
+	private final NioServerEngine engine;
+	private final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final ByteBuffer readBuffer;
+	private final Thread thread;
+	private volatile boolean running = true;
+	private long lastSweep = System.nanoTime();
+
+	NioEventLoop(NioServerEngine engine, String name) throws IOException {
+		this.engine = engine;
+		this.selector = Selector.open();
+		this.readBuffer = ByteBuffer.allocateDirect(NioServerEngine.BUFFER_SIZE);
+		this.thread = new Thread(this, name);
+		this.thread.setDaemon(true);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	/**
+	 * Runs the task on the loop thread, straight away when called from it
+	 */
+	void execute(Runnable task) {
+		if (Thread.currentThread() == thread) {
+			task.run();
+			return;
+		}
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	void registerAcceptor(ServerSocketChannel channel) {
+		try {
+			channel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	void register(SocketChannel channel) {
+		if (!running) {
+			closeQuietly(channel);
+			return;
+		}
+		NioConnection connection = new NioConnection(engine, this, channel);
+		try {
+			connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+		} catch (IOException e) {
+			closeQuietly(channel);
+			return;
+		}
+		engine.getHandler().connectionOpened();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select(SELECT_TIMEOUT_MILLIS);
+				runTasks();
+				Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+				while (selected.hasNext()) {
+					SelectionKey key = selected.next();
+					selected.remove();
+					handle(key);
+				}
+				sweepIdleConnections();
+			}
+		} catch (IOException e) {
+			// the selector failed, the connections are closed below
+		} finally {
+			runTasks();
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof NioConnection) {
+					((NioConnection) key.attachment()).close();
+				}
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// nothing is left to release
+			}
+		}
+	}
+
+	private void handle(SelectionKey key) {
+		try {
+			if (key.isAcceptable()) {
+				engine.acceptAll((ServerSocketChannel) key.channel());
+				return;
+			}
+			NioConnection connection = (NioConnection) key.attachment();
+			if (key.isWritable()) {
+				connection.flush();
+			}
+			if (key.isValid() && key.isReadable()) {
+				connection.read(readBuffer);
+			}
+		} catch (CancelledKeyException e) {
+			// the connection was closed while its events were pending
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private void sweepIdleConnections() {
+		long idleTimeout = engine.getIdleTimeoutNanos();
+		long now = System.nanoTime();
+		if (idleTimeout <= 0 || now - lastSweep < Math.min(SWEEP_INTERVAL_NANOS, idleTimeout)) {
+			return;
+		}
+		lastSweep = now;
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() instanceof NioConnection) {
+				((NioConnection) key.attachment()).closeIfIdle(now, idleTimeout);
+			}
+		}
+	}
+
+	void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	void awaitTermination() {
+		try {
+			thread.join(TERMINATION_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	static void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// the channel is unusable either way
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ServerEngine on non blocking java.nio channels. A few event loops each own a selector and the connections registered with it,
+ * they read and parse requests and write responses from pooled direct buffers. Only a request being answered takes a worker,
+ * virtual threads when the JDK has them, so idle keep alive connections cost a selection key and a parser rather than a thread
+ */
+public final class NioServerEngine implements ServerEngine {
+	public static final int DEFAULT_MAX_BODY_SIZE = 64 * 1024 * 1024;
+	static final int BUFFER_SIZE = 16 * 1024;
+	private static final int POOLED_BUFFERS = 1024;
+	private static final int POOLED_SCRATCH_ARRAYS = 256;
+	private static final int MAX_HEADER_BYTES = 64 * 1024;
+	private static final int BACKLOG = 4096;
+
+	private final int eventLoopCount;
+	private final int maxBodySize;
+	private final DirectBufferPool buffers = new DirectBufferPool(BUFFER_SIZE, POOLED_BUFFERS);
+	private final BlockingQueue<byte[]> scratchArrays = new ArrayBlockingQueue<>(POOLED_SCRATCH_ARRAYS);
+	private final AtomicInteger nextLoop = new AtomicInteger();
+	private ServerSocketChannel serverChannel;
+	private NioEventLoop[] loops;
+	private ExecutorService workers;
+	private EngineHandler handler;
+	private volatile int localPort = -1;
+	private volatile long idleTimeoutNanos;
+	private volatile long dateSecond;
+	private volatile String date;
+
+	/**
+	 * An event loop per processor up to four
+	 */
+	public NioServerEngine() {
+		this(Math.min(4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public NioServerEngine(int eventLoops) {
+		this(eventLoops, DEFAULT_MAX_BODY_SIZE);
+	}
+
+	/**
+	 * @param eventLoops  the number of selector threads connections are spread across
+	 * @param maxBodySize the largest request body accepted, larger requests are answered with 413 Payload Too Large
+	 */
+	public NioServerEngine(int eventLoops, int maxBodySize) {
+		if (eventLoops < 1) {
+			throw new IllegalArgumentException("at least one event loop is needed but was " + eventLoops);
+		}
+		this.eventLoopCount = eventLoops;
+		this.maxBodySize = maxBodySize;
+	}
+
+	@Override
+	public synchronized void bind(InetSocketAddress address, int idleTimeoutMillis, EngineHandler handler) throws IOException {
+		if (serverChannel != null) {
+			throw new IllegalStateException("the engine is already bound to port " + localPort);
+		}
+		this.handler = handler;
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		try {
+			channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			channel.bind(address, BACKLOG);
+			channel.configureBlocking(false);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.serverChannel = channel;
+		this.localPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+		this.workers = createWorkers();
+		this.loops = new NioEventLoop[eventLoopCount];
+		for (int index = 0; index < loops.length; index++) {
+			loops[index] = new NioEventLoop(this, "web-mock-nio-" + localPort + "-" + index);
+		}
+		loops[0].execute(() -> loops[0].registerAcceptor(channel));
+		for (NioEventLoop loop : loops) {
+			loop.start();
+		}
+	}
+
+	private static ExecutorService createWorkers() {
+		if (VirtualThreadAsyncRunner.isSupported()) {
+			return VirtualThreadAsyncRunner.newVirtualThreadPerTaskExecutor();
+		}
+		AtomicInteger workerNumber = new AtomicInteger();
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "web-mock-nio-worker-" + workerNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public int getLocalPort() {
+		return localPort;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (serverChannel == null) {
+			return;
+		}
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			// the loops close every connection regardless
+		}
+		for (NioEventLoop loop : loops) {
+			loop.shutdown();
+		}
+		for (NioEventLoop loop : loops) {
+			loop.awaitTermination();
+		}
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Accepts every pending connection and hands each to the next event loop in turn
+	 */
+	void acceptAll(ServerSocketChannel channel) {
+		while (true) {
+			SocketChannel accepted;
+			try {
+				accepted = channel.accept();
+				if (accepted == null) {
+					return;
+				}
+				accepted.configureBlocking(false);
+				accepted.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			} catch (IOException e) {
+				return;
+			}
+			NioEventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+			loop.execute(() -> loop.register(accepted));
+		}
+	}
+
+	HttpRequestParser newParser() {
+		return new HttpRequestParser(MAX_HEADER_BYTES, maxBodySize);
+	}
+
+	EngineHandler getHandler() {
+		return handler;
+	}
+
+	ExecutorService getWorkers() {
+		return workers;
+	}
+
+	DirectBufferPool getBuffers() {
+		return buffers;
+	}
+
+	long getIdleTimeoutNanos() {
+		return idleTimeoutNanos;
+	}
+
+	byte[] acquireScratch() {
+		byte[] scratch = scratchArrays.poll();
+		return scratch != null ? scratch : new byte[BUFFER_SIZE];
+	}
+
+	void releaseScratch(byte[] scratch) {
+		scratchArrays.offer(scratch);
+	}
+
+	/**
+	 * @return the Date header value, formatted at most once a second
+	 */
+	String date() {
+		long now = System.currentTimeMillis() / 1000;
+		String formatted = date;
+		if (formatted == null || now != dateSecond) {
+			formatted = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC));
+			date = formatted;
+			dateSecond = now;
+		}
+		return formatted;
+	}
+}
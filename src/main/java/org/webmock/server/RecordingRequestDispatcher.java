@@ -0,0 +1,97 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proxies every request to a target server and appends the request and the response it got to a CaptureFile,
+ * so a later server can replay the interactions without the target. Parameters are forwarded in the query string
+ * and only the status, Content-Type and body of the response are recorded
+ */
+public class RecordingRequestDispatcher implements RequestDispatcher {
+	private static final Set<String> NOT_FORWARDED = Set.of("host", "content-length", "connection", "keep-alive", "transfer-encoding",
+			"accept-encoding", "remote-addr", "http-client-ip");
+
+	private final String target;
+	private final CaptureWriter capture;
+
+	/**
+	 * @param target  the base url requests are forwarded to eg http://localhost:8080
+	 * @param capture the file interactions are appended to, created when it does not exist
+	 * @throws IOException if the capture can not be opened
+	 */
+	public RecordingRequestDispatcher(String target, Path capture) throws IOException {
+		this.target = target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+		this.capture = CaptureWriter.open(capture);
+	}
+
+	@Override
+	public MockResponse dispatch(MockRequest request) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(target + request.getUri() + queryString(request.getParameters())).openConnection();
+			connection.setInstanceFollowRedirects(false);
+			connection.setRequestMethod(request.getMethod());
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				if (!NOT_FORWARDED.contains(header.getKey().toLowerCase())) {
+					connection.setRequestProperty(header.getKey(), header.getValue());
+				}
+			}
+			RequestBody body = request.getRequestBody();
+			if (body != null && body.getLength() > 0) {
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(body.getLength());
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(body.array(), 0, body.getLength());
+				}
+			}
+			int status = connection.getResponseCode();
+			String contentType = connection.getContentType();
+			byte[] responseBody;
+			try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+				responseBody = in == null ? new byte[0] : in.readAllBytes();
+			}
+			capture.append(request, status, contentType, responseBody);
+			return new MockResponse(status, ByteBufferResponseBody.of(responseBody, contentType));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not record " + request + " from " + target, e);
+		}
+	}
+
+	/**
+	 * Recording has no expectations to check, the capture is flushed to disk and closed
+	 */
+	@Override
+	public void assertIsSatisfied() {
+		try {
+			capture.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static String queryString(Map<String, List<String>> params) {
+		if (params.isEmpty()) {
+			return "";
+		}
+		StringBuilder query = new StringBuilder();
+		for (Map.Entry<String, List<String>> param : params.entrySet()) {
+			for (String value : param.getValue()) {
+				query.append(query.length() == 0 ? '?' : '&')
+						.append(URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8))
+						.append('=')
+						.append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+			}
+		}
+		return query.toString();
+	}
+}
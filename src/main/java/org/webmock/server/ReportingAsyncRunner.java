@@ -0,0 +1,11 @@
+package org.webmock.server;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * An AsyncRunner that reports how many connections it is handling, queueing and rejecting
+ */
+public interface ReportingAsyncRunner extends NanoHTTPD.AsyncRunner {
+
+	RunnerStatistics getStatistics();
+}
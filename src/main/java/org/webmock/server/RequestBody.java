@@ -0,0 +1,67 @@
+package org.webmock.server;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The raw bytes of a request body, only decoded to a String when a matcher asks for the text
+ */
+public final class RequestBody {
+	private final byte[] bytes;
+	private final int length;
+	private final Charset charset;
+	private final RequestBodyReader owner;
+	private String text;
+
+	RequestBody(byte[] bytes, int length, Charset charset, RequestBodyReader owner) {
+		this.bytes = bytes;
+		this.length = length;
+		this.charset = charset;
+		this.owner = owner;
+	}
+
+	public static RequestBody of(String text) {
+		RequestBody body = new RequestBody(text.getBytes(StandardCharsets.UTF_8), -1, StandardCharsets.UTF_8, null);
+		body.text = text;
+		return body;
+	}
+
+	public int getLength() {
+		return length < 0 ? bytes.length : length;
+	}
+
+	Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * @return the array holding the body from index 0 up to getLength(), for a pooled body it is only valid while the request is dispatched
+	 */
+	byte[] array() {
+		return bytes;
+	}
+
+	/**
+	 * @return the body decoded with the charset of the request, decoded once and kept for the other matchers
+	 */
+	public String asString() {
+		if (text == null) {
+			text = new String(bytes, 0, getLength(), charset);
+		}
+		return text;
+	}
+
+	/**
+	 * Hands a pooled buffer back once the request has been answered
+	 */
+	void release() {
+		if (owner != null) {
+			owner.release(bytes);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return asString();
+	}
+}
@@ -0,0 +1,69 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads request bodies straight from the socket into pooled buffers instead of letting NanoHTTPD spool them to temp files,
+ * only buffers up to MAX_POOLED_BUFFER_SIZE are kept so the pool never holds more than a few megabytes whatever the maximum body size
+ */
+class RequestBodyReader {
+	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+	static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+	private static final int POOLED_BUFFERS = 64;
+
+	private final int maxBodySize;
+	private final BlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+	RequestBodyReader(int maxBodySize) {
+		this.maxBodySize = maxBodySize;
+	}
+
+	int getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	/**
+	 * @param in            the connection stream positioned at the start of the body
+	 * @param contentLength the declared length of the body, it must not exceed the maximum body size
+	 */
+	RequestBody read(InputStream in, int contentLength, Charset charset) throws IOException {
+		byte[] buffer = acquire(contentLength);
+		int read = 0;
+		while (read < contentLength) {
+			int count = in.read(buffer, read, contentLength - read);
+			if (count < 0) {
+				break;
+			}
+			read += count;
+		}
+		return new RequestBody(buffer, read, charset, this);
+	}
+
+	private byte[] acquire(int size) {
+		byte[] buffer = pool.poll();
+		if (buffer == null || buffer.length < size) {
+			return new byte[Math.max(size, INITIAL_BUFFER_SIZE)];
+		}
+		return buffer;
+	}
+
+	/**
+	 * Keeps the buffer for the next body unless it was grown past MAX_POOLED_BUFFER_SIZE for a large body
+	 */
+	void release(byte[] buffer) {
+		if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+			pool.offer(buffer);
+		}
+	}
+
+	/**
+	 * @return the number of buffers waiting in the pool
+	 */
+	int pooled() {
+		return pool.size();
+	}
+}
@@ -0,0 +1,39 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Matches the requests received by a MockHTTPServer against the configured expectations
+ */
+public interface RequestDispatcher {
+
+	/**
+	 * @param request the request received by the server
+	 * @return the response configured for the matching expectation
+	 * @throws Error when the request was not expected, the server will answer with an internal error and report it on assertion,
+	 *               an UnexpectedRequestError is described with describeMismatch when the report is built
+	 */
+	MockResponse dispatch(MockRequest request);
+
+	/**
+	 * Verifies every expectation was invoked the number of times it must be met
+	 */
+	void assertIsSatisfied();
+
+	/**
+	 * @return the metrics recorded for each expectation, empty when the dispatcher cannot tell which expectation served a request
+	 */
+	default List<RequestMetrics> getExpectationMetrics() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Describes why a request that raised an UnexpectedRequestError did not match, only called when a failed verification is reported
+	 */
+	default void describeMismatch(MockRequest request, Description description) {
+		description.appendText("no expectation matched");
+	}
+}
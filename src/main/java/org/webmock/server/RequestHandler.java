@@ -10,9 +10,22 @@ public interface RequestHandler {
 
 	void param(String param, List<String> value);
 
-	String returnValue();
+	/**
+	 * @return a ResponseBody prepared when the expectations were set up, any other value is sent as its UTF-8 encoded toString
+	 */
+	Object returnValue();
 
 	int getResponseStatus();
 
 	void bodyMatching(String body);
+
+	/**
+	 * Only called when an expectation checks the method
+	 */
+	void method(String method);
+
+	/**
+	 * Only called when an expectation checks a header, once for every header of the request
+	 */
+	void header(String name, String value);
 }
@@ -0,0 +1,494 @@
+package org.webmock.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The request line and headers of the request a HttpRequestParser is reading, kept as slices of one byte array that is reused for
+ * every request of a connection. Header names are lower cased in place and query parameters are percent decoded into a second reused
+ * array, so matching compares bytes and the maps NanoHTTPD would build are only created when something asks for them.
+ * A head is only valid until the parser is reset for the next request
+ */
+final class RequestHead {
+	private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "PATCH", "OPTIONS", "TRACE", "CONNECT"};
+	private static final int INITIAL_SIZE = 512;
+	private static final int INITIAL_SLICES = 64;
+
+	private byte[] bytes = new byte[INITIAL_SIZE];
+	private int size;
+	private String method;
+	private int targetStart;
+	private int pathStart;
+	private int pathEnd;
+	private int queryStart = -1;
+	private int targetEnd;
+	private boolean http10;
+	/**
+	 * name start, name end, value start and value end of every header
+	 */
+	private int[] headers = new int[INITIAL_SLICES];
+	private int headerCount;
+	private boolean repeatedHeaders;
+	private byte[] decoded = new byte[INITIAL_SIZE];
+	private int decodedSize;
+	/**
+	 * name start, name end, value start and value end in the decoded array of every parameter, the value start is -1 when there is no =
+	 */
+	private int[] parameters = new int[INITIAL_SLICES];
+	private int parameterCount;
+	private byte[] rawPath = new byte[0];
+	private int rawPathLength = -1;
+	private String path;
+	private Map<String, String> headerMap;
+	private Map<String, List<String>> parameterMap;
+	private String queryString;
+
+	void append(byte next) {
+		if (size == bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+		bytes[size++] = next;
+	}
+
+	int size() {
+		return size;
+	}
+
+	byte byteAt(int index) {
+		return bytes[index];
+	}
+
+	/**
+	 * Drops the bytes from the given index on, used for lines that are parsed and not kept
+	 */
+	void truncate(int end) {
+		size = end;
+	}
+
+	String text(int from, int to) {
+		return new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Splits the request line, the method is one of the usual constants whenever it can be
+	 */
+	void requestLine(int from, int to) throws HttpParseException {
+		int first = indexOf(' ', from, to);
+		int last = to;
+		while (last > from && bytes[last - 1] != ' ') {
+			last--;
+		}
+		last--;
+		if (first <= from || last == first || !startsWith(last + 1, to, "HTTP/")) {
+			throw new HttpParseException("400 Bad Request", "malformed request line " + text(from, to));
+		}
+		method = method(from, first);
+		targetStart = trimStart(first + 1, last);
+		targetEnd = trimEnd(targetStart, last);
+		http10 = to - last - 1 == 8 && startsWith(last + 1, to, "HTTP/1.0");
+		pathStart = targetStart;
+		if (startsWith(targetStart, targetEnd, "http://") || startsWith(targetStart, targetEnd, "https://")) {
+			int slash = indexOf('/', indexOf('/', targetStart, targetEnd) + 2, targetEnd);
+			pathStart = slash < 0 ? targetEnd : slash;
+		}
+		int query = indexOf('?', pathStart, targetEnd);
+		pathEnd = query < 0 ? targetEnd : query;
+		queryStart = query < 0 ? -1 : query + 1;
+		size = to;
+	}
+
+	private String method(int from, int to) {
+		for (String known : METHODS) {
+			if (known.length() == to - from && equalsIgnoreCase(from, to, known)) {
+				return known;
+			}
+		}
+		return text(from, to).toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Keeps a header line, a line starting with white space continues the value of the header before it
+	 */
+	void header(int from, int to) throws HttpParseException {
+		if ((bytes[from] == ' ' || bytes[from] == '\t') && headerCount > 0) {
+			int start = trimStart(from, to);
+			int end = trimEnd(start, to);
+			int last = (headerCount - 1) * 4;
+			bytes[headers[last + 3]] = ' ';
+			System.arraycopy(bytes, start, bytes, headers[last + 3] + 1, end - start);
+			headers[last + 3] += 1 + end - start;
+			size = headers[last + 3];
+			return;
+		}
+		int colon = indexOf(':', from, to);
+		if (colon <= from) {
+			throw new HttpParseException("400 Bad Request", "malformed header " + text(from, to));
+		}
+		int nameStart = trimStart(from, colon);
+		int nameEnd = trimEnd(nameStart, colon);
+		for (int index = nameStart; index < nameEnd; index++) {
+			bytes[index] = lowerCase(bytes[index]);
+		}
+		int valueStart = trimStart(colon + 1, to);
+		int valueEnd = trimEnd(valueStart, to);
+		for (int header = 0; header < headerCount && !repeatedHeaders; header++) {
+			repeatedHeaders = sliceEquals(headers[header * 4], headers[header * 4 + 1], nameStart, nameEnd);
+		}
+		if (headerCount * 4 == headers.length) {
+			headers = Arrays.copyOf(headers, headers.length * 2);
+		}
+		int slice = headerCount++ * 4;
+		headers[slice] = nameStart;
+		headers[slice + 1] = nameEnd;
+		headers[slice + 2] = valueStart;
+		headers[slice + 3] = valueEnd;
+		size = valueEnd;
+	}
+
+	/**
+	 * Percent decodes the path and the query parameters once the head is complete, the path String is reused
+	 * for as long as the connection keeps asking for the same one
+	 */
+	void decode() throws HttpParseException {
+		if (rawPathLength != pathEnd - pathStart || !Arrays.equals(rawPath, 0, rawPathLength, bytes, pathStart, pathEnd)) {
+			if (pathStart == pathEnd) {
+				path = "/";
+			} else {
+				decodedSize = 0;
+				int end = decode(pathStart, pathEnd);
+				path = new String(decoded, 0, end, StandardCharsets.UTF_8);
+			}
+			if (rawPath.length < pathEnd - pathStart) {
+				rawPath = new byte[Math.max(64, pathEnd - pathStart)];
+			}
+			System.arraycopy(bytes, pathStart, rawPath, 0, pathEnd - pathStart);
+			rawPathLength = pathEnd - pathStart;
+		}
+		decodedSize = 0;
+		parameterCount = 0;
+		if (queryStart < 0) {
+			return;
+		}
+		int start = queryStart;
+		while (start <= targetEnd) {
+			int end = indexOf('&', start, targetEnd);
+			if (end < 0) {
+				end = targetEnd;
+			}
+			if (end > start) {
+				parameter(start, end);
+			}
+			start = end + 1;
+		}
+	}
+
+	private void parameter(int from, int to) throws HttpParseException {
+		int equals = indexOf('=', from, to);
+		int nameStart = decodedSize;
+		int nameEnd = decode(from, equals < 0 ? to : equals);
+		while (nameStart < nameEnd && (decoded[nameStart] & 0xff) <= ' ') {
+			nameStart++;
+		}
+		while (nameEnd > nameStart && (decoded[nameEnd - 1] & 0xff) <= ' ') {
+			nameEnd--;
+		}
+		int valueStart = -1;
+		int valueEnd = -1;
+		if (equals >= 0) {
+			valueStart = decodedSize;
+			valueEnd = decode(equals + 1, to);
+		}
+		if (parameterCount * 4 == parameters.length) {
+			parameters = Arrays.copyOf(parameters, parameters.length * 2);
+		}
+		int slice = parameterCount++ * 4;
+		parameters[slice] = nameStart;
+		parameters[slice + 1] = nameEnd;
+		parameters[slice + 2] = valueStart;
+		parameters[slice + 3] = valueEnd;
+	}
+
+	/**
+	 * Decodes %XX escapes and + as URLDecoder does, appending to the decoded array
+	 *
+	 * @return the end of the decoded bytes
+	 */
+	private int decode(int from, int to) throws HttpParseException {
+		if (decoded.length < decodedSize + to - from) {
+			decoded = Arrays.copyOf(decoded, Math.max(decoded.length * 2, decodedSize + to - from));
+		}
+		for (int index = from; index < to; index++) {
+			byte next = bytes[index];
+			if (next == '+') {
+				next = ' ';
+			} else if (next == '%') {
+				int high = index + 2 < to ? Character.digit(bytes[index + 1], 16) : -1;
+				int low = high < 0 ? -1 : Character.digit(bytes[index + 2], 16);
+				if (low < 0) {
+					throw new HttpParseException("400 Bad Request", "malformed escape in request target " + text(targetStart, targetEnd));
+				}
+				next = (byte) (high << 4 | low);
+				index += 2;
+			}
+			decoded[decodedSize++] = next;
+		}
+		return decodedSize;
+	}
+
+	String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the decoded path of the request target
+	 */
+	String getPath() {
+		return path;
+	}
+
+	boolean isHttp10() {
+		return http10;
+	}
+
+	/**
+	 * @param name the header name in lower case
+	 * @return the value of the header or null when the request does not carry it
+	 */
+	String header(String name) {
+		if (repeatedHeaders) {
+			return headers().get(name);
+		}
+		int header = indexOfHeader(name);
+		return header < 0 ? null : text(headers[header + 2], headers[header + 3]);
+	}
+
+	/**
+	 * @param name the header name in lower case
+	 */
+	boolean headerEquals(String name, String value) {
+		if (repeatedHeaders) {
+			return value.equals(headers().get(name));
+		}
+		int header = indexOfHeader(name);
+		return header >= 0 && headers[header + 3] - headers[header + 2] == value.length() && startsWith(headers[header + 2], headers[header + 3], value);
+	}
+
+	/**
+	 * @param name  the header name in lower case
+	 * @param token a lower case token the value contains ignoring case
+	 */
+	boolean headerContains(String name, String token) {
+		if (repeatedHeaders) {
+			String value = headers().get(name);
+			return value != null && value.toLowerCase(Locale.ROOT).contains(token);
+		}
+		int header = indexOfHeader(name);
+		if (header < 0) {
+			return false;
+		}
+		for (int start = headers[header + 2]; start + token.length() <= headers[header + 3]; start++) {
+			if (equalsIgnoreCase(start, start + token.length(), token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the Content-Length, -1 when there is none
+	 * @throws NumberFormatException when it is not a positive number
+	 */
+	long contentLength() {
+		if (repeatedHeaders) {
+			String value = headers().get("content-length");
+			return value == null ? -1 : Long.parseUnsignedLong(value);
+		}
+		int header = indexOfHeader("content-length");
+		if (header < 0) {
+			return -1;
+		}
+		int from = headers[header + 2];
+		int to = headers[header + 3];
+		if (from == to || to - from > 18) {
+			throw new NumberFormatException(text(from, to));
+		}
+		long length = 0;
+		for (int index = from; index < to; index++) {
+			int digit = bytes[index] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException(text(from, to));
+			}
+			length = length * 10 + digit;
+		}
+		return length;
+	}
+
+	private int indexOfHeader(String name) {
+		for (int header = 0; header < headerCount * 4; header += 4) {
+			if (headers[header + 1] - headers[header] == name.length() && startsWith(headers[header], headers[header + 1], name)) {
+				return header;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the headers with repeated ones joined by a comma, built on first use
+	 */
+	Map<String, String> headers() {
+		if (headerMap == null) {
+			Map<String, String> built = new HashMap<>();
+			for (int header = 0; header < headerCount * 4; header += 4) {
+				built.merge(text(headers[header], headers[header + 1]), text(headers[header + 2], headers[header + 3]), (first, second) -> first + ", " + second);
+			}
+			headerMap = built;
+		}
+		return headerMap;
+	}
+
+	/**
+	 * @return the undecoded query string or null when the target has none
+	 */
+	String queryString() {
+		if (queryString == null && queryStart >= 0) {
+			queryString = text(queryStart, targetEnd);
+		}
+		return queryString;
+	}
+
+	/**
+	 * @return the query parameters decoded as NanoHTTPD decodes them, a name without = has no value, built on first use
+	 */
+	Map<String, List<String>> parameters() {
+		if (parameterMap == null) {
+			Map<String, List<String>> built = new HashMap<>();
+			for (int parameter = 0; parameter < parameterCount * 4; parameter += 4) {
+				List<String> values = built.computeIfAbsent(decodedText(parameters[parameter], parameters[parameter + 1]), name -> new ArrayList<>());
+				if (parameters[parameter + 2] >= 0) {
+					values.add(decodedText(parameters[parameter + 2], parameters[parameter + 3]));
+				}
+			}
+			parameterMap = built;
+		}
+		return parameterMap;
+	}
+
+	/**
+	 * Compares the decoded parameters with the UTF-8 encoded names and values of an expectation without building the map,
+	 * the answer is the one parameters().equals would give for the map the names and values came from
+	 */
+	boolean parametersEqual(byte[][] names, byte[][][] values) {
+		for (int parameter = 0; parameter < parameterCount * 4; parameter += 4) {
+			if (indexOfName(names, parameter) < 0) {
+				return false;
+			}
+		}
+		for (int name = 0; name < names.length; name++) {
+			boolean present = false;
+			int next = 0;
+			for (int parameter = 0; parameter < parameterCount * 4; parameter += 4) {
+				if (!decodedEquals(parameters[parameter], parameters[parameter + 1], names[name])) {
+					continue;
+				}
+				present = true;
+				if (parameters[parameter + 2] >= 0) {
+					if (next == values[name].length || !decodedEquals(parameters[parameter + 2], parameters[parameter + 3], values[name][next++])) {
+						return false;
+					}
+				}
+			}
+			if (!present || next != values[name].length) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int indexOfName(byte[][] names, int parameter) {
+		for (int name = 0; name < names.length; name++) {
+			if (decodedEquals(parameters[parameter], parameters[parameter + 1], names[name])) {
+				return name;
+			}
+		}
+		return -1;
+	}
+
+	private boolean decodedEquals(int from, int to, byte[] expected) {
+		return Arrays.equals(decoded, from, to, expected, 0, expected.length);
+	}
+
+	private String decodedText(int from, int to) {
+		return new String(decoded, from, to - from, StandardCharsets.UTF_8);
+	}
+
+	void reset() {
+		size = 0;
+		method = null;
+		queryStart = -1;
+		http10 = false;
+		headerCount = 0;
+		repeatedHeaders = false;
+		decodedSize = 0;
+		parameterCount = 0;
+		headerMap = null;
+		parameterMap = null;
+		queryString = null;
+	}
+
+	private int indexOf(char wanted, int from, int to) {
+		for (int index = from; index < to; index++) {
+			if (bytes[index] == wanted) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private int trimStart(int from, int to) {
+		while (from < to && (bytes[from] & 0xff) <= ' ') {
+			from++;
+		}
+		return from;
+	}
+
+	private int trimEnd(int from, int to) {
+		while (to > from && (bytes[to - 1] & 0xff) <= ' ') {
+			to--;
+		}
+		return to;
+	}
+
+	private boolean startsWith(int from, int to, String prefix) {
+		if (to - from < prefix.length()) {
+			return false;
+		}
+		for (int index = 0; index < prefix.length(); index++) {
+			if ((bytes[from + index] & 0xff) != prefix.charAt(index)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean equalsIgnoreCase(int from, int to, String lowerOrUpper) {
+		for (int index = 0; index < to - from; index++) {
+			if (lowerCase(bytes[from + index]) != lowerCase((byte) lowerOrUpper.charAt(index))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean sliceEquals(int from, int to, int otherFrom, int otherTo) {
+		return Arrays.equals(bytes, from, to, bytes, otherFrom, otherTo);
+	}
+
+	private static byte lowerCase(byte value) {
+		return value >= 'A' && value <= 'Z' ? (byte) (value + ('a' - 'A')) : value;
+	}
+}
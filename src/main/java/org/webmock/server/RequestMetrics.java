@@ -0,0 +1,104 @@
+package org.webmock.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a MockHTTPServer recorded for the requests served by one expectation, or for every matched or unmatched request.
+ * Match time is spent selecting the expectation, serve time runs from the request reaching the server until the response is ready to be written
+ */
+public final class RequestMetrics {
+	private final String description;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+	private final LatencyHistogram matchTime = new LatencyHistogram();
+	private final LatencyHistogram serveTime = new LatencyHistogram();
+
+	public RequestMetrics(String description) {
+		this.description = description;
+	}
+
+	void record(long matchNanos, long serveNanos, long requestBytes, long responseBytes) {
+		hits.increment();
+		matchTime.record(matchNanos);
+		serveTime.record(serveNanos);
+		bytesIn.add(requestBytes);
+		if (responseBytes > 0) {
+			bytesOut.add(responseBytes);
+		}
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the request body bytes received
+	 */
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	/**
+	 * @return the response body bytes sent
+	 */
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	public LatencyHistogram getMatchTime() {
+		return matchTime;
+	}
+
+	public LatencyHistogram getServeTime() {
+		return serveTime;
+	}
+
+	void appendJson(StringBuilder json) {
+		json.append("{\"description\":");
+		appendString(json, description);
+		json.append(",\"hits\":").append(getHits())
+				.append(",\"bytesIn\":").append(getBytesIn())
+				.append(",\"bytesOut\":").append(getBytesOut())
+				.append(",\"matchTime\":");
+		appendHistogram(json, matchTime);
+		json.append(",\"serveTime\":");
+		appendHistogram(json, serveTime);
+		json.append('}');
+	}
+
+	private static void appendHistogram(StringBuilder json, LatencyHistogram histogram) {
+		json.append("{\"count\":").append(histogram.getCount())
+				.append(",\"mean\":").append(histogram.getMean())
+				.append(",\"p50\":").append(histogram.getValueAtPercentile(50))
+				.append(",\"p90\":").append(histogram.getValueAtPercentile(90))
+				.append(",\"p99\":").append(histogram.getValueAtPercentile(99))
+				.append(",\"p999\":").append(histogram.getValueAtPercentile(99.9))
+				.append(",\"max\":").append(histogram.getMax())
+				.append('}');
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for (int index = 0; index < value.length(); index++) {
+			char character = value.charAt(index);
+			if (character == '"' || character == '\\') {
+				json.append('\\').append(character);
+			} else if (character < 0x20) {
+				json.append(String.format("\\u%04x", (int) character));
+			} else {
+				json.append(character);
+			}
+		}
+		json.append('"');
+	}
+
+	@Override
+	public String toString() {
+		return description + ": hits=" + getHits() + ", p99 serve=" + serveTime.getValueAtPercentile(99) + "ns";
+	}
+}
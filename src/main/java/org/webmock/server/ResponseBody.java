@@ -0,0 +1,46 @@
+package org.webmock.server;
+
+import java.io.InputStream;
+
+/**
+ * The body of a MockResponse, prepared once when the server is built and shared by every response that returns it
+ */
+public interface ResponseBody {
+
+	/**
+	 * @return the value of the Content-Type header sent with the body
+	 */
+	String getContentType();
+
+	/**
+	 * @return the number of bytes sent as the body
+	 */
+	long getLength();
+
+	/**
+	 * @return a new stream over the body, each response reads its own stream so a body can be sent to many clients at once
+	 */
+	InputStream openStream();
+
+	/**
+	 * @return the body sent in answer to the request, the body itself unless it is rendered from the request
+	 */
+	default ResponseBody forRequest(MockRequest request) {
+		return this;
+	}
+
+	/**
+	 * @param cache the responses rendered before, null when the server does not cache them
+	 * @return the body sent in answer to the request, a body rendered from the request is taken from the cache when it holds one for the same inputs
+	 */
+	default ResponseBody forRequest(MockRequest request, ResponseCache cache) {
+		return forRequest(request);
+	}
+
+	/**
+	 * @return a body holding its own bytes, for a response sent later or on another thread than the one that rendered it
+	 */
+	default ResponseBody detached() {
+		return this;
+	}
+}
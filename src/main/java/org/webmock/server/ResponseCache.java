@@ -0,0 +1,190 @@
+package org.webmock.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Responses rendered from templates, kept as pre-encoded read only buffers so a request carrying the same template inputs as an earlier one
+ * is answered without rendering. The cache is split into segments by the hash of the key, each evicting its least recently used entries
+ * once the bytes it holds exceed its share of the bound, so a lookup only locks the segment of its key
+ */
+public final class ResponseCache {
+	private static final int MAX_SEGMENTS = 16;
+	private static final long MIN_SEGMENT_BYTES = 64 * 1024;
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private final long maxBytes;
+	private final Segment[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxBytes the bound of the rendered bodies and keys held, approximately as keys are estimated from their text
+	 */
+	public ResponseCache(long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("the response cache must hold at least one byte but was given " + maxBytes);
+		}
+		this.maxBytes = maxBytes;
+		this.segments = new Segment[(int) Math.max(1, Math.min(MAX_SEGMENTS, maxBytes / MIN_SEGMENT_BYTES))];
+		for (int segment = 0; segment < segments.length; segment++) {
+			segments[segment] = new Segment(maxBytes / segments.length);
+		}
+	}
+
+	/**
+	 * @return the body cached for the key or null, counted as a hit or a miss
+	 */
+	ResponseBody get(Key key) {
+		ResponseBody cached = segmentOf(key).lookup(key);
+		if (cached == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return cached;
+	}
+
+	/**
+	 * Keeps the body for a copy of the key that no longer refers to the request, a body larger than a segment is not kept
+	 *
+	 * @param body a body that never changes, shared by every response the key is found for
+	 * @return the body given
+	 */
+	ResponseBody put(Key key, ResponseBody body) {
+		segmentOf(key).store(key.detach(), body);
+		return body;
+	}
+
+	/**
+	 * Drops every entry, the counts of hits, misses and evictions are kept
+	 */
+	void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+				segment.bytes = 0;
+			}
+		}
+	}
+
+	public ResponseCacheStatistics getStatistics() {
+		long entries = 0;
+		long bytes = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				entries += segment.size();
+				bytes += segment.bytes;
+			}
+		}
+		return new ResponseCacheStatistics(hits.sum(), misses.sum(), evictions.sum(), entries, bytes, maxBytes);
+	}
+
+	private Segment segmentOf(Key key) {
+		return segments[((key.hash ^ key.hash >>> 16) & 0x7fffffff) % segments.length];
+	}
+
+	/**
+	 * The identity of the template and the values it reads from the request
+	 */
+	static final class Key {
+		private final Object template;
+		private final Object[] parts;
+		private final int hash;
+
+		Key(Object template, Object[] parts) {
+			this.template = template;
+			this.parts = parts;
+			this.hash = 31 * System.identityHashCode(template) + Arrays.hashCode(parts);
+		}
+
+		/**
+		 * @return a key holding copies of the maps of the request, which NanoHTTPD clears for the next request of the connection
+		 */
+		private Key detach() {
+			Object[] copies = parts.clone();
+			for (int part = 0; part < copies.length; part++) {
+				if (copies[part] instanceof Map) {
+					Map<Object, Object> copy = new HashMap<>();
+					for (Map.Entry<?, ?> entry : ((Map<?, ?>) copies[part]).entrySet()) {
+						copy.put(entry.getKey(), entry.getValue() instanceof List ? new ArrayList<>((List<?>) entry.getValue()) : entry.getValue());
+					}
+					copies[part] = copy;
+				}
+			}
+			return new Key(template, copies);
+		}
+
+		private long weight() {
+			long weight = ENTRY_OVERHEAD;
+			for (Object part : parts) {
+				weight += part == null ? 0 : 2L * part.toString().length();
+			}
+			return weight;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return template == key.template && hash == key.hash && Arrays.equals(parts, key.parts);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class CachedBody {
+		private final ResponseBody body;
+		private final long weight;
+
+		private CachedBody(ResponseBody body, long weight) {
+			this.body = body;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * A LinkedHashMap in access order, the eldest entry is the least recently used
+	 */
+	private final class Segment extends LinkedHashMap<Key, CachedBody> {
+		private final long maxBytes;
+		private long bytes;
+
+		private Segment(long maxBytes) {
+			super(16, 0.75f, true);
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized ResponseBody lookup(Key key) {
+			CachedBody cached = get(key);
+			return cached == null ? null : cached.body;
+		}
+
+		synchronized void store(Key key, ResponseBody body) {
+			long weight = body.getLength() + key.weight();
+			if (weight > maxBytes) {
+				return;
+			}
+			CachedBody replaced = put(key, new CachedBody(body, weight));
+			bytes += weight - (replaced == null ? 0 : replaced.weight);
+			Iterator<CachedBody> eldest = values().iterator();
+			while (bytes > maxBytes) {
+				bytes -= eldest.next().weight;
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.webmock.server;
+
+/**
+ * A point in time view of the response cache of a MockHTTPServer, a low hit ratio means the cached templates read values that change with every request
+ */
+public final class ResponseCacheStatistics {
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long entries;
+	private final long bytes;
+	private final long maxBytes;
+
+	public ResponseCacheStatistics(long hits, long misses, long evictions, long entries, long bytes, long maxBytes) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.entries = entries;
+		this.bytes = bytes;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the responses taken from the cache without rendering
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the responses rendered because the cache did not hold them
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the entries dropped to keep the cache within its bound
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public long getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the bytes of the bodies and the estimated bytes of the keys held
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return the share of lookups answered from the cache
+	 */
+	public double getHitRatio() {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	void appendJson(StringBuilder json) {
+		json.append("{\"hits\":").append(hits)
+				.append(",\"misses\":").append(misses)
+				.append(",\"evictions\":").append(evictions)
+				.append(",\"entries\":").append(entries)
+				.append(",\"bytes\":").append(bytes)
+				.append(",\"maxBytes\":").append(maxBytes)
+				.append('}');
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", entries=" + entries + ", bytes=" + bytes + " of " + maxBytes;
+	}
+}
@@ -0,0 +1,329 @@
+package org.webmock.server;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * A ResponseBody that echoes parts of the request. The template is parsed once into a list of segments,
+ * the text between placeholders is encoded up front and each response is rendered as UTF-8 into a buffer the rendering thread reuses.
+ * Placeholders are
+ * {{method}}, {{uri}} and {{body}},
+ * {{path.name}} a variable of the uri template or regular expression that matched,
+ * {{query.name}} the first value of a parameter,
+ * {{header.name}} a request header and
+ * {{script: expression}} a JavaScript expression compiled once with Rhino and evaluated with request and path in scope.
+ * A value the request does not carry renders as nothing
+ */
+public final class ResponseTemplate implements ResponseBody {
+	private static final String OPEN = "{{";
+	private static final String CLOSE = "}}";
+	private static final ThreadLocal<TemplateBuffer> BUFFERS = ThreadLocal.withInitial(TemplateBuffer::new);
+
+	private final String template;
+	private final String contentType;
+	private final Segment[] segments;
+	private final int placeholders;
+	private final boolean scripted;
+
+	private ResponseTemplate(String template, String contentType, Segment[] segments) {
+		this.template = template;
+		this.contentType = contentType;
+		this.segments = segments;
+		int values = 0;
+		boolean script = false;
+		for (Segment segment : segments) {
+			values += segment instanceof Value ? 1 : 0;
+			script |= segment instanceof ScriptSegment;
+		}
+		this.placeholders = values;
+		this.scripted = script;
+	}
+
+	/**
+	 * A html template
+	 */
+	public static ResponseTemplate compile(String template) {
+		return compile(template, NanoHTTPD.MIME_HTML + "; charset=UTF-8");
+	}
+
+	/**
+	 * @param template    the text of the response with placeholders
+	 * @param contentType the Content-Type sent with every rendered response
+	 * @throws IllegalArgumentException when a placeholder is not closed, unknown or its script does not compile
+	 */
+	public static ResponseTemplate compile(String template, String contentType) {
+		List<Segment> segments = new ArrayList<>();
+		int start = 0;
+		int open;
+		while ((open = template.indexOf(OPEN, start)) >= 0) {
+			int close = template.indexOf(CLOSE, open + OPEN.length());
+			if (close < 0) {
+				throw new IllegalArgumentException("placeholder opened at " + open + " is not closed in template " + template);
+			}
+			if (open > start) {
+				segments.add(new Literal(template.substring(start, open)));
+			}
+			segments.add(placeholder(template.substring(open + OPEN.length(), close).trim()));
+			start = close + CLOSE.length();
+		}
+		if (start < template.length()) {
+			segments.add(new Literal(template.substring(start)));
+		}
+		return new ResponseTemplate(template, contentType, segments.toArray(new Segment[0]));
+	}
+
+	private static Segment placeholder(String placeholder) {
+		if (placeholder.startsWith("script:")) {
+			return new ScriptSegment(placeholder.substring("script:".length()).trim());
+		}
+		switch (placeholder) {
+			case "method":
+				return new Value(MockRequest::getMethod);
+			case "uri":
+				return new Value(MockRequest::getUri);
+			case "body":
+				return new Value(MockRequest::getBody);
+			default:
+		}
+		int dot = placeholder.indexOf('.');
+		String name = placeholder.substring(dot + 1);
+		switch (dot < 0 ? placeholder : placeholder.substring(0, dot)) {
+			case "path":
+				return new Value(request -> request.getPathVariables().get(name));
+			case "query":
+				return new Value(request -> {
+					List<String> values = request.getParameters().get(name);
+					return values == null || values.isEmpty() ? null : values.get(0);
+				});
+			case "header":
+				String header = name.toLowerCase(Locale.ROOT);
+				return new Value(request -> request.getHeader(header));
+			default:
+				throw new IllegalArgumentException("unknown placeholder {{" + placeholder + "}}");
+		}
+	}
+
+	private static void write(TemplateBuffer buffer, String value) {
+		if (value != null) {
+			buffer.write(value);
+		}
+	}
+
+	/**
+	 * Renders the template for the request into the buffer of the calling thread, the body returned is only valid until
+	 * the same thread renders again. A response sent at once is sent before its worker answers another request,
+	 * a response sent after a delay or in slices takes a copy with detached()
+	 */
+	@Override
+	public ResponseBody forRequest(MockRequest request) {
+		TemplateBuffer buffer = render(request);
+		return new Rendered(buffer.array(), buffer.length(), contentType);
+	}
+
+	private TemplateBuffer render(MockRequest request) {
+		TemplateBuffer buffer = BUFFERS.get();
+		buffer.reset();
+		for (Segment segment : segments) {
+			segment.render(request, buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Answers from the cache when a request carried the same values for every placeholder before, a template with a script
+	 * is keyed on the whole request as the script may read any of it, so its script must give the same result for the same request
+	 */
+	@Override
+	public ResponseBody forRequest(MockRequest request, ResponseCache cache) {
+		if (cache == null) {
+			return forRequest(request);
+		}
+		ResponseCache.Key key = new ResponseCache.Key(this, cacheKey(request));
+		ResponseBody cached = cache.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		TemplateBuffer buffer = render(request);
+		return cache.put(key, ByteBufferResponseBody.of(Arrays.copyOf(buffer.array(), buffer.length()), contentType));
+	}
+
+	private Object[] cacheKey(MockRequest request) {
+		if (scripted) {
+			return new Object[]{request.getMethod(), request.getUri(), request.getParameters(), request.getHeaders(), request.getBody(), request.getPathVariables()};
+		}
+		Object[] parts = new Object[placeholders];
+		int part = 0;
+		for (Segment segment : segments) {
+			if (segment instanceof Value) {
+				parts[part++] = ((Value) segment).value.apply(request);
+			}
+		}
+		return parts;
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the length of the text between the placeholders, the length of a response is only known once it is rendered
+	 */
+	@Override
+	public long getLength() {
+		long length = 0;
+		for (Segment segment : segments) {
+			if (segment instanceof Literal) {
+				length += ((Literal) segment).bytes.length;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return the text between the placeholders, use forRequest to render the template
+	 */
+	@Override
+	public InputStream openStream() {
+		TemplateBuffer buffer = new TemplateBuffer();
+		for (Segment segment : segments) {
+			if (segment instanceof Literal) {
+				buffer.write(((Literal) segment).bytes);
+			}
+		}
+		return new ByteArrayInputStream(buffer.array(), 0, buffer.length());
+	}
+
+	@Override
+	public String toString() {
+		return "template " + template;
+	}
+
+	private interface Segment {
+		void render(MockRequest request, TemplateBuffer buffer);
+	}
+
+	/**
+	 * A placeholder replaced by a value read from the request
+	 */
+	private static final class Value implements Segment {
+		private final Function<MockRequest, String> value;
+
+		private Value(Function<MockRequest, String> value) {
+			this.value = value;
+		}
+
+		@Override
+		public void render(MockRequest request, TemplateBuffer buffer) {
+			write(buffer, value.apply(request));
+		}
+	}
+
+	private static final class Literal implements Segment {
+		private final byte[] bytes;
+
+		private Literal(String text) {
+			this.bytes = text.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void render(MockRequest request, TemplateBuffer buffer) {
+			buffer.write(bytes);
+		}
+	}
+
+	/**
+	 * The script is compiled for the interpreter once and run against a sealed scope of the standard objects that every evaluation shares,
+	 * each evaluation only adds a small scope holding the request
+	 */
+	private static final class ScriptSegment implements Segment {
+		private final Script script;
+		private final ScriptableObject sharedScope;
+
+		private ScriptSegment(String source) {
+			Context context = Context.enter();
+			try {
+				context.setOptimizationLevel(-1);
+				this.sharedScope = context.initStandardObjects(null, true);
+				this.script = context.compileString(source, "template", 1, null);
+			} catch (RhinoException e) {
+				throw new IllegalArgumentException("script " + source + " does not compile: " + e.getMessage(), e);
+			} finally {
+				Context.exit();
+			}
+		}
+
+		@Override
+		public void render(MockRequest request, TemplateBuffer buffer) {
+			Context context = Context.enter();
+			try {
+				context.setOptimizationLevel(-1);
+				Scriptable scope = context.newObject(sharedScope);
+				scope.setPrototype(sharedScope);
+				scope.setParentScope(null);
+				ScriptableObject.putProperty(scope, "request", Context.javaToJS(request, scope));
+				ScriptableObject.putProperty(scope, "path", Context.javaToJS(request.getPathVariables(), scope));
+				Object result = script.exec(context, scope);
+				if (result != null && !(result instanceof Undefined)) {
+					buffer.write(Context.toString(result));
+				}
+			} finally {
+				Context.exit();
+			}
+		}
+	}
+
+	/**
+	 * A rendered response over the buffer it was rendered into
+	 */
+	private static final class Rendered implements ResponseBody {
+		private final byte[] bytes;
+		private final int length;
+		private final String contentType;
+
+		private Rendered(byte[] bytes, int length, String contentType) {
+			this.bytes = bytes;
+			this.length = length;
+			this.contentType = contentType;
+		}
+
+		@Override
+		public String getContentType() {
+			return contentType;
+		}
+
+		@Override
+		public long getLength() {
+			return length;
+		}
+
+		@Override
+		public InputStream openStream() {
+			return new ByteArrayInputStream(bytes, 0, length);
+		}
+
+		@Override
+		public ResponseBody detached() {
+			return ByteBufferResponseBody.of(Arrays.copyOf(bytes, length), contentType);
+		}
+
+		@Override
+		public String toString() {
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.webmock.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The expectations matched by a UriPattern, stored in a trie of path segments so finding the candidates for a uri
+ * costs one step per segment however many patterns are registered. A template is stored under its segments with a wildcard
+ * for each segment holding a variable, a regular expression under the literal segments it starts with and is tried
+ * for every uri passing through that node
+ */
+final class RouteTrie {
+	private final Node root = new Node();
+
+	/**
+	 * @param expectations the expectations in ordinal order, each with a UriPattern
+	 */
+	RouteTrie(List<CompiledExpectation> expectations) {
+		for (CompiledExpectation expectation : expectations) {
+			UriPattern pattern = expectation.getUriPattern();
+			Node node = root;
+			for (String segment : pattern.getSegments()) {
+				node = node.child(segment);
+			}
+			if (pattern.isTemplate()) {
+				node.terminalBuilder.add(expectation);
+			} else {
+				node.prefixedBuilder.add(expectation);
+			}
+		}
+		root.freeze();
+	}
+
+	boolean isEmpty() {
+		return root.terminal.length == 0 && root.prefixed.length == 0 && root.literals.isEmpty() && root.wildcard == null;
+	}
+
+	/**
+	 * @return the candidate with the lowest ordinal that matches and can still be invoked, or selected when none has a lower ordinal
+	 */
+	CompiledExpectation select(MockRequest request, CompiledExpectation selected) {
+		String uri = request.getUri();
+		if (!uri.startsWith("/")) {
+			return selected;
+		}
+		return select(root, uri, 1, request, selected);
+	}
+
+	private static CompiledExpectation select(Node node, String uri, int start, MockRequest request, CompiledExpectation selected) {
+		selected = ExpectationIndex.select(node.prefixed, request, selected);
+		if (start > uri.length()) {
+			return ExpectationIndex.select(node.terminal, request, selected);
+		}
+		int end = uri.indexOf('/', start);
+		if (end < 0) {
+			end = uri.length();
+		}
+		Node literal = node.literals.get(uri.substring(start, end));
+		if (literal != null) {
+			selected = select(literal, uri, end + 1, request, selected);
+		}
+		if (node.wildcard != null && end > start) {
+			selected = select(node.wildcard, uri, end + 1, request, selected);
+		}
+		return selected;
+	}
+
+	private static final class Node {
+		private static final CompiledExpectation[] NONE = new CompiledExpectation[0];
+
+		private Map<String, Node> literals = new HashMap<>();
+		private Node wildcard;
+		private List<CompiledExpectation> terminalBuilder = new ArrayList<>();
+		private List<CompiledExpectation> prefixedBuilder = new ArrayList<>();
+		private CompiledExpectation[] terminal = NONE;
+		private CompiledExpectation[] prefixed = NONE;
+
+		/**
+		 * @param segment the literal segment or null for the wildcard
+		 */
+		Node child(String segment) {
+			if (segment == null) {
+				if (wildcard == null) {
+					wildcard = new Node();
+				}
+				return wildcard;
+			}
+			return literals.computeIfAbsent(segment, unused -> new Node());
+		}
+
+		void freeze() {
+			terminal = terminalBuilder.toArray(NONE);
+			prefixed = prefixedBuilder.toArray(NONE);
+			terminalBuilder = null;
+			prefixedBuilder = null;
+			for (Node child : literals.values()) {
+				child.freeze();
+			}
+			if (wildcard != null) {
+				wildcard.freeze();
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package org.webmock.server;
+
+/**
+ * A point in time view of the connections handled by the AsyncRunner of a MockHTTPServer
+ */
+public final class RunnerStatistics {
+	private final int activeConnections;
+	private final int queueDepth;
+	private final long rejectedConnections;
+
+	public RunnerStatistics(int activeConnections, int queueDepth, long rejectedConnections) {
+		this.activeConnections = activeConnections;
+		this.queueDepth = queueDepth;
+		this.rejectedConnections = rejectedConnections;
+	}
+
+	/**
+	 * @return the connections currently being served
+	 */
+	public int getActiveConnections() {
+		return activeConnections;
+	}
+
+	/**
+	 * @return the accepted connections waiting for a worker
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * @return the connections closed without being served because the runner was full or shut down
+	 */
+	public long getRejectedConnections() {
+		return rejectedConnections;
+	}
+
+	@Override
+	public String toString() {
+		return "active=" + activeConnections + ", queued=" + queueDepth + ", rejected=" + rejectedConnections;
+	}
+}
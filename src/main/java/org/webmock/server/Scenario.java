@@ -0,0 +1,97 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A named state shared by the expectations taking part in it, eg the same uri answering differently before and after a login.
+ * The names of the states are numbered when the server is built so a request compares and sets an int instead of scanning constraints
+ */
+public final class Scenario {
+	public static final String STARTED = "Started";
+	private static final int ANY_STATE = -1;
+
+	private final String name;
+	private final List<String> states = new ArrayList<>();
+	private final AtomicInteger state = new AtomicInteger();
+
+	public Scenario(String name) {
+		this.name = name;
+		states.add(STARTED);
+	}
+
+	/**
+	 * Adds a step to the scenario, only called while the server is built
+	 *
+	 * @param requiredState the state the scenario must be in for the step to be matched or null for any state
+	 * @param nextState     the state the scenario moves to once the step is matched or null to stay in the current state
+	 * @return the step to compile the expectation with
+	 */
+	public ScenarioStep step(String requiredState, String nextState) {
+		return new Step(requiredState == null ? ANY_STATE : stateNumbered(requiredState), nextState == null ? ANY_STATE : stateNumbered(nextState));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the current state, Scenario.STARTED until a step moves the scenario on
+	 */
+	public String getState() {
+		return states.get(state.get());
+	}
+
+	private int stateNumbered(String stateName) {
+		int number = states.indexOf(stateName);
+		if (number < 0) {
+			states.add(stateName);
+			number = states.size() - 1;
+		}
+		return number;
+	}
+
+	private final class Step extends ScenarioStep {
+		private final int requiredState;
+		private final int nextState;
+
+		private Step(int requiredState, int nextState) {
+			this.requiredState = requiredState;
+			this.nextState = nextState;
+		}
+
+		@Override
+		int permittedState() {
+			int current = state.get();
+			return requiredState == ANY_STATE || requiredState == current ? current : -1;
+		}
+
+		/**
+		 * A step that keeps the state sets it to itself, so it still fails when another request moved the state after it was observed
+		 */
+		@Override
+		boolean advance(int observed) {
+			return state.compareAndSet(observed, nextState == ANY_STATE ? observed : nextState);
+		}
+
+		@Override
+		void describeMismatch(Description description) {
+			description.appendText("scenario " + name + ": expected state ").appendValue(states.get(requiredState))
+					.appendText(" but was ").appendValue(getState());
+		}
+
+		@Override
+		public void describeTo(Description description) {
+			description.appendText(" in scenario " + name);
+			if (requiredState != ANY_STATE) {
+				description.appendText(" when ").appendValue(states.get(requiredState));
+			}
+			if (nextState != ANY_STATE) {
+				description.appendText(" then ").appendValue(states.get(nextState));
+			}
+		}
+	}
+}
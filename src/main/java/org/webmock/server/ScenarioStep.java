@@ -0,0 +1,37 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+import org.hamcrest.SelfDescribing;
+
+/**
+ * The place of a CompiledExpectation in a Scenario or a Sequence. Whether a request may be matched to the step is decided from the one
+ * atomic state of its scenario or sequence, so checking the order costs the same however many steps there are
+ */
+public abstract class ScenarioStep implements SelfDescribing {
+
+	ScenarioStep() {
+	}
+
+	/**
+	 * @return the state the step may be matched in, which is the current state, or -1 when the current state does not allow the step
+	 */
+	abstract int permittedState();
+
+	/**
+	 * Moves from the state observed by permittedState to the state after the step with a single compare and set, called once the invocation is counted
+	 *
+	 * @return false when another request changed the state first, the invocation must then be given back
+	 */
+	abstract boolean advance(int observed);
+
+	/**
+	 * @param expectation the expectation the step belongs to, given when it is compiled
+	 */
+	void bind(CompiledExpectation expectation) {
+	}
+
+	/**
+	 * Describes why the current state does not allow the step
+	 */
+	abstract void describeMismatch(Description description);
+}
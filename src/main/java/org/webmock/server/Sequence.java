@@ -0,0 +1,97 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expectations that must be met in the order they were added, compiled into a state machine whose state is the position of the current step.
+ * A request for a later step moves the position there once the current step is satisfied and every step in between may be met no times,
+ * the first step that must still be met after each step is worked out when the server is built so the check does not walk the steps
+ */
+public final class Sequence {
+	private final String name;
+	private final List<Step> steps = new ArrayList<>();
+	private final AtomicInteger position = new AtomicInteger();
+	private int firstUnreached;
+
+	public Sequence(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Adds the next step of the sequence, only called while the server is built
+	 *
+	 * @return the step to compile the expectation with
+	 */
+	public ScenarioStep nextStep() {
+		Step step = new Step(steps.size());
+		steps.add(step);
+		return step;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the index of the step the sequence is at, counted from 0
+	 */
+	public int getPosition() {
+		return position.get();
+	}
+
+	private final class Step extends ScenarioStep {
+		private final int index;
+		private CompiledExpectation expectation;
+		private int furthestReachable = Integer.MAX_VALUE;
+
+		private Step(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * A step that must be met is as far as the steps before it, back to the previous such step, can reach
+		 */
+		@Override
+		void bind(CompiledExpectation expectation) {
+			this.expectation = expectation;
+			if (expectation.getCardinality().getRequired() > 0) {
+				for (int earlier = firstUnreached; earlier < index; earlier++) {
+					steps.get(earlier).furthestReachable = index;
+				}
+				firstUnreached = index;
+			}
+		}
+
+		@Override
+		int permittedState() {
+			int current = position.get();
+			if (current == index) {
+				return current;
+			}
+			Step at = steps.get(current);
+			return current < index && index <= at.furthestReachable && at.expectation.isSatisfied() ? current : -1;
+		}
+
+		@Override
+		boolean advance(int observed) {
+			return position.compareAndSet(observed, index);
+		}
+
+		@Override
+		void describeMismatch(Description description) {
+			Step at = steps.get(position.get());
+			description.appendText("sequence " + name + ": step ").appendValue(index)
+					.appendText(" out of order, the sequence is at step ").appendValue(at.index)
+					.appendText(at.expectation.isSatisfied() ? "" : " which is not yet satisfied");
+		}
+
+		@Override
+		public void describeTo(Description description) {
+			description.appendText(" as step ").appendValue(index).appendText(" of sequence " + name);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package org.webmock.server;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * The settings of a MockHTTPServer that are not part of its expectations, applied when the server is started
+ */
+public class ServerConfiguration {
+	private Supplier<? extends ReportingAsyncRunner> asyncRunnerFactory;
+	private int maxStreamedBodySize = -1;
+	private String metricsPath;
+	private int idleTimeoutMillis = NanoHTTPD.SOCKET_READ_TIMEOUT;
+	private int maxRequestsPerConnection;
+	private Supplier<? extends ServerEngine> engineFactory;
+	private long responseCacheBytes;
+	private MismatchListener mismatchListener;
+	private boolean failFast;
+	private Thread failFastTarget;
+
+	/**
+	 * @param asyncRunnerFactory creates the runner each started server hands its connections to, null keeps the NanoHTTPD thread per connection runner
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withAsyncRunner(Supplier<? extends ReportingAsyncRunner> asyncRunnerFactory) {
+		this.asyncRunnerFactory = asyncRunnerFactory;
+		return this;
+	}
+
+	/**
+	 * @param maxBodySize the largest body read from the socket into a pooled buffer, larger requests are answered with 413 Payload Too Large
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withStreamingRequestBody(int maxBodySize) {
+		this.maxStreamedBodySize = maxBodySize;
+		return this;
+	}
+
+	/**
+	 * @param metricsPath the uri a GET request is answered on with the metrics of the server as json, null disables the endpoint
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withMetricsEndpoint(String metricsPath) {
+		this.metricsPath = metricsPath;
+		return this;
+	}
+
+	/**
+	 * @param idleTimeout              how long a persistent connection may wait for its next request before it is closed
+	 * @param maxRequestsPerConnection the response to this many requests on one connection asks the client to close it, 0 for no limit
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withKeepAlive(Duration idleTimeout, int maxRequestsPerConnection) {
+		if (idleTimeout.isNegative() || idleTimeout.toMillis() > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("idle timeout of " + idleTimeout + " is out of range");
+		}
+		if (maxRequestsPerConnection < 0) {
+			throw new IllegalArgumentException("max requests per connection must not be negative but was " + maxRequestsPerConnection);
+		}
+		this.idleTimeoutMillis = (int) idleTimeout.toMillis();
+		this.maxRequestsPerConnection = maxRequestsPerConnection;
+		return this;
+	}
+
+	/**
+	 * @param engineFactory creates the engine each started server accepts connections with, null keeps NanoHTTPD
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withEngine(Supplier<? extends ServerEngine> engineFactory) {
+		this.engineFactory = engineFactory;
+		return this;
+	}
+
+	/**
+	 * @param maxBytes the bytes of rendered template responses kept to answer requests with the same template inputs, 0 disables the cache
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withResponseCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("response cache size must not be negative but was " + maxBytes);
+		}
+		this.responseCacheBytes = maxBytes;
+		return this;
+	}
+
+	/**
+	 * @param mismatchListener told about each request that does not match as it is received, null for none
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withMismatchListener(MismatchListener mismatchListener) {
+		this.mismatchListener = mismatchListener;
+		return this;
+	}
+
+	/**
+	 * Stops answering at the first request that does not match: every later request is answered with an internal error without being dispatched
+	 *
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withFailFast() {
+		this.failFast = true;
+		return this;
+	}
+
+	/**
+	 * Fails fast as withFailFast() and also interrupts the target at the first mismatch of each set of expectations, so a test waiting on it wakes up.
+	 * Once the server is verified, reset or stopped no more interrupts are sent and the interrupt is cleared when the target is the calling thread
+	 *
+	 * @param target the thread running the tests, never a thread of the server
+	 * @return returns this for chaining and readability
+	 */
+	public ServerConfiguration withFailFast(Thread target) {
+		if (target == null) {
+			throw new IllegalArgumentException("fail fast needs a thread to interrupt");
+		}
+		this.failFast = true;
+		this.failFastTarget = target;
+		return this;
+	}
+
+	boolean isStreamingRequestBody() {
+		return maxStreamedBodySize >= 0;
+	}
+
+	int getMaxStreamedBodySize() {
+		return maxStreamedBodySize;
+	}
+
+	/**
+	 * @return the largest request body a server reads, the streamed body limit when one is set and otherwise the limit of the NioServerEngine
+	 */
+	int getMaxRequestBodySize() {
+		return isStreamingRequestBody() ? maxStreamedBodySize : NioServerEngine.DEFAULT_MAX_BODY_SIZE;
+	}
+
+	int getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	int getMaxRequestsPerConnection() {
+		return maxRequestsPerConnection;
+	}
+
+	Supplier<? extends ServerEngine> getEngineFactory() {
+		return engineFactory;
+	}
+
+	MismatchListener getMismatchListener() {
+		return mismatchListener;
+	}
+
+	boolean isFailFast() {
+		return failFast;
+	}
+
+	Thread getFailFastTarget() {
+		return failFastTarget;
+	}
+
+	long getResponseCacheBytes() {
+		return responseCacheBytes;
+	}
+
+	String getMetricsPath() {
+		return metricsPath;
+	}
+
+	Supplier<? extends ReportingAsyncRunner> getAsyncRunnerFactory() {
+		return asyncRunnerFactory;
+	}
+}
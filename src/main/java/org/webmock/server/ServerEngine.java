@@ -0,0 +1,31 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * The transport a MockHTTPServer accepts connections and parses requests with in place of NanoHTTPD's socket per thread model.
+ * The engine only moves bytes, every request is handed to the EngineHandler of the server so matching, metrics and verification stay the same
+ */
+public interface ServerEngine {
+
+	/**
+	 * Binds the address and serves connections until the engine is closed
+	 *
+	 * @param address           the address to listen on, port 0 for a free port chosen by the operating system
+	 * @param idleTimeoutMillis how long a connection may wait for its next request before it is closed, 0 for no limit
+	 * @param handler           answers every request
+	 * @throws IOException if the address can not be bound
+	 */
+	void bind(InetSocketAddress address, int idleTimeoutMillis, EngineHandler handler) throws IOException;
+
+	/**
+	 * @return the port bound or -1 before the engine is bound
+	 */
+	int getLocalPort();
+
+	/**
+	 * Stops accepting connections and closes every open connection
+	 */
+	void close();
+}
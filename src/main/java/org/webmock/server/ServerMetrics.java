@@ -0,0 +1,103 @@
+package org.webmock.server;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A live view of the metrics a MockHTTPServer records, durations are in nanoseconds.
+ * Requests are recorded per expectation when the server uses indexed matching, the jMock engine only records the totals
+ */
+public final class ServerMetrics {
+	private final RequestMetrics matched = new RequestMetrics("matched requests");
+	private final RequestMetrics unmatched = new RequestMetrics("unmatched requests");
+	private final Supplier<List<RequestMetrics>> expectations;
+	private final ConnectionTracker connections = new ConnectionTracker();
+	private final ResponseCache responseCache;
+
+	ServerMetrics(Supplier<List<RequestMetrics>> expectations) {
+		this(expectations, null);
+	}
+
+	ServerMetrics(Supplier<List<RequestMetrics>> expectations, ResponseCache responseCache) {
+		this.expectations = expectations;
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * @return every request that met an expectation
+	 */
+	public RequestMetrics getMatched() {
+		return matched;
+	}
+
+	/**
+	 * @return every request no expectation was left for
+	 */
+	public RequestMetrics getUnmatched() {
+		return unmatched;
+	}
+
+	/**
+	 * @return the metrics of each expectation in the order they were created
+	 */
+	public List<RequestMetrics> getExpectations() {
+		return expectations.get();
+	}
+
+	/**
+	 * @return how the connections of the server have been reused so far
+	 */
+	public ConnectionStatistics getConnections() {
+		return connections.snapshot();
+	}
+
+	/**
+	 * @return the hits, misses and evictions of the response cache or null when the server does not cache responses
+	 */
+	public ResponseCacheStatistics getResponseCache() {
+		return responseCache == null ? null : responseCache.getStatistics();
+	}
+
+	ConnectionTracker connections() {
+		return connections;
+	}
+
+	void recordMatch(RequestMetrics expectation, long matchNanos, long serveNanos, long requestBytes, long responseBytes) {
+		matched.record(matchNanos, serveNanos, requestBytes, responseBytes);
+		if (expectation != null) {
+			expectation.record(matchNanos, serveNanos, requestBytes, responseBytes);
+		}
+	}
+
+	void recordMismatch(long matchNanos, long serveNanos, long requestBytes, long responseBytes) {
+		unmatched.record(matchNanos, serveNanos, requestBytes, responseBytes);
+	}
+
+	public String toJson() {
+		List<RequestMetrics> expectations = getExpectations();
+		StringBuilder json = new StringBuilder(256 + expectations.size() * 256);
+		json.append("{\"unit\":\"nanoseconds\",\"matched\":");
+		matched.appendJson(json);
+		json.append(",\"unmatched\":");
+		unmatched.appendJson(json);
+		json.append(",\"connections\":");
+		connections.snapshot().appendJson(json);
+		if (responseCache != null) {
+			json.append(",\"responseCache\":");
+			responseCache.getStatistics().appendJson(json);
+		}
+		json.append(",\"expectations\":[");
+		for (int index = 0; index < expectations.size(); index++) {
+			if (index > 0) {
+				json.append(',');
+			}
+			expectations.get(index).appendJson(json);
+		}
+		return json.append("]}").toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJson();
+	}
+}
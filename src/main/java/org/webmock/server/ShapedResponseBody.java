@@ -0,0 +1,100 @@
+package org.webmock.server;
+
+import java.io.InputStream;
+
+/**
+ * A ResponseBody that is sent after a delay and no faster than a bandwidth limit, to stand in for a slow downstream service
+ */
+public final class ShapedResponseBody implements ResponseBody {
+	private final ResponseBody body;
+	private final LatencyDistribution latency;
+	private final long bytesPerSecond;
+
+	private ShapedResponseBody(ResponseBody body, LatencyDistribution latency, long bytesPerSecond) {
+		this.body = body;
+		this.latency = latency;
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * @param body           the body sent
+	 * @param latency        the delay before the response is sent or null for none
+	 * @param bytesPerSecond the bandwidth the body is sent with or 0 for unlimited
+	 */
+	public static ShapedResponseBody of(ResponseBody body, LatencyDistribution latency, long bytesPerSecond) {
+		if (bytesPerSecond < 0) {
+			throw new IllegalArgumentException("bandwidth limit of " + bytesPerSecond + " bytes per second is negative");
+		}
+		return new ShapedResponseBody(body, latency, bytesPerSecond);
+	}
+
+	/**
+	 * @return a delay sampled from the latency distribution, 0 without one
+	 */
+	long nextDelayNanos() {
+		return latency == null ? 0 : latency.nextDelayNanos();
+	}
+
+	/**
+	 * @return the bandwidth the body is sent with or 0 for unlimited
+	 */
+	long getBandwidthLimit() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * @return the body being shaped, for an engine that sends it in its own way once the delay is over
+	 */
+	ResponseBody getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the body at full speed, for an engine that paces the slices itself instead of blocking in a ThrottledInputStream
+	 */
+	InputStream openUnthrottledStream() {
+		return body.openStream();
+	}
+
+	@Override
+	public ResponseBody forRequest(MockRequest request) {
+		return forRequest(request, null);
+	}
+
+	/**
+	 * A shaped response is sent after its delay or slice by slice, on whichever worker is free by then, so a rendered body is detached
+	 * from the buffer of the thread that rendered it
+	 */
+	@Override
+	public ResponseBody forRequest(MockRequest request, ResponseCache cache) {
+		ResponseBody rendered = body.forRequest(request, cache);
+		return rendered == body ? this : new ShapedResponseBody(rendered.detached(), latency, bytesPerSecond);
+	}
+
+	@Override
+	public ResponseBody detached() {
+		ResponseBody own = body.detached();
+		return own == body ? this : new ShapedResponseBody(own, latency, bytesPerSecond);
+	}
+
+	@Override
+	public String getContentType() {
+		return body.getContentType();
+	}
+
+	@Override
+	public long getLength() {
+		return body.getLength();
+	}
+
+	@Override
+	public InputStream openStream() {
+		InputStream stream = body.openStream();
+		return bytesPerSecond == 0 ? stream : new ThrottledInputStream(stream, bytesPerSecond);
+	}
+
+	@Override
+	public String toString() {
+		return body.toString();
+	}
+}
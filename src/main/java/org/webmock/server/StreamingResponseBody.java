@@ -0,0 +1,269 @@
+package org.webmock.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A ResponseBody sent with chunked transfer encoding as a ChunkProducer produces it, for server-sent events, NDJSON feeds and slow downloads.
+ * Chunks are produced on the shared timer thread and handed to the response through a small bounded queue,
+ * a producer that gets ahead of a slow client is not rescheduled until a chunk is taken so buffering never grows past the queue.
+ * On NanoHTTPD each open stream holds the worker thread of its connection, which waits for every chunk, so a bounded worker pool
+ * serves no more streams at once than it has workers. The NIO engine is told of each chunk as it is queued and sends it from
+ * whichever worker is free, an open stream holds no thread there
+ */
+public final class StreamingResponseBody implements ResponseBody {
+	public static final String EVENT_STREAM = "text/event-stream";
+	public static final String NDJSON = "application/x-ndjson";
+	private static final int DEFAULT_BUFFERED_CHUNKS = 16;
+
+	private final String contentType;
+	private final long intervalNanos;
+	private final int bufferedChunks;
+	private final ChunkProducer producer;
+
+	private StreamingResponseBody(String contentType, long intervalNanos, int bufferedChunks, ChunkProducer producer) {
+		this.contentType = contentType;
+		this.intervalNanos = intervalNanos;
+		this.bufferedChunks = bufferedChunks;
+		this.producer = producer;
+	}
+
+	/**
+	 * @param contentType    the Content-Type sent with the stream
+	 * @param interval       the time between one chunk being produced and the next, the first chunk is produced straight away
+	 * @param bufferedChunks the number of chunks produced ahead of the client before the producer waits for it
+	 * @param producer       produces the chunks, every response calls it from index 0
+	 */
+	public static StreamingResponseBody of(String contentType, Duration interval, int bufferedChunks, ChunkProducer producer) {
+		if (bufferedChunks < 1) {
+			throw new IllegalArgumentException("at least one chunk must be buffered but was " + bufferedChunks);
+		}
+		return new StreamingResponseBody(contentType, interval.toNanos(), bufferedChunks, producer);
+	}
+
+	public static StreamingResponseBody of(String contentType, Duration interval, ChunkProducer producer) {
+		return of(contentType, interval, DEFAULT_BUFFERED_CHUNKS, producer);
+	}
+
+	/**
+	 * Sends each event as a server-sent event data field, an event of several lines is sent as several data lines
+	 */
+	public static StreamingResponseBody serverSentEvents(Duration interval, List<String> events) {
+		return of(EVENT_STREAM, interval, index -> index < events.size() ? event(events.get((int) index)) : null);
+	}
+
+	/**
+	 * Sends each line as one line of newline delimited JSON
+	 */
+	public static StreamingResponseBody ndjson(Duration interval, List<String> lines) {
+		return of(NDJSON, interval, index -> index < lines.size() ? (lines.get((int) index) + "\n").getBytes(StandardCharsets.UTF_8) : null);
+	}
+
+	/**
+	 * Sends the bytes a slice at a time, to stand in for a slow download
+	 */
+	public static StreamingResponseBody drip(byte[] body, String contentType, int bytesPerChunk, Duration interval) {
+		if (bytesPerChunk < 1) {
+			throw new IllegalArgumentException("a chunk must hold at least one byte but was " + bytesPerChunk);
+		}
+		return of(contentType, interval, index -> {
+			long start = index * bytesPerChunk;
+			return start < body.length ? Arrays.copyOfRange(body, (int) start, (int) Math.min(body.length, start + bytesPerChunk)) : null;
+		});
+	}
+
+	private static byte[] event(String data) {
+		StringBuilder event = new StringBuilder(data.length() + 8);
+		for (String line : data.split("\n", -1)) {
+			event.append("data: ").append(line).append('\n');
+		}
+		return event.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return -1 as the length is only known once the producer ends, the server sends the body chunked
+	 */
+	@Override
+	public long getLength() {
+		return -1;
+	}
+
+	/**
+	 * Starts producing chunks for a new response, closing the stream stops the producer
+	 */
+	@Override
+	public InputStream openStream() {
+		return new ChunkStream();
+	}
+
+	/**
+	 * Starts producing chunks for a new response that is sent without waiting for them, see ChunkStream.poll
+	 */
+	ChunkStream openChunks() {
+		return new ChunkStream();
+	}
+
+	@Override
+	public String toString() {
+		return "<" + contentType + " streamed every " + Duration.ofNanos(intervalNanos) + ">";
+	}
+
+	final class ChunkStream extends InputStream {
+		private final byte[] end = new byte[0];
+		private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(bufferedChunks);
+		private final AtomicBoolean stalled = new AtomicBoolean();
+		private long produced;
+		private byte[] pending;
+		private volatile RuntimeException failure;
+		private volatile boolean closed;
+		private volatile ScheduledFuture<?> next;
+		private volatile Runnable listener;
+		private byte[] chunk = new byte[0];
+		private int position;
+
+		private ChunkStream() {
+			next = DelayScheduler.schedule(this::produce, 0);
+		}
+
+		/**
+		 * Runs on the timer thread, the chunk that did not fit is kept and the worker reschedules the producer once it makes room
+		 */
+		private void produce() {
+			if (closed) {
+				return;
+			}
+			byte[] produce = pending != null ? pending : nextChunk();
+			pending = null;
+			if (!queue.offer(produce)) {
+				pending = produce;
+				stalled.set(true);
+				if (queue.remainingCapacity() > 0 && stalled.compareAndSet(true, false)) {
+					next = DelayScheduler.schedule(this::produce, 0);
+				}
+				return;
+			}
+			if (produce != end) {
+				next = DelayScheduler.schedule(this::produce, intervalNanos);
+			}
+			Runnable queued = listener;
+			if (queued != null) {
+				queued.run();
+			}
+		}
+
+		/**
+		 * @param listener run on the timer thread after each chunk is queued, it must not block
+		 */
+		void onChunk(Runnable listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * @return the next chunk without waiting, null when none has been produced yet and an empty array once the producer has ended
+		 * @throws IOException when the producer failed
+		 */
+		byte[] poll() throws IOException {
+			byte[] polled;
+			do {
+				polled = queue.poll();
+				if (polled == null) {
+					return null;
+				}
+				taken();
+			} while (polled.length == 0 && polled != end);
+			if (polled == end && failure != null) {
+				throw new IOException("the stream producer failed", failure);
+			}
+			return polled;
+		}
+
+		/**
+		 * @return true when a chunk or the end is waiting to be polled
+		 */
+		boolean ready() {
+			return !queue.isEmpty();
+		}
+
+		private byte[] nextChunk() {
+			try {
+				byte[] produce = producer.nextChunk(produced++);
+				return produce == null ? end : produce;
+			} catch (RuntimeException e) {
+				failure = e;
+				return end;
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		/**
+		 * Returns at most the rest of one chunk so the server writes every chunk as it is produced
+		 */
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			while (position == chunk.length) {
+				if (chunk == end) {
+					return -1;
+				}
+				chunk = take();
+				position = 0;
+				if (chunk == end && failure != null) {
+					throw new IOException("the stream producer failed", failure);
+				}
+			}
+			int read = Math.min(length, chunk.length - position);
+			System.arraycopy(chunk, position, bytes, offset, read);
+			position += read;
+			return read;
+		}
+
+		private byte[] take() throws IOException {
+			try {
+				byte[] taken = queue.take();
+				taken();
+				return taken;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted waiting for the next chunk", e);
+			}
+		}
+
+		/**
+		 * Reschedules a producer that stalled on a full queue now that there is room
+		 */
+		private void taken() {
+			if (stalled.compareAndSet(true, false)) {
+				next = DelayScheduler.schedule(this::produce, intervalNanos);
+			}
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			ScheduledFuture<?> scheduled = next;
+			if (scheduled != null) {
+				scheduled.cancel(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.webmock.server;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte array a ResponseTemplate renders into, kept per thread and reused for every response that thread renders
+ */
+final class TemplateBuffer {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private byte[] bytes = new byte[INITIAL_CAPACITY];
+	private int length;
+
+	void reset() {
+		length = 0;
+	}
+
+	byte[] array() {
+		return bytes;
+	}
+
+	int length() {
+		return length;
+	}
+
+	void write(byte[] source) {
+		ensureCapacity(source.length);
+		System.arraycopy(source, 0, bytes, length, source.length);
+		length += source.length;
+	}
+
+	/**
+	 * Encodes the text as UTF-8 straight into the buffer without creating an intermediate array
+	 */
+	void write(CharSequence text) {
+		int chars = text.length();
+		ensureCapacity(chars * 3);
+		for (int index = 0; index < chars; index++) {
+			char c = text.charAt(index);
+			if (c < 0x80) {
+				bytes[length++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[length++] = (byte) (0xC0 | c >> 6);
+				bytes[length++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && index + 1 < chars && Character.isLowSurrogate(text.charAt(index + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++index));
+				bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+				bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+				bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+				bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				bytes[length++] = '?';
+			} else {
+				bytes[length++] = (byte) (0xE0 | c >> 12);
+				bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+				bytes[length++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	private void ensureCapacity(int additional) {
+		if (bytes.length - length < additional) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + additional));
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package org.webmock.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds each read back until the bytes read so far fit the bandwidth limit, reads are cut into slices of a twentieth of a second
+ * so the body trickles out evenly instead of in bursts of the size of the server buffer
+ */
+final class ThrottledInputStream extends FilterInputStream {
+	private final long bytesPerSecond;
+	private final int sliceSize;
+	private long started = -1;
+	private long sent;
+
+	ThrottledInputStream(InputStream in, long bytesPerSecond) {
+		super(in);
+		this.bytesPerSecond = bytesPerSecond;
+		this.sliceSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytesPerSecond / 20));
+	}
+
+	@Override
+	public int read() throws IOException {
+		throttle(1);
+		int read = super.read();
+		if (read >= 0) {
+			sent++;
+		}
+		return read;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int slice = Math.min(length, sliceSize);
+		throttle(slice);
+		int read = super.read(buffer, offset, slice);
+		if (read > 0) {
+			sent += read;
+		}
+		return read;
+	}
+
+	private void throttle(int slice) {
+		long now = System.nanoTime();
+		if (started < 0) {
+			started = now;
+		}
+		long due = started + TimeUnit.SECONDS.toNanos(1) * (sent + slice) / bytesPerSecond;
+		DelayScheduler.await(due - now);
+	}
+}
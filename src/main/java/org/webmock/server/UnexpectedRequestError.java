@@ -0,0 +1,17 @@
+package org.webmock.server;
+
+/**
+ * Thrown by the IndexedRequestDispatcher when no expectation is left for a request. No stack trace is filled in,
+ * the request is answered with an internal error and the closest expectation is only worked out when the mismatches are reported
+ */
+public final class UnexpectedRequestError extends AssertionError {
+
+	UnexpectedRequestError(MockRequest request) {
+		super("unexpected request: " + request);
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
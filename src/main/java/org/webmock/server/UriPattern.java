@@ -0,0 +1,167 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.TypeSafeMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A uri matched by a path template such as /orders/{id}/items or by a regular expression, instead of exactly.
+ * Template variables and the named groups of a regular expression are extracted as path variables
+ */
+public final class UriPattern implements SelfDescribing {
+	private static final Pattern TEMPLATE_VARIABLE = Pattern.compile("\\{([A-Za-z_][A-Za-z0-9_]*)\\}");
+	private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+	private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+	private static final String QUANTIFIERS = "?*+{";
+
+	private final String source;
+	private final boolean template;
+	private final Pattern pattern;
+	private final List<String> variables;
+	private final List<String> segments;
+
+	private UriPattern(String source, boolean template, Pattern pattern, List<String> variables, List<String> segments) {
+		this.source = source;
+		this.template = template;
+		this.pattern = pattern;
+		this.variables = variables;
+		this.segments = segments;
+	}
+
+	/**
+	 * @param template a path where a {name} matches any text within one segment, eg /orders/{id}/items
+	 */
+	public static UriPattern template(String template) {
+		if (!template.startsWith("/")) {
+			throw new IllegalArgumentException("uri template " + template + " does not start with /");
+		}
+		StringBuilder regex = new StringBuilder();
+		List<String> variables = new ArrayList<>();
+		List<String> segments = new ArrayList<>();
+		for (String segment : template.substring(1).split("/", -1)) {
+			regex.append('/');
+			java.util.regex.Matcher variable = TEMPLATE_VARIABLE.matcher(segment);
+			int literalStart = 0;
+			while (variable.find()) {
+				regex.append(Pattern.quote(segment.substring(literalStart, variable.start()))).append("([^/]+)");
+				variables.add(variable.group(1));
+				literalStart = variable.end();
+			}
+			regex.append(Pattern.quote(segment.substring(literalStart)));
+			segments.add(literalStart == 0 ? segment : null);
+		}
+		return new UriPattern(template, true, Pattern.compile(regex.toString()), Collections.unmodifiableList(variables), Collections.unmodifiableList(segments));
+	}
+
+	/**
+	 * @param regex a regular expression the whole uri must match, named groups such as (?&lt;id&gt;[0-9]+) become path variables
+	 */
+	public static UriPattern regex(String regex) {
+		List<String> variables = new ArrayList<>();
+		java.util.regex.Matcher group = NAMED_GROUP.matcher(regex);
+		while (group.find()) {
+			variables.add(group.group(1));
+		}
+		return new UriPattern(regex, false, Pattern.compile(regex), Collections.unmodifiableList(variables), literalSegments(regex));
+	}
+
+	/**
+	 * The whole segments at the start of a regular expression that contain no metacharacter, they route the expression through the RouteTrie.
+	 * An alternation may match a uri that does not start with them and a quantifier after a / may drop the /, the expression is then
+	 * kept at the root of the trie. A group can only follow the segments as a ( ends them
+	 */
+	private static List<String> literalSegments(String regex) {
+		List<String> literal = new ArrayList<>();
+		if (!regex.startsWith("/") || regex.indexOf('|') >= 0) {
+			return literal;
+		}
+		int start = 1;
+		int end;
+		while ((end = regex.indexOf('/', start)) >= 0) {
+			if (end + 1 < regex.length() && QUANTIFIERS.indexOf(regex.charAt(end + 1)) >= 0) {
+				return literal;
+			}
+			String segment = regex.substring(start, end);
+			for (int index = 0; index < segment.length(); index++) {
+				if (REGEX_METACHARACTERS.indexOf(segment.charAt(index)) >= 0) {
+					return literal;
+				}
+			}
+			literal.add(segment);
+			start = end + 1;
+		}
+		return literal;
+	}
+
+	/**
+	 * @return true for a path template, false for a regular expression
+	 */
+	public boolean isTemplate() {
+		return template;
+	}
+
+	/**
+	 * @return for a template every segment with null for the segments holding a variable,
+	 * for a regular expression the literal segments any matching uri starts with
+	 */
+	List<String> getSegments() {
+		return segments;
+	}
+
+	public boolean matches(String uri) {
+		return pattern.matcher(uri).matches();
+	}
+
+	/**
+	 * @return the path variables by name or null when the uri does not match
+	 */
+	public Map<String, String> extract(String uri) {
+		java.util.regex.Matcher matcher = pattern.matcher(uri);
+		if (!matcher.matches()) {
+			return null;
+		}
+		if (variables.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> values = new HashMap<>();
+		for (int index = 0; index < variables.size(); index++) {
+			values.put(variables.get(index), template ? matcher.group(index + 1) : matcher.group(variables.get(index)));
+		}
+		return values;
+	}
+
+	/**
+	 * @return a Hamcrest matcher for the jMock engine
+	 */
+	public Matcher<String> asMatcher() {
+		return new TypeSafeMatcher<String>() {
+			@Override
+			protected boolean matchesSafely(String uri) {
+				return UriPattern.this.matches(uri);
+			}
+
+			@Override
+			public void describeTo(Description description) {
+				UriPattern.this.describeTo(description);
+			}
+		};
+	}
+
+	@Override
+	public void describeTo(Description description) {
+		description.appendText(template ? "a uri like " : "a uri matching ").appendText(source);
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+}
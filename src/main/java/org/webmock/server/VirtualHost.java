@@ -0,0 +1,63 @@
+package org.webmock.server;
+
+import java.util.List;
+
+/**
+ * One of the expectation sets a MockHTTPServer serves by Host header or path prefix, with its own mismatches so it is verified on its own
+ */
+public final class VirtualHost {
+	private final String name;
+	private final RequestDispatcher dispatcher;
+	private final MismatchLog mismatches = new MismatchLog();
+
+	/**
+	 * @param name       the host name or the path prefix the requests of the virtual host are routed by
+	 * @param dispatcher matches the requests routed to the virtual host
+	 */
+	public VirtualHost(String name, RequestDispatcher dispatcher) {
+		this.name = name;
+		this.dispatcher = dispatcher;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records the request as a mismatch of this virtual host when it does not match, the error is rethrown for the server to answer and record
+	 */
+	MockResponse dispatch(MockRequest request) {
+		try {
+			return dispatcher.dispatch(request);
+		} catch (Throwable e) {
+			mismatches.record(request, e);
+			throw e;
+		}
+	}
+
+	RequestDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * @return the first mismatch of this virtual host and the most recent ones in the order they were received
+	 */
+	public List<Mismatch> getMismatches() {
+		return mismatches.firstAndRecent();
+	}
+
+	/**
+	 * Verifies the expectations of this virtual host while the server keeps serving the others, call it once the clients of this host are done
+	 */
+	public void assertThatAllExpectationsAreMet() {
+		if (mismatches.getCount() > 0) {
+			throw mismatches.report(dispatcher);
+		}
+		dispatcher.assertIsSatisfied();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
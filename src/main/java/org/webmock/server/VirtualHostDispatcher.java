@@ -0,0 +1,144 @@
+package org.webmock.server;
+
+import org.hamcrest.Description;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Routes each request to the VirtualHost named by its Host header, then to the one whose path prefix starts its uri, and otherwise to the
+ * default dispatcher, so many expectation sets share the listener and workers of one server. A path prefix is removed from the uri before matching
+ */
+public class VirtualHostDispatcher implements RequestDispatcher {
+	private final RequestDispatcher defaultDispatcher;
+	private final Map<String, VirtualHost> byHost = new HashMap<>();
+	private final VirtualHost[] byPathPrefix;
+	private final Map<String, VirtualHost> virtualHosts = new LinkedHashMap<>();
+
+	/**
+	 * @param defaultDispatcher matches the requests no virtual host is routed by
+	 * @param hosts             the virtual hosts by host name, compared ignoring case
+	 * @param pathPrefixes      the virtual hosts by path prefix eg /billing, a prefix matches up to a / or the end of the uri
+	 */
+	public VirtualHostDispatcher(RequestDispatcher defaultDispatcher, Collection<VirtualHost> hosts, Collection<VirtualHost> pathPrefixes) {
+		this.defaultDispatcher = defaultDispatcher;
+		for (VirtualHost host : hosts) {
+			byHost.put(host.getName().toLowerCase(Locale.ROOT), host);
+			virtualHosts.put(host.getName(), host);
+		}
+		List<VirtualHost> prefixes = new ArrayList<>(pathPrefixes);
+		prefixes.sort(Comparator.comparingInt((VirtualHost prefix) -> prefix.getName().length()).reversed());
+		this.byPathPrefix = prefixes.toArray(new VirtualHost[0]);
+		for (VirtualHost prefix : pathPrefixes) {
+			virtualHosts.put(prefix.getName(), prefix);
+		}
+	}
+
+	/**
+	 * The path variables of the expectation matched by a request stripped of its prefix are handed back to the request the server answers
+	 */
+	@Override
+	public MockResponse dispatch(MockRequest request) {
+		VirtualHost host = byHost.isEmpty() ? null : byHost.get(hostOf(request));
+		if (host != null) {
+			return host.dispatch(request);
+		}
+		VirtualHost prefix = prefixOf(request.getUri());
+		if (prefix == null) {
+			return defaultDispatcher.dispatch(request);
+		}
+		MockRequest routed = request.withUri(stripped(prefix, request.getUri()));
+		MockResponse response = prefix.dispatch(routed);
+		request.setPathVariables(routed.getPathVariables());
+		return response;
+	}
+
+	/**
+	 * Verifies the default expectations and then every virtual host
+	 */
+	@Override
+	public void assertIsSatisfied() {
+		defaultDispatcher.assertIsSatisfied();
+		for (VirtualHost host : virtualHosts.values()) {
+			host.getDispatcher().assertIsSatisfied();
+		}
+	}
+
+	@Override
+	public List<RequestMetrics> getExpectationMetrics() {
+		List<RequestMetrics> metrics = new ArrayList<>(defaultDispatcher.getExpectationMetrics());
+		for (VirtualHost host : virtualHosts.values()) {
+			metrics.addAll(host.getDispatcher().getExpectationMetrics());
+		}
+		return Collections.unmodifiableList(metrics);
+	}
+
+	/**
+	 * Routes the request again and describes the mismatch with the dispatcher it was routed to
+	 */
+	@Override
+	public void describeMismatch(MockRequest request, Description description) {
+		VirtualHost host = byHost.get(hostOf(request));
+		if (host != null) {
+			description.appendText("virtual host " + host.getName() + ": ");
+			host.getDispatcher().describeMismatch(request, description);
+			return;
+		}
+		VirtualHost prefix = prefixOf(request.getUri());
+		if (prefix != null) {
+			description.appendText("virtual host " + prefix.getName() + ": ");
+			prefix.getDispatcher().describeMismatch(request.withUri(stripped(prefix, request.getUri())), description);
+			return;
+		}
+		defaultDispatcher.describeMismatch(request, description);
+	}
+
+	/**
+	 * @param name the host name or path prefix the virtual host was added with
+	 * @return the virtual host or null when there is none by that name
+	 */
+	public VirtualHost getVirtualHost(String name) {
+		return virtualHosts.get(name);
+	}
+
+	/**
+	 * @return the Host header without its port in lower case, String.toLowerCase returns the header itself when it already is
+	 */
+	private static String hostOf(MockRequest request) {
+		String host = request.getHeader("host");
+		if (host == null) {
+			return null;
+		}
+		int port = host.lastIndexOf(':');
+		if (port > 0 && host.indexOf(']') < port) {
+			host = host.substring(0, port);
+		}
+		return host.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return the virtual host with the longest prefix of the uri that ends at a / or at the end of the uri
+	 */
+	private VirtualHost prefixOf(String uri) {
+		for (VirtualHost prefix : byPathPrefix) {
+			String name = prefix.getName();
+			if (uri.startsWith(name) && (uri.length() == name.length() || uri.charAt(name.length()) == '/' || name.endsWith("/"))) {
+				return prefix;
+			}
+		}
+		return null;
+	}
+
+	private static String stripped(VirtualHost prefix, String uri) {
+		String name = prefix.getName();
+		int start = name.endsWith("/") ? name.length() - 1 : name.length();
+		return start == uri.length() ? "/" : uri.substring(start);
+	}
+}
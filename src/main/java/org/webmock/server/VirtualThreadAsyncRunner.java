@@ -0,0 +1,35 @@
+package org.webmock.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves every connection on its own virtual thread, connections never queue so thousands of keep alive connections
+ * do not need thousands of platform threads. Requires JDK 21 or newer at runtime
+ */
+public class VirtualThreadAsyncRunner extends ExecutorAsyncRunner {
+
+	public VirtualThreadAsyncRunner() {
+		super(VirtualThreadAsyncRunner::newVirtualThreadPerTaskExecutor);
+	}
+
+	/**
+	 * @return true from JDK 21, JDK 19 and 20 have the method but only as a preview that fails without --enable-preview
+	 */
+	public static boolean isSupported() {
+		return Runtime.version().feature() >= 21;
+	}
+
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads need JDK 21 or newer, running on " + System.getProperty("java.version"));
+		}
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException("Virtual threads need JDK 21 or newer, running on " + System.getProperty("java.version"));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not create the virtual thread executor", e);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package org.webmock;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonReaderTest {
+
+	@Test
+	public void shouldReadNestedValuesAndSkipTheOnesNotAskedFor() throws IOException {
+		JsonReader json = reader("{\"name\": \"a \\\"quoted\\\" \\u00e9\", \"skipped\": {\"deep\": [1, true, null, {\"x\": []}]}, \"count\": -12, \"flag\": false}");
+
+		json.beginObject();
+		assertThat(json.nextName(), is("name"));
+		assertThat(json.nextString(), is("a \"quoted\" \u00e9"));
+		assertThat(json.nextName(), is("skipped"));
+		json.skipValue();
+		assertThat(json.nextName(), is("count"));
+		assertThat(json.nextInt(), is(-12));
+		assertThat(json.nextName(), is("flag"));
+		assertThat(json.nextBoolean(), is(false));
+		assertThat(json.hasNext(), is(false));
+		json.endObject();
+		assertThat(json.peek(), is(JsonReader.Token.END_DOCUMENT));
+	}
+
+	@Test
+	public void shouldReportTheLineOfASyntaxError() throws IOException {
+		JsonReader json = reader("{\n\"first\": 1\n\"second\": 2}");
+
+		json.beginObject();
+		json.nextName();
+		json.nextInt();
+		IOException error = assertThrows(IOException.class, json::nextName);
+		assertThat(error.getMessage(), containsString("test.json:3 expected , or }"));
+	}
+
+	private JsonReader reader(String json) {
+		return new JsonReader(new StringReader(json), "test.json");
+	}
+}
@@ -1,18 +1,40 @@
 package org.webmock;
 
 import com.meterware.httpunit.*;
+import org.webmock.server.Mismatch;
 import org.webmock.server.MockHTTPServer;
+import org.webmock.server.Scenario;
+import org.webmock.server.StreamingResponseBody;
 import org.jmock.api.ExpectationError;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
 import org.xml.sax.SAXException;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -22,6 +44,8 @@ public class MockHttpAcceptanceTest {
 	private final String testUri = "/service/doSomething";
 	public final int port = 7666;
 	private final String serverUrl = "http://localhost:" + port + "/";
+	public final int indexedPort = 7668;
+	private final String indexedServerUrl = "http://localhost:" + indexedPort + "/";
 
 	@Test()
 	public void shouldFailIfUriExpectedNotInvoked() throws IOException, SAXException {
@@ -160,4 +184,496 @@ public class MockHttpAcceptanceTest {
 		new MockHTTPServerBuilder().build(port);
 
 	}
+
+	@Test
+	public void shouldHandlesGetWebRequestWithParametersAndReturnValueUsingIndexedMatching() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		builder.createNewExpectation().withExpectedURI(testUri).withExpectedParam("why", List.of("yes")).willReturn("yes");
+		builder.createNewExpectation().withExpectedURI(testUri).withExpectedParam("why", List.of("no")).willReturn("no", 400);
+		MockHTTPServer server = builder.build(indexedPort);
+		WebConversation wc = new WebConversation();
+		wc.setExceptionsThrownOnErrorStatus(false);
+		GetMethodWebRequest getMethodWebRequest = new GetMethodWebRequest(indexedServerUrl + testUri);
+		getMethodWebRequest.setParameter("why", "no");
+		WebResponse response = wc.getResponse(getMethodWebRequest);
+		assertThat(response.getResponseCode(), is(400));
+		getMethodWebRequest.setParameter("why", "yes");
+		response = wc.getResponse(getMethodWebRequest);
+		assertThat(response.getText(), is("yes"));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test()
+	public void shouldFailIfUriExpectedNotInvokedUsingIndexedMatching() {
+		assertThrows(ExpectationError.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+				builder.createNewExpectation().withExpectedURI(testUri);
+				MockHTTPServer server = builder.build(indexedPort);
+				server.assertThatAllExpectationsAreMet();
+			}
+		});
+	}
+
+	@Test()
+	public void shouldThrowErrorWhenCallCountIsOverSteppedUsingIndexedMatching() {
+		assertThrows(AssertionError.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+				builder.createNewExpectation().withExpectedURI(testUri).willReturn("theReturnValue");
+				MockHTTPServer server = builder.build(indexedPort);
+				WebConversation wc = new WebConversation();
+				wc.setExceptionsThrownOnErrorStatus(false);
+				wc.getResponse(new GetMethodWebRequest(indexedServerUrl + testUri));
+				wc.getResponse(new GetMethodWebRequest(indexedServerUrl + testUri));
+				server.assertThatAllExpectationsAreMet();
+			}
+		});
+	}
+
+	@Test
+	public void shouldReturnPreEncodedBytesOnEveryRequest() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		byte[] json = "{\"name\":\"bob\"}".getBytes(StandardCharsets.UTF_8);
+		builder.createNewExpectation().withExpectedURI(testUri).willReturn(json, "application/json").willBeInvoked(2);
+		builder.createNewExpectation().withExpectedURI("/buffer").willReturn(ByteBuffer.allocateDirect(json.length).put(json).flip(), "application/json");
+		builder.createNewExpectation().withExpectedURI("/latin").willReturn("caf\u00e9", StandardCharsets.ISO_8859_1);
+		MockHTTPServer server = builder.build(indexedPort);
+		WebConversation wc = new WebConversation();
+		for (int request = 0; request < 2; request++) {
+			WebResponse response = wc.getResponse(new GetMethodWebRequest(indexedServerUrl + testUri));
+			assertThat(response.getContentType(), is("application/json"));
+			assertThat(response.getText(), is("{\"name\":\"bob\"}"));
+		}
+		assertThat(wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "buffer")).getText(), is("{\"name\":\"bob\"}"));
+		WebResponse latin = wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "latin"));
+		assertThat(latin.getCharacterSet(), is("ISO-8859-1"));
+		assertThat(latin.getText(), is("caf\u00e9"));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldStreamAMappedFileWithItsContentLength(@TempDir Path directory) throws IOException, SAXException {
+		byte[] payload = new byte[4 * 1024 * 1024];
+		Arrays.fill(payload, (byte) 'x');
+		Path file = Files.write(directory.resolve("download.bin"), payload);
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		builder.createNewExpectation().withExpectedURI("/download").willReturnFile(file);
+		MockHTTPServer server = builder.build(indexedPort);
+		WebResponse response = new WebConversation().getResponse(new GetMethodWebRequest(indexedServerUrl + "download"));
+		assertThat(response.getContentLength(), is(payload.length));
+		assertThat(response.getContentType(), is("application/octet-stream"));
+		assertThat(response.getInputStream().readAllBytes(), is(payload));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldMatchStreamedBodiesAndFormParameters() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching().withStreamingRequestBody(1024);
+		builder.createNewExpectation().withExpectedURI("/upload").withBodyContaining("bob", "\"id\":7").willReturn("uploaded");
+		builder.createNewExpectation().withExpectedURI("/tester").withExpectedParam("testField", List.of("hello")).willReturn("form");
+		MockHTTPServer server = builder.build(indexedPort);
+		WebConversation wc = new WebConversation();
+		wc.setExceptionsThrownOnErrorStatus(false);
+		byte[] json = "{\"id\":7,\"name\":\"bob\"}".getBytes(StandardCharsets.UTF_8);
+		WebResponse upload = wc.getResponse(new PostMethodWebRequest(indexedServerUrl + "upload", new ByteArrayInputStream(json), "application/json"));
+		assertThat(upload.getText(), is("uploaded"));
+		PostMethodWebRequest form = new PostMethodWebRequest(indexedServerUrl + "tester");
+		form.setParameter("testField", "hello");
+		assertThat(wc.getResponse(form).getText(), is("form"));
+		byte[] tooLarge = new byte[2048];
+		WebResponse rejected = wc.getResponse(new PostMethodWebRequest(indexedServerUrl + "upload", new ByteArrayInputStream(tooLarge), "application/octet-stream"));
+		assertThat(rejected.getResponseCode(), is(413));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldRecordMetricsPerExpectationAndServeThemAsJson() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching().withMetricsEndpoint();
+		builder.createNewExpectation().withExpectedURI("/first").willReturn("first").willBeInvoked(2);
+		builder.createNewExpectation().withExpectedURI("/second").willReturn("second");
+		MockHTTPServer server = builder.build(indexedPort);
+		WebConversation wc = new WebConversation();
+		wc.setExceptionsThrownOnErrorStatus(false);
+		wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "first"));
+		wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "first"));
+		wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "second"));
+		wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "unknown"));
+
+		WebResponse json = wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "__admin/metrics"));
+		assertThat(json.getContentType(), is("application/json"));
+		assertThat(json.getText(), containsString("\"description\":\"ANY /first\",\"hits\":2,\"bytesIn\":0,\"bytesOut\":10"));
+		assertThat(server.metrics().getExpectations().get(1).getHits(), is(1L));
+		assertThat(server.metrics().getMatched().getServeTime().getCount(), is(3L));
+		assertThat(server.metrics().getUnmatched().getHits(), is(1L));
+		assertThrows(AssertionError.class, server::assertThatAllExpectationsAreMet);
+	}
+
+	@Test
+	public void shouldDelayAndThrottleShapedResponses() throws IOException, SAXException {
+		byte[] payload = new byte[20 * 1024];
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		builder.createNewExpectation().withExpectedURI("/slow").willReturn("slow").withFixedDelay(Duration.ofMillis(300));
+		builder.createNewExpectation().withExpectedURI("/narrow").willReturn(payload, "application/octet-stream").withBandwidthLimit(80 * 1024);
+		MockHTTPServer server = builder.build(indexedPort);
+		WebConversation wc = new WebConversation();
+
+		long started = System.nanoTime();
+		assertThat(wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "slow")).getText(), is("slow"));
+		assertThat(Duration.ofNanos(System.nanoTime() - started).toMillis(), greaterThanOrEqualTo(300L));
+
+		started = System.nanoTime();
+		assertThat(wc.getResponse(new GetMethodWebRequest(indexedServerUrl + "narrow")).getInputStream().readAllBytes(), is(payload));
+		assertThat(Duration.ofNanos(System.nanoTime() - started).toMillis(), greaterThanOrEqualTo(200L));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldReplayTheInteractionsRecordedFromATarget(@TempDir Path directory) throws IOException, SAXException {
+		Path capture = directory.resolve("downstream.capture");
+		MockHTTPServerBuilder targetBuilder = new MockHTTPServerBuilder().withIndexedMatching();
+		targetBuilder.createNewExpectation().withExpectedURI("/users").withExpectedParam("id", List.of("7")).willReturn("bob");
+		targetBuilder.createNewExpectation().withExpectedURI("/users").withBodyContaining("alice").willReturn("created", 201);
+		MockHTTPServer target = targetBuilder.buildOnEphemeralPort();
+		MockHTTPServer recorder = new MockHTTPServerBuilder().withRecording("http://localhost:" + target.getListeningPort(), capture).buildOnEphemeralPort();
+
+		assertUsersAnswered("http://localhost:" + recorder.getListeningPort() + "/");
+		recorder.assertThatAllExpectationsAreMet();
+		target.assertThatAllExpectationsAreMet();
+
+		MockHTTPServer replay = new MockHTTPServerBuilder().withReplay(capture).buildOnEphemeralPort();
+		assertUsersAnswered("http://localhost:" + replay.getListeningPort() + "/");
+		replay.assertThatAllExpectationsAreMet();
+	}
+
+	private void assertUsersAnswered(String url) throws IOException, SAXException {
+		WebConversation wc = new WebConversation();
+		GetMethodWebRequest get = new GetMethodWebRequest(url + "users");
+		get.setParameter("id", "7");
+		assertThat(wc.getResponse(get).getText(), is("bob"));
+		byte[] body = "{\"name\":\"alice\"}".getBytes(StandardCharsets.UTF_8);
+		WebResponse created = wc.getResponse(new PostMethodWebRequest(url + "users", new ByteArrayInputStream(body), "application/json"));
+		assertThat(created.getResponseCode(), is(201));
+		assertThat(created.getText(), is("created"));
+	}
+
+	@Test
+	public void shouldLoadExpectationsFromAFileAndMapBodiesOnFirstRequest(@TempDir Path directory) throws IOException, SAXException {
+		Path expectations = Files.writeString(directory.resolve("expectations.json"), "{\"expectations\": [\n"
+				+ "  {\"uri\": \"/users\", \"params\": {\"id\": \"7\"}, \"bodyFile\": \"users/7.json\", \"contentType\": \"application/json\"},\n"
+				+ "  {\"uri\": \"/users\", \"bodyContaining\": [\"alice\"], \"times\": 1, \"status\": 201, \"body\": \"created\"},\n"
+				+ "  {\"uri\": \"/never\", \"bodyFile\": \"missing.bin\"}\n"
+				+ "]}");
+		MockHTTPServer server = new MockHTTPServerBuilder().withIndexedMatching().loadExpectations(expectations).buildOnEphemeralPort();
+		Files.createDirectories(directory.resolve("users"));
+		Files.writeString(directory.resolve("users/7.json"), "{\"id\":7}");
+		String url = "http://localhost:" + server.getListeningPort() + "/users";
+
+		WebConversation wc = new WebConversation();
+		GetMethodWebRequest get = new GetMethodWebRequest(url);
+		get.setParameter("id", "7");
+		WebResponse user = wc.getResponse(get);
+		assertThat(user.getContentType(), is("application/json"));
+		assertThat(user.getText(), is("{\"id\":7}"));
+		byte[] body = "{\"name\":\"alice\"}".getBytes(StandardCharsets.UTF_8);
+		assertThat(wc.getResponse(new PostMethodWebRequest(url, new ByteArrayInputStream(body), "application/json")).getResponseCode(), is(201));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldMatchUriTemplatesWithEitherEngine() throws IOException, SAXException {
+		for (MockHTTPServerBuilder builder : List.of(new MockHTTPServerBuilder(), new MockHTTPServerBuilder().withIndexedMatching())) {
+			builder.createNewExpectation().withUriTemplate("/orders/{id}/items").willReturn("items").willBeInvoked(2);
+			builder.createNewExpectation().withUriMatching("/customers/[0-9]+").willReturn("customer");
+			MockHTTPServer server = builder.buildOnEphemeralPort();
+			String url = "http://localhost:" + server.getListeningPort();
+			WebConversation wc = new WebConversation();
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + "/orders/1/items")).getText(), is("items"));
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + "/orders/2/items")).getText(), is("items"));
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + "/customers/3")).getText(), is("customer"));
+			server.assertThatAllExpectationsAreMet();
+		}
+	}
+
+	@Test
+	public void shouldMatchMethodsAndHeadersWithEitherEngine() throws IOException {
+		for (MockHTTPServerBuilder builder : List.of(new MockHTTPServerBuilder(), new MockHTTPServerBuilder().withIndexedMatching())) {
+			builder.createNewExpectation().withExpectedURI("/orders/1").withMethod("PUT").withHeader("Authorization", "Bearer secret").withBodyContaining("shipped").willReturn("updated");
+			builder.createNewExpectation().withExpectedURI("/orders/1").withMethod("DELETE").willReturn("", 204);
+			builder.createNewExpectation().withExpectedURI("/orders/1").withMethod("HEAD").willReturn("");
+			MockHTTPServer server = builder.buildOnEphemeralPort();
+			URL order = new URL("http://localhost:" + server.getListeningPort() + "/orders/1");
+
+			HttpURLConnection put = (HttpURLConnection) order.openConnection();
+			put.setRequestMethod("PUT");
+			put.setRequestProperty("Authorization", "Bearer secret");
+			put.setDoOutput(true);
+			try (OutputStream body = put.getOutputStream()) {
+				body.write("{\"status\":\"shipped\"}".getBytes(StandardCharsets.UTF_8));
+			}
+			assertThat(new String(put.getInputStream().readAllBytes(), StandardCharsets.UTF_8), is("updated"));
+			HttpURLConnection delete = (HttpURLConnection) order.openConnection();
+			delete.setRequestMethod("DELETE");
+			assertThat(delete.getResponseCode(), is(204));
+			HttpURLConnection head = (HttpURLConnection) order.openConnection();
+			head.setRequestMethod("HEAD");
+			assertThat(head.getResponseCode(), is(200));
+			server.assertThatAllExpectationsAreMet();
+		}
+	}
+
+	@Test
+	public void shouldRenderResponseTemplatesFromTheRequest() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		builder.createNewExpectation().withUriTemplate("/orders/{id}").withExpectedParam("page", List.of("20")).willReturnTemplate("{\"id\":{{path.id}},\"correlation\":\"{{header.x-correlation-id}}\",\"page\":{{query.page}}}", "application/json", 200).allowing();
+		MockHTTPServer server = builder.buildOnEphemeralPort();
+		String url = "http://localhost:" + server.getListeningPort();
+		WebConversation wc = new WebConversation();
+		for (int id = 2; id <= 4; id++) {
+			GetMethodWebRequest request = new GetMethodWebRequest(url + "/orders/" + id + "?page=20");
+			request.setHeaderField("X-Correlation-Id", "c-" + id);
+			WebResponse response = wc.getResponse(request);
+			assertThat(response.getContentType(), is("application/json"));
+			assertThat(response.getText(), is("{\"id\":" + id + ",\"correlation\":\"c-" + id + "\",\"page\":20}"));
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldRenderEachDelayedTemplateResponseOnTheNioEngineFromItsOwnRequest() throws Exception {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching().withNioEngine(2);
+		builder.createNewExpectation().withUriTemplate("/t/{id}").willReturnTemplate("id={{path.id}}", "text/plain", 200).withFixedDelay(Duration.ofMillis(200)).allowing();
+		MockHTTPServer server = builder.buildOnEphemeralPort();
+		String url = "http://localhost:" + server.getListeningPort() + "/t/";
+		ExecutorService clients = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<String>> answers = new ArrayList<>();
+			for (int request = 0; request < 64; request++) {
+				String id = String.valueOf((char) ('A' + request % 26)).repeat(4) + request;
+				answers.add(clients.submit(() -> id + " " + new String(new URL(url + id).openStream().readAllBytes(), StandardCharsets.UTF_8)));
+			}
+			for (Future<String> answer : answers) {
+				String[] idAndBody = answer.get().split(" ");
+				assertThat(idAndBody[1], is("id=" + idAndBody[0]));
+			}
+		} finally {
+			clients.shutdown();
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldAnswerRepeatedTemplateRequestsFromTheResponseCache() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching().withResponseCache(1024 * 1024).withMetricsEndpoint();
+		builder.createNewExpectation().withUriTemplate("/products/{sku}").willReturnTemplate("{\"sku\":\"{{path.sku}}\"}", "application/json", 200).allowing();
+		MockHTTPServer server = builder.buildOnEphemeralPort();
+		String url = "http://localhost:" + server.getListeningPort();
+		WebConversation wc = new WebConversation();
+
+		for (String sku : List.of("a-1", "b-2", "a-1", "a-1")) {
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + "/products/" + sku)).getText(), is("{\"sku\":\"" + sku + "\"}"));
+		}
+		assertThat(server.getResponseCacheStatistics().getHits(), is(2L));
+		assertThat(server.getResponseCacheStatistics().getMisses(), is(2L));
+		assertThat(wc.getResponse(new GetMethodWebRequest(url + MockHTTPServer.METRICS_PATH)).getText(), containsString("\"responseCache\":{\"hits\":2,\"misses\":2"));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldCheckTheOrderOfASequenceAndTheStateOfAScenario() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		builder.createNewExpectation().withExpectedURI("/login").inSequence("session").willReturn("token");
+		builder.createNewExpectation().withExpectedURI("/profile").inSequence("session").willReturn("alice");
+		builder.createNewExpectation().withExpectedURI("/logout").inSequence("session").willReturn("bye");
+		builder.createNewExpectation().withExpectedURI("/cart").inScenario("checkout").whenScenarioStateIs(Scenario.STARTED).willReturn("empty").allowing();
+		builder.createNewExpectation().withExpectedURI("/pay").inScenario("checkout").willSetStateTo("paid").willReturn("paid");
+		builder.createNewExpectation().withExpectedURI("/cart").inScenario("checkout").whenScenarioStateIs("paid").willReturn("receipt");
+		MockHTTPServer server = builder.buildOnEphemeralPort();
+		String url = "http://localhost:" + server.getListeningPort();
+		WebConversation wc = new WebConversation();
+		wc.setExceptionsThrownOnErrorStatus(false);
+
+		assertThat(wc.getResponse(new GetMethodWebRequest(url + "/profile")).getResponseCode(), is(500));
+		for (String[] answer : new String[][]{{"/login", "token"}, {"/cart", "empty"}, {"/profile", "alice"}, {"/cart", "empty"}, {"/pay", "paid"}, {"/logout", "bye"}, {"/cart", "receipt"}}) {
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + answer[0])).getText(), is(answer[1]));
+		}
+
+		AssertionError report = assertThrows(AssertionError.class, server::assertThatAllExpectationsAreMet);
+		assertThat(report.getMessage(), containsString("ANY /profile as step <1> of sequence session\n      sequence session: step <1> out of order"));
+	}
+
+	@Test
+	public void shouldAnswerEachExpectationWithItsOwnResponseWhenTheirCardinalitiesDiffer() throws IOException, SAXException {
+		MockHTTPServerBuilder jMock = new MockHTTPServerBuilder();
+		jMock.createNewExpectation().withExpectedURI("/a").willReturn("A").allowing();
+		jMock.createNewExpectation().withExpectedURI("/b").willReturn("B", 201);
+		assertThrows(IllegalStateException.class, jMock::buildOnEphemeralPort);
+
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		builder.createNewExpectation().withExpectedURI("/a").willReturn("A").allowing();
+		builder.createNewExpectation().withExpectedURI("/b").willReturn("B", 201);
+		MockHTTPServer server = builder.buildOnEphemeralPort();
+		WebResponse response = new WebConversation().getResponse(new GetMethodWebRequest("http://localhost:" + server.getListeningPort() + "/b"));
+
+		assertThat(response.getResponseCode(), is(201));
+		assertThat(response.getText(), is("B"));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldNotBuildScenariosWithoutIndexedMatching() {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder();
+		builder.createNewExpectation().withExpectedURI("/login").inSequence("session").willReturn("token");
+
+		assertThrows(IllegalStateException.class, builder::buildOnEphemeralPort);
+	}
+
+	@Test
+	public void shouldServeVirtualHostsFromOneListenerAndVerifyThemApart() throws IOException, SAXException {
+		MockHTTPServerBuilder users = new MockHTTPServerBuilder().withIndexedMatching();
+		users.createNewExpectation().withExpectedURI("/users/7").willReturn("alice");
+		MockHTTPServerBuilder billing = new MockHTTPServerBuilder();
+		billing.createNewExpectation().withExpectedURI("/invoices").willReturn("invoices").willBeInvoked(2);
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching().withVirtualHost("127.0.0.1", users).withPathPrefix("/billing", billing);
+		builder.createNewExpectation().withExpectedURI("/health").willReturn("up");
+		MockHTTPServer server = builder.buildOnEphemeralPort();
+		WebConversation wc = new WebConversation();
+
+		assertThat(wc.getResponse(new GetMethodWebRequest("http://127.0.0.1:" + server.getListeningPort() + "/users/7")).getText(), is("alice"));
+		assertThat(wc.getResponse(new GetMethodWebRequest("http://localhost:" + server.getListeningPort() + "/billing/invoices")).getText(), is("invoices"));
+		assertThat(wc.getResponse(new GetMethodWebRequest("http://localhost:" + server.getListeningPort() + "/health")).getText(), is("up"));
+
+		server.getVirtualHost("127.0.0.1").assertThatAllExpectationsAreMet();
+		assertThrows(ExpectationError.class, server.getVirtualHost("/billing")::assertThatAllExpectationsAreMet);
+		assertThat(wc.getResponse(new GetMethodWebRequest("http://localhost:" + server.getListeningPort() + "/billing/invoices")).getText(), is("invoices"));
+		server.getVirtualHost("/billing").assertThatAllExpectationsAreMet();
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldResetTheExpectationsOfARunningServerBetweenTests() throws IOException, SAXException {
+		MockHTTPServer server = new MockHTTPServerBuilder().withIndexedMatching().withResponseCache(64 * 1024).buildOnEphemeralPort();
+		int port = server.getListeningPort();
+		String url = "http://localhost:" + port;
+		WebConversation wc = new WebConversation();
+		wc.setExceptionsThrownOnErrorStatus(false);
+
+		for (int test = 0; test < 3; test++) {
+			MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+			builder.createNewExpectation().withUriTemplate("/tests/{id}").willReturnTemplate("test {{path.id}} of " + test, "text/plain", 200);
+			assertThat(builder.resetServer(server).getListeningPort(), is(port));
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + "/tests/" + test)).getText(), is("test " + test + " of " + test));
+			server.verify();
+		}
+		assertThat(wc.getResponse(new GetMethodWebRequest(url + "/tests/0")).getResponseCode(), is(500));
+		assertThrows(AssertionError.class, server::verify);
+
+		new MockHTTPServerBuilder().withIndexedMatching().resetServer(server);
+		assertThat(server.getMismatches().size(), is(0));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldResetTwiceFromTheSameBuilderWithoutItsEarlierExpectations() throws IOException, SAXException {
+		for (boolean indexed : List.of(true, false)) {
+			MockHTTPServerBuilder builder = indexed ? new MockHTTPServerBuilder().withIndexedMatching() : new MockHTTPServerBuilder();
+			MockHTTPServer server = builder.buildOnEphemeralPort();
+			String url = "http://localhost:" + server.getListeningPort();
+			WebConversation wc = new WebConversation();
+
+			builder.createNewExpectation().withExpectedURI("/first").willReturn("first");
+			builder.resetServer(server);
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + "/first")).getText(), is("first"));
+			server.verify();
+
+			builder.createNewExpectation().withExpectedURI("/second").willReturn("second");
+			builder.resetServer(server);
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + "/second")).getText(), is("second"));
+			server.assertThatAllExpectationsAreMet();
+		}
+	}
+
+	@Test
+	public void shouldFailFastAtTheFirstRequestThatDoesNotMatch() throws IOException, SAXException {
+		List<Mismatch> heard = new CopyOnWriteArrayList<>();
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching().withFailFast(Thread.currentThread()).withMismatchListener(heard::add);
+		builder.createNewExpectation().withExpectedURI("/expected").withMethod("GET").willReturn("ok");
+		MockHTTPServer server = builder.buildOnEphemeralPort();
+		String url = "http://localhost:" + server.getListeningPort();
+		WebConversation wc = new WebConversation();
+		wc.setExceptionsThrownOnErrorStatus(false);
+
+		assertThat(wc.getResponse(new GetMethodWebRequest(url + "/unexpected")).getResponseCode(), is(500));
+		assertThat(Thread.currentThread().isInterrupted(), is(true));
+		assertThat(wc.getResponse(new GetMethodWebRequest(url + "/expected")).getText(), containsString("Failing fast after #0 GET /unexpected"));
+		assertThat(heard.size(), is(1));
+		assertThat(server.getMismatches().get(0).getRequest().getUri(), is("/unexpected"));
+
+		AssertionError report = assertThrows(AssertionError.class, server::assertThatAllExpectationsAreMet);
+		assertThat(report.getMessage(), containsString("closest expectation expected exactly <1>, invoked <0>: GET /expected\n      uri: expected \"/expected\" but was \"/unexpected\""));
+		assertThat(Thread.currentThread().isInterrupted(), is(false));
+	}
+
+	@Test
+	public void shouldOnlyInterruptTheFailFastTargetAndClearItOnReset() throws IOException, SAXException {
+		WebConversation wc = new WebConversation();
+		wc.setExceptionsThrownOnErrorStatus(false);
+		MockHTTPServer untargeted = new MockHTTPServerBuilder().withIndexedMatching().withFailFast().buildOnEphemeralPort();
+
+		assertThat(wc.getResponse(new GetMethodWebRequest("http://localhost:" + untargeted.getListeningPort() + "/unexpected")).getResponseCode(), is(500));
+		assertThat(Thread.currentThread().isInterrupted(), is(false));
+		assertThrows(AssertionError.class, untargeted::assertThatAllExpectationsAreMet);
+
+		MockHTTPServer targeted = new MockHTTPServerBuilder().withIndexedMatching().withFailFast(Thread.currentThread()).buildOnEphemeralPort();
+		assertThat(wc.getResponse(new GetMethodWebRequest("http://localhost:" + targeted.getListeningPort() + "/unexpected")).getResponseCode(), is(500));
+		assertThat(Thread.currentThread().isInterrupted(), is(true));
+
+		new MockHTTPServerBuilder().withIndexedMatching().resetServer(targeted);
+		assertThat(Thread.currentThread().isInterrupted(), is(false));
+		targeted.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldStreamServerSentEventsChunkByChunk() throws IOException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching();
+		builder.createNewExpectation().withExpectedURI("/events").willStream(StreamingResponseBody.serverSentEvents(Duration.ofMillis(20), List.of("one", "two", "three")));
+		MockHTTPServer server = builder.buildOnEphemeralPort();
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getListeningPort() + "/events").openConnection();
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+
+		assertThat(connection.getHeaderField("Transfer-Encoding"), is("chunked"));
+		assertThat(connection.getHeaderField("Content-Encoding") == null, is(true));
+		assertThat(connection.getContentType(), is(StreamingResponseBody.EVENT_STREAM));
+		try (BufferedReader events = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+			assertThat(events.readLine(), is("data: one"));
+			assertThat(events.readLine(), is(""));
+			assertThat(events.lines().collect(Collectors.joining("\n")), is("data: two\n\ndata: three\n"));
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldServeTheSameExpectationsOnTheNioEngine() throws IOException, SAXException {
+		for (MockHTTPServerBuilder builder : List.of(new MockHTTPServerBuilder().withNioEngine(), new MockHTTPServerBuilder().withIndexedMatching().withNioEngine(2))) {
+			builder.createNewExpectation().withExpectedURI("/test").withExpectedParam("id", List.of("1")).willReturn("found");
+			builder.createNewExpectation().withExpectedURI("/orders").withBodyContaining("shipped").willReturn("stored", 201);
+			MockHTTPServer server = builder.buildOnEphemeralPort();
+			String url = "http://localhost:" + server.getListeningPort();
+			WebConversation wc = new WebConversation();
+
+			assertThat(wc.getResponse(new GetMethodWebRequest(url + "/test?id=1")).getText(), is("found"));
+			HttpURLConnection post = (HttpURLConnection) new URL(url + "/orders").openConnection();
+			post.setRequestMethod("POST");
+			post.setRequestProperty("Content-Type", "application/json");
+			post.setDoOutput(true);
+			try (OutputStream body = post.getOutputStream()) {
+				body.write("{\"status\":\"shipped\"}".getBytes(StandardCharsets.UTF_8));
+			}
+			assertThat(post.getResponseCode(), is(201));
+			assertThat(new String(post.getInputStream().readAllBytes(), StandardCharsets.UTF_8), is("stored"));
+			server.assertThatAllExpectationsAreMet();
+		}
+	}
 }
@@ -2,11 +2,15 @@ package org.webmock;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
+import org.webmock.server.CompiledExpectation;
+import org.webmock.server.HeaderPredicate;
 import org.webmock.server.RequestHandler;
 import org.jmock.Mockery;
 import org.jmock.api.ExpectationError;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.shazam.shazamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
@@ -322,4 +326,79 @@ public class RequestExpectationTest {
 		});
 
 	}
+
+	@Test
+	public void testWithExpectedURIAtLeast() throws Exception {
+		MockHTTPServerBuilder mockHTTPServerBuilder = new MockHTTPServerBuilder();
+		Mockery context = mockHTTPServerBuilder.getContext();
+		RequestHandler requestHandler = mockHTTPServerBuilder.getRequestHandler();
+		RequestExpectation requestExpectation = new RequestExpectation(mockHTTPServerBuilder);
+		requestExpectation.withExpectedURI("test").atLeast(1);
+		requestExpectation.initialiseExpectationsForHandler(requestHandler);
+		context.checking(mockHTTPServerBuilder.getExpectations());
+		for (int invocation = 0; invocation < 3; invocation++) {
+			requestHandler.url("test");
+			requestHandler.getResponseStatus();
+			requestHandler.returnValue();
+		}
+		context.assertIsSatisfied();
+	}
+
+	@Test
+	public void testAllowingIsSatisfiedWhenNotInvoked() throws Exception {
+		MockHTTPServerBuilder mockHTTPServerBuilder = new MockHTTPServerBuilder();
+		Mockery context = mockHTTPServerBuilder.getContext();
+		RequestHandler requestHandler = mockHTTPServerBuilder.getRequestHandler();
+		RequestExpectation requestExpectation = new RequestExpectation(mockHTTPServerBuilder);
+		requestExpectation.withExpectedURI("test").allowing();
+		requestExpectation.initialiseExpectationsForHandler(requestHandler);
+		context.checking(mockHTTPServerBuilder.getExpectations());
+		context.assertIsSatisfied();
+	}
+
+	@Test()
+	public void testAtMostFailsWhenInvokedTooOften() throws Exception {
+		assertThrows(ExpectationError.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				MockHTTPServerBuilder mockHTTPServerBuilder = new MockHTTPServerBuilder();
+				RequestHandler requestHandler = mockHTTPServerBuilder.getRequestHandler();
+				RequestExpectation requestExpectation = new RequestExpectation(mockHTTPServerBuilder);
+				requestExpectation.withExpectedURI("test").atMost(1);
+				requestExpectation.initialiseExpectationsForHandler(requestHandler);
+				mockHTTPServerBuilder.getContext().checking(mockHTTPServerBuilder.getExpectations());
+				requestHandler.url("test");
+				requestHandler.url("test");
+			}
+		});
+	}
+
+	@Test
+	public void shouldExpectTheMethodAndHeadersWithJMock() {
+		MockHTTPServerBuilder mockHTTPServerBuilder = new MockHTTPServerBuilder();
+		Mockery context = mockHTTPServerBuilder.getContext();
+		RequestHandler requestHandler = mockHTTPServerBuilder.getRequestHandler();
+		RequestExpectation requestExpectation = new RequestExpectation(mockHTTPServerBuilder);
+		requestExpectation.withExpectedURI("test").withMethod("delete").withHeader("Authorization", containsString("Bearer"));
+		requestExpectation.initialiseExpectationsForHandler(requestHandler);
+		context.checking(mockHTTPServerBuilder.getExpectations());
+		requestHandler.url("test");
+		requestHandler.method("DELETE");
+		requestHandler.header("authorization", "Bearer token");
+		requestHandler.returnValue();
+		requestHandler.getResponseStatus();
+
+		context.assertIsSatisfied();
+	}
+
+	@Test
+	public void shouldShareEqualHeaderPredicatesBetweenCompiledExpectations() {
+		MockHTTPServerBuilder mockHTTPServerBuilder = new MockHTTPServerBuilder();
+		Map<HeaderPredicate, HeaderPredicate> headerPredicates = new HashMap<>();
+		CompiledExpectation first = new RequestExpectation(mockHTTPServerBuilder).withExpectedURI("/first").withHeader("Accept", "application/json").compile(0, headerPredicates, new HashMap<>(), new HashMap<>());
+		CompiledExpectation second = new RequestExpectation(mockHTTPServerBuilder).withExpectedURI("/second").withHeader("accept", "application/json").compile(1, headerPredicates, new HashMap<>(), new HashMap<>());
+
+		assertThat(headerPredicates.size(), is(1));
+		assertThat(first.getMethod() == null && second.getMethod() == null, is(true));
+	}
 }
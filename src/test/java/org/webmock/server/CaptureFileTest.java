@@ -0,0 +1,65 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CaptureFileTest {
+	private final Map<String, List<String>> noParams = new HashMap<>();
+
+	@Test
+	public void shouldReplayRecordedResponsesInTurnAndRepeatTheLast(@TempDir Path directory) throws IOException {
+		Path capture = directory.resolve("interactions.capture");
+		Map<String, List<String>> params = Map.of("id", List.of("7"));
+		try (CaptureWriter writer = CaptureWriter.open(capture)) {
+			writer.append(new MockRequest("GET", "/users", new HashMap<>(), params, (String) null), 200, "application/json", bytes("first"));
+			writer.append(new MockRequest("GET", "/users", new HashMap<>(), params, (String) null), 200, "application/json", bytes("second"));
+			writer.append(new MockRequest("POST", "/users", new HashMap<>(), noParams, "{\"name\":\"bob\"}"), 201, null, bytes("created"));
+		}
+		Files.write(capture, new byte[]{0, 0, 1, 0, 'G', 'E'}, StandardOpenOption.APPEND);
+
+		List<CompiledExpectation> expectations = CaptureFile.load(capture, 3);
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(expectations);
+
+		assertThat(expectations.size(), is(3));
+		assertThat(expectations.get(0).getOrdinal(), is(3));
+		assertThat(text(dispatcher.dispatch(new MockRequest("GET", "/users", new HashMap<>(), params, (String) null))), is("first"));
+		assertThat(text(dispatcher.dispatch(new MockRequest("GET", "/users", new HashMap<>(), params, (String) null))), is("second"));
+		assertThat(text(dispatcher.dispatch(new MockRequest("GET", "/users", new HashMap<>(), params, (String) null))), is("second"));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(new MockRequest("GET", "/users", new HashMap<>(), noParams, (String) null)));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(new MockRequest("POST", "/users", new HashMap<>(), noParams, "{\"name\":\"alice\"}")));
+		MockResponse created = dispatcher.dispatch(new MockRequest("POST", "/users", new HashMap<>(), noParams, "{\"name\":\"bob\"}"));
+		assertThat(created.getStatus(), is(201));
+		assertThat(text(created), is("created"));
+		dispatcher.assertIsSatisfied();
+	}
+
+	@Test
+	public void shouldRejectAFileThatIsNotACapture(@TempDir Path directory) throws IOException {
+		Path notACapture = Files.write(directory.resolve("notes.txt"), bytes("just some notes"));
+
+		assertThrows(UncheckedIOException.class, () -> CaptureFile.load(notACapture, 0));
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String text(MockResponse response) throws IOException {
+		return new String(response.getBody().openStream().readAllBytes(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,57 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ContainsBodyMatcherTest {
+
+	@Test
+	public void shouldMatchWhenEveryFragmentIsPresentInAnyOrder() {
+		ContainsBodyMatcher matcher = new ContainsBodyMatcher("\"id\":1", "bob", "he");
+
+		assertThat(matcher.matches(RequestBody.of("{\"name\":\"bob\",\"id\":1,\"say\":\"hello\"}")), is(true));
+		assertThat(matcher.matches(RequestBody.of("{\"name\":\"bob\",\"id\":2,\"say\":\"hello\"}")), is(false));
+	}
+
+	@Test
+	public void shouldFindOverlappingFragments() {
+		ContainsBodyMatcher matcher = new ContainsBodyMatcher("she", "he", "hers");
+
+		assertThat(matcher.matches(RequestBody.of("ushers")), is(true));
+		assertThat(matcher.matches(RequestBody.of("usher")), is(false));
+	}
+
+	@Test
+	public void shouldKeepItsStateAcrossChunks() {
+		ContainsBodyMatcher matcher = new ContainsBodyMatcher("Rowland");
+		byte[] body = "YesRowland Hahaha".getBytes(StandardCharsets.UTF_8);
+		ContainsBodyMatcher.Scan scan = matcher.scan();
+
+		scan.update(body, 0, 6);
+		assertThat(scan.isComplete(), is(false));
+		scan.update(body, 6, body.length - 6);
+		assertThat(scan.isComplete(), is(true));
+	}
+
+	@Test
+	public void shouldMatchLikeContainsStringForEmptyFragmentsAndOtherCharsets() {
+		Charset latin1 = StandardCharsets.ISO_8859_1;
+		byte[] body = "prénom=zoë".getBytes(latin1);
+
+		assertThat(new ContainsBodyMatcher("").matches(RequestBody.of("")), is(true));
+		assertThat(new ContainsBodyMatcher("", "x").matches(RequestBody.of("")), is(false));
+		assertThat(new ContainsBodyMatcher("zoë", "pré").matches(new RequestBody(body, body.length, latin1, null)), is(true));
+		assertThat(new ContainsBodyMatcher("zoe").matches(new RequestBody(body, body.length, latin1, null)), is(false));
+	}
+
+	@Test
+	public void shouldRefuseAnEmptyFragmentList() {
+		assertThrows(IllegalArgumentException.class, () -> new ContainsBodyMatcher());
+	}
+}
@@ -0,0 +1,134 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HttpRequestParserTest {
+
+	@Test
+	public void shouldParseARequestArrivingOneByteAtATime() throws HttpParseException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 1024);
+		byte[] request = "POST /orders/caf%C3%A9?id=1&id=2 HTTP/1.1\r\nHost: localhost\r\nContent-Type: text/plain\r\nX-Multi: a\r\nx-multi: b\r\nContent-Length: 5\r\n\r\nhello".getBytes(StandardCharsets.US_ASCII);
+
+		for (int index = 0; index < request.length - 1; index++) {
+			assertThat(parser.feed(ByteBuffer.wrap(request, index, 1)), is(false));
+		}
+		assertThat(parser.feed(ByteBuffer.wrap(request, request.length - 1, 1)), is(true));
+
+		EngineRequest parsed = parser.toRequest(1);
+		assertThat(parsed.getMethod(), is("POST"));
+		assertThat(parsed.getUri(), is("/orders/café"));
+		assertThat(parsed.getQueryString(), is("id=1&id=2"));
+		assertThat(parsed.getHeaders().get("content-type"), is("text/plain"));
+		assertThat(parsed.getHeaders().get("x-multi"), is("a, b"));
+		assertThat(new String(parsed.getBody(), 0, parsed.getBodyLength(), StandardCharsets.US_ASCII), is("hello"));
+		assertThat(parser.isKeepAlive(), is(true));
+	}
+
+	@Test
+	public void shouldDecodeAChunkedBodyAndStopAtTheNextPipelinedRequest() throws HttpParseException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 1024);
+		ByteBuffer in = ByteBuffer.wrap(("PUT /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n5;name=value\r\nhello\r\n7\r\n, world\r\n0\r\nTrailer: x\r\n\r\n"
+				+ "GET /next HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+		assertThat(parser.feed(in), is(true));
+		EngineRequest parsed = parser.toRequest(1);
+		assertThat(new String(parsed.getBody(), 0, parsed.getBodyLength(), StandardCharsets.US_ASCII), is("hello, world"));
+		assertThat(parser.isKeepAlive(), is(false));
+
+		parser.reset();
+		assertThat(parser.feed(in), is(true));
+		assertThat(parser.toRequest(2).getUri(), is("/next"));
+		assertThat(in.hasRemaining(), is(false));
+	}
+
+	@Test
+	public void shouldOnlyKeepHttp10ConnectionsAliveWhenAsked() throws HttpParseException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 1024);
+		parser.feed(ByteBuffer.wrap("GET / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+		assertThat(parser.isKeepAlive(), is(false));
+
+		parser.reset();
+		parser.feed(ByteBuffer.wrap("GET / HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+		assertThat(parser.isKeepAlive(), is(true));
+	}
+
+	@Test
+	public void shouldWaitToSendContinueUntilTheHeadersAreRead() throws HttpParseException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 1024);
+
+		assertThat(parser.feed(ByteBuffer.wrap("POST / HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 3\r\n\r\n".getBytes(StandardCharsets.US_ASCII))), is(false));
+		assertThat(parser.awaitsContinue(), is(true));
+		parser.continueSent();
+		assertThat(parser.feed(ByteBuffer.wrap("abc".getBytes(StandardCharsets.US_ASCII))), is(true));
+	}
+
+	@Test
+	public void shouldRejectMalformedAndOversizedRequests() {
+		assertThrows(HttpParseException.class, () -> new HttpRequestParser(1024, 1024).feed(ByteBuffer.wrap("GET\r\n".getBytes(StandardCharsets.US_ASCII))));
+		assertThrows(HttpParseException.class, () -> new HttpRequestParser(1024, 1024).feed(ByteBuffer.wrap("GET / HTTP/1.1\r\nbroken\r\n".getBytes(StandardCharsets.US_ASCII))));
+		assertThrows(HttpParseException.class, () -> new HttpRequestParser(1024, 4).feed(ByteBuffer.wrap("POST / HTTP/1.1\r\nContent-Length: 5\r\n\r\n".getBytes(StandardCharsets.US_ASCII))));
+		assertThrows(HttpParseException.class, () -> new HttpRequestParser(16, 1024).feed(ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: a.very.long.host.name\r\n".getBytes(StandardCharsets.US_ASCII))));
+	}
+
+	@Test
+	public void shouldMatchParametersAndHeadersAgainstTheParsedBytes() throws HttpParseException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 1024);
+		parser.feed(ByteBuffer.wrap("GET /search?q=caf%C3%A9&tag=a&tag=b+c&flag&%20name%20=x HTTP/1.1\r\nAccept: text/html\r\nX-Folded: one\r\n  two\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+		EngineRequest parsed = parser.toRequest(1);
+		MockRequest request = new MockRequest(parsed.getMethod(), parsed.getUri(), parsed.getHead(), null);
+		Map<String, List<String>> params = Map.of("q", List.of("café"), "tag", List.of("a", "b c"), "flag", List.of(), "name", List.of("x"));
+
+		assertThat(expectation(params, HeaderPredicate.equalTo("Accept", "text/html")).matches(request), is(true));
+		assertThat(expectation(params, HeaderPredicate.equalTo("X-Folded", "one two")).matches(request), is(true));
+		assertThat(expectation(params, HeaderPredicate.matching("accept", startsWith("text/"))).matches(request), is(true));
+		assertThat(expectation(params, HeaderPredicate.equalTo("Accept", "text/htm")).matches(request), is(false));
+		assertThat(expectation(Map.of("q", List.of("café"), "tag", List.of("b c", "a"), "flag", List.of(), "name", List.of("x"))).matches(request), is(false));
+		assertThat(expectation(Map.of("q", List.of("café"), "tag", List.of("a", "b c"), "name", List.of("x"))).matches(request), is(false));
+		assertThat(expectation(Map.of("q", List.of("café"), "tag", List.of("a", "b c"), "flag", List.of(""), "name", List.of("x"))).matches(request), is(false));
+		assertThat(request.getParameters(), is(params));
+		assertThat(request.getHeaders(), is(Map.of("accept", "text/html", "x-folded", "one two")));
+	}
+
+	@Test
+	public void shouldNotAllocateForTheRequestsOfAConnectionOnceItsBuffersAreSized() throws HttpParseException {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		byte[] bytes = "POST /orders?id=42 HTTP/1.1\r\nHost: localhost\r\nAccept: application/json\r\nContent-Type: application/json\r\nContent-Length: 13\r\n\r\n{\"id\":\"42\"}\n".getBytes(StandardCharsets.US_ASCII);
+		ExpectationIndex index = new ExpectationIndex(List.of(
+				new CompiledExpectation(0, "POST", "/orders", null, List.of(HeaderPredicate.equalTo("accept", "application/json")), Map.of("id", List.of("42")), null, Cardinality.allowing(), new MockResponse(200, ""))));
+		HttpRequestParser parser = new HttpRequestParser(8192, 1024);
+		ByteBuffer in = ByteBuffer.wrap(bytes);
+		int requests = 20_000;
+
+		long allocated = 0;
+		for (int round = 0; round < 2; round++) {
+			long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			for (int request = 0; request < requests; request++) {
+				in.rewind();
+				parser.feed(in);
+				EngineRequest parsed = parser.toRequest(request);
+				if (index.select(new MockRequest(parsed.getMethod(), parsed.getUri(), parsed.getHead(), null)) == null) {
+					throw new AssertionError("unmatched " + request);
+				}
+				parser.reset();
+			}
+			allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		}
+
+		assertThat(allocated / requests < 128, is(true));
+	}
+
+	private static CompiledExpectation expectation(Map<String, List<String>> params, HeaderPredicate... headers) {
+		return new CompiledExpectation(0, "GET", "/search", null, List.of(headers), params, null, Cardinality.allowing(), new MockResponse(200, ""));
+	}
+}
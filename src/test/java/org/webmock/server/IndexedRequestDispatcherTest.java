@@ -0,0 +1,187 @@
+package org.webmock.server;
+
+import org.jmock.api.ExpectationError;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IndexedRequestDispatcherTest {
+	private final Map<String, List<String>> noParams = new HashMap<>();
+
+	@Test
+	public void shouldReturnTheResponseOfTheExpectationMatchingTheUri() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/first", noParams, null, Cardinality.exactly(1), new MockResponse(200, "first")),
+				new CompiledExpectation(1, null, "/second", noParams, null, Cardinality.exactly(1), new MockResponse(201, "second"))));
+
+		MockResponse response = dispatcher.dispatch(request("/second", noParams, null));
+
+		assertThat(response.getStatus(), is(201));
+		assertThat(response.getBody().toString(), is("second"));
+	}
+
+	@Test
+	public void shouldUseTheNextExpectationForTheSameUriOnceTheFirstIsExhausted() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/test", noParams, null, Cardinality.exactly(1), new MockResponse(200, "first")),
+				new CompiledExpectation(1, null, "/test", noParams, null, Cardinality.exactly(1), new MockResponse(200, "second"))));
+
+		assertThat(dispatcher.dispatch(request("/test", noParams, null)).getBody().toString(), is("first"));
+		assertThat(dispatcher.dispatch(request("/test", noParams, null)).getBody().toString(), is("second"));
+		dispatcher.assertIsSatisfied();
+	}
+
+	@Test
+	public void shouldMatchParamsAndBody() {
+		Map<String, List<String>> params = Map.of("id", List.of("1"));
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/test", params, BodyMatchers.matching(containsString("bob")), Cardinality.exactly(1), new MockResponse(200, "matched"))));
+
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/test", params, "alice")));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/test", noParams, "bob")));
+		assertThat(dispatcher.dispatch(request("/test", params, "bob")).getBody().toString(), is("matched"));
+	}
+
+	@Test
+	public void shouldFailWhenInvokedMoreThanExpected() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/test", noParams, null, Cardinality.exactly(1), new MockResponse(200, ""))));
+
+		dispatcher.dispatch(request("/test", noParams, null));
+
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/test", noParams, null)));
+	}
+
+	@Test
+	public void shouldNotBeSatisfiedUntilEveryExpectationIsMet() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/test", noParams, null, Cardinality.exactly(2), new MockResponse(200, ""))));
+
+		dispatcher.dispatch(request("/test", noParams, null));
+
+		assertThrows(ExpectationError.class, dispatcher::assertIsSatisfied);
+	}
+
+	@Test
+	public void shouldAllowAnyNumberOfInvocationsUpToTheMaximum() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/test", noParams, null, Cardinality.between(1, 3), new MockResponse(200, ""))));
+
+		assertThrows(ExpectationError.class, dispatcher::assertIsSatisfied);
+		for (int invocation = 0; invocation < 3; invocation++) {
+			dispatcher.dispatch(request("/test", noParams, null));
+			dispatcher.assertIsSatisfied();
+		}
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/test", noParams, null)));
+	}
+
+	@Test
+	public void shouldCountEveryInvocationWhenDispatchedConcurrently() throws InterruptedException {
+		int threads = 8;
+		int requestsPerThread = 1000;
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/exact", noParams, null, Cardinality.exactly(threads * requestsPerThread), new MockResponse(200, "")),
+				new CompiledExpectation(1, null, "/allowing", noParams, null, Cardinality.atLeast(threads * requestsPerThread), new MockResponse(200, ""))));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		for (int thread = 0; thread < threads; thread++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int request = 0; request < requestsPerThread; request++) {
+					dispatcher.dispatch(request("/exact", noParams, null));
+					dispatcher.dispatch(request("/allowing", noParams, null));
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+
+		dispatcher.assertIsSatisfied();
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/exact", noParams, null)));
+	}
+
+	@Test
+	public void shouldRouteTemplatesAndRegularExpressionsAndExtractTheirVariables() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/orders/latest/items", noParams, null, Cardinality.allowing(), new MockResponse(200, "latest")),
+				new CompiledExpectation(1, null, UriPattern.template("/orders/{id}/items"), noParams, null, Cardinality.allowing(), new MockResponse(200, "items")),
+				new CompiledExpectation(2, null, UriPattern.template("/orders/{id}/items/item-{item}.json"), noParams, null, Cardinality.allowing(), new MockResponse(200, "item")),
+				new CompiledExpectation(3, "GET", UriPattern.regex("/customers/(?<customer>[0-9]+)(/.*)?"), noParams, null, Cardinality.allowing(), new MockResponse(200, "customer"))));
+
+		assertThat(dispatcher.dispatch(request("/orders/latest/items", noParams, null)).getBody().toString(), is("latest"));
+		MockRequest items = request("/orders/42/items", noParams, null);
+		assertThat(dispatcher.dispatch(items).getBody().toString(), is("items"));
+		assertThat(items.getPathVariables(), is(Map.of("id", "42")));
+		MockRequest item = request("/orders/42/items/item-7.json", noParams, null);
+		assertThat(dispatcher.dispatch(item).getBody().toString(), is("item"));
+		assertThat(item.getPathVariables(), is(Map.of("id", "42", "item", "7")));
+		MockRequest customer = request("/customers/9/addresses", noParams, null);
+		assertThat(dispatcher.dispatch(customer).getBody().toString(), is("customer"));
+		assertThat(customer.getPathVariables(), is(Map.of("customer", "9")));
+
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/orders//items", noParams, null)));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/orders/42/items/item-7.xml", noParams, null)));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/customers/bob", noParams, null)));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(new MockRequest("POST", "/customers/9", new HashMap<>(), noParams, (String) null)));
+	}
+
+	@Test
+	public void shouldKeepRegularExpressionsWithAlternationsOrOptionalSlashesAtTheRoot() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, UriPattern.regex("/orders/[0-9]+|/legacy/(?<id>[0-9]+)"), noParams, null, Cardinality.allowing(), new MockResponse(200, "either")),
+				new CompiledExpectation(1, null, UriPattern.regex("/reports/?[a-z]+"), noParams, null, Cardinality.allowing(), new MockResponse(200, "report"))));
+
+		assertThat(dispatcher.dispatch(request("/orders/4", noParams, null)).getBody().toString(), is("either"));
+		MockRequest legacy = request("/legacy/5", noParams, null);
+		assertThat(dispatcher.dispatch(legacy).getBody().toString(), is("either"));
+		assertThat(legacy.getPathVariables(), is(Map.of("id", "5")));
+		assertThat(dispatcher.dispatch(request("/reportsdaily", noParams, null)).getBody().toString(), is("report"));
+		assertThat(dispatcher.dispatch(request("/reports/daily", noParams, null)).getBody().toString(), is("report"));
+	}
+
+	@Test
+	public void shouldPreferTheEarliestExpectationWhetherExactOrPattern() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, UriPattern.template("/orders/{id}"), noParams, null, Cardinality.exactly(1), new MockResponse(200, "template")),
+				new CompiledExpectation(1, null, "/orders/1", noParams, null, Cardinality.allowing(), new MockResponse(200, "exact"))));
+
+		assertThat(dispatcher.dispatch(request("/orders/1", noParams, null)).getBody().toString(), is("template"));
+		assertThat(dispatcher.dispatch(request("/orders/1", noParams, null)).getBody().toString(), is("exact"));
+		dispatcher.assertIsSatisfied();
+	}
+
+	@Test
+	public void shouldMatchTheMethodAndHeaders() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, "PATCH", "/orders/1", null, List.of(HeaderPredicate.equalTo("Content-Type", "application/merge-patch+json")), noParams, null, Cardinality.allowing(), new MockResponse(200, "patched")),
+				new CompiledExpectation(1, "DELETE", "/orders/1", null, List.of(HeaderPredicate.matching("authorization", containsString("admin"))), noParams, null, Cardinality.allowing(), new MockResponse(204, "")),
+				new CompiledExpectation(2, "DELETE", null, UriPattern.template("/orders/{id}"), List.of(), noParams, null, Cardinality.allowing(), new MockResponse(403, ""))));
+
+		assertThat(dispatcher.dispatch(new MockRequest("PATCH", "/orders/1", Map.of("content-type", "application/merge-patch+json"), noParams, "{}")).getBody().toString(), is("patched"));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(new MockRequest("PATCH", "/orders/1", Map.of("content-type", "application/json"), noParams, "{}")));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(new MockRequest("PUT", "/orders/1", Map.of("content-type", "application/merge-patch+json"), noParams, "{}")));
+		assertThat(dispatcher.dispatch(new MockRequest("DELETE", "/orders/1", Map.of("authorization", "admin"), noParams, (String) null)).getStatus(), is(204));
+		assertThat(dispatcher.dispatch(new MockRequest("DELETE", "/orders/1", Map.of(), noParams, (String) null)).getStatus(), is(403));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(new MockRequest("GET", "/orders/1", Map.of(), noParams, (String) null)));
+	}
+
+	private MockRequest request(String uri, Map<String, List<String>> params, String body) {
+		return new MockRequest("GET", uri, new HashMap<>(), params, body);
+	}
+}
@@ -0,0 +1,64 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+
+public class LatencyDistributionsTest {
+	private static final int SAMPLES = 100_000;
+
+	@Test
+	public void shouldKeepUniformDelaysWithinTheirBounds() {
+		long[] delays = sample(LatencyDistributions.uniform(Duration.ofMillis(10), Duration.ofMillis(20)));
+
+		assertThat(delays[0], greaterThanOrEqualTo(Duration.ofMillis(10).toNanos()));
+		assertThat(delays[SAMPLES - 1], lessThanOrEqualTo(Duration.ofMillis(20).toNanos()));
+	}
+
+	@Test
+	public void shouldCentreLogNormalDelaysOnTheMedian() {
+		long[] delays = sample(LatencyDistributions.logNormal(Duration.ofMillis(20), 0.5));
+
+		assertThat(delays[SAMPLES / 2], allOf(greaterThanOrEqualTo(Duration.ofMillis(19).toNanos()), lessThanOrEqualTo(Duration.ofMillis(21).toNanos())));
+	}
+
+	@Test
+	public void shouldFollowTheGivenPercentiles() {
+		long[] delays = sample(LatencyDistributions.percentiles(Map.of(50.0, Duration.ofMillis(20), 99.0, Duration.ofMillis(200), 100.0, Duration.ofSeconds(1))));
+
+		assertThat(delays[SAMPLES / 2], allOf(greaterThanOrEqualTo(Duration.ofMillis(19).toNanos()), lessThanOrEqualTo(Duration.ofMillis(22).toNanos())));
+		assertThat(delays[SAMPLES * 98 / 100], allOf(greaterThanOrEqualTo(Duration.ofMillis(194).toNanos()), lessThanOrEqualTo(Duration.ofMillis(199).toNanos())));
+		assertThat(delays[SAMPLES - 1], lessThanOrEqualTo(Duration.ofSeconds(1).toNanos()));
+	}
+
+	@Test
+	public void shouldReplayARecordedHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Duration.ofMillis(5).toNanos());
+		histogram.record(Duration.ofMillis(5).toNanos());
+		histogram.record(Duration.ofMillis(5).toNanos());
+		histogram.record(Duration.ofMillis(100).toNanos());
+
+		long[] delays = sample(LatencyDistributions.sampling(histogram));
+
+		assertThat(delays[SAMPLES / 2], allOf(greaterThanOrEqualTo(Duration.ofMillis(5).toNanos()), lessThanOrEqualTo(Duration.ofMillis(6).toNanos())));
+		assertThat(delays[SAMPLES - 1], is(Duration.ofMillis(100).toNanos()));
+	}
+
+	private long[] sample(LatencyDistribution distribution) {
+		long[] delays = new long[SAMPLES];
+		for (int sample = 0; sample < SAMPLES; sample++) {
+			delays[sample] = distribution.nextDelayNanos();
+		}
+		Arrays.sort(delays);
+		return delays;
+	}
+}
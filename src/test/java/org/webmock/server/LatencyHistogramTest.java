@@ -0,0 +1,54 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void shouldReportPercentilesWithinTheBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100_000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		assertThat(histogram.getCount(), is(100_000L));
+		assertThat(histogram.getMax(), is(100_000_000L));
+		assertThat(histogram.getMean(), is(50_000_500L));
+		assertThat(histogram.getValueAtPercentile(50), allOf(greaterThanOrEqualTo(50_000_000L), lessThanOrEqualTo(53_125_000L)));
+		assertThat(histogram.getValueAtPercentile(99), allOf(greaterThanOrEqualTo(99_000_000L), lessThanOrEqualTo(100_000_000L)));
+		assertThat(histogram.getValueAtPercentile(100), is(100_000_000L));
+	}
+
+	@Test
+	public void shouldRecordTheLargestDurationInTheLastBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+
+		assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE), is(LatencyHistogram.BUCKETS - 1));
+		assertThat(LatencyHistogram.highestValueOf(LatencyHistogram.BUCKETS - 1), is(Long.MAX_VALUE));
+		assertThat(histogram.getCount(), is(1L));
+		assertThat(histogram.getValueAtPercentile(50), is(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void shouldKeepSmallValuesExactAndCoverTheWholeRange() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(7);
+		histogram.record(-1);
+		histogram.record(Long.MAX_VALUE);
+
+		assertThat(histogram.getValueAtPercentile(34), is(7L));
+		assertThat(histogram.getValueAtPercentile(1), is(0L));
+		assertThat(histogram.getValueAtPercentile(100), is(Long.MAX_VALUE));
+		for (long value = 1; value > 0; value <<= 1) {
+			assertThat(LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value)), greaterThanOrEqualTo(value));
+			assertThat(LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value - 1)), greaterThanOrEqualTo(value - 1));
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class MappedFileResponseBodyTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	public void shouldStreamEveryRegionOfTheFileInOrder() throws IOException {
+		byte[] content = new byte[10_000];
+		new Random(42).nextBytes(content);
+		Path file = Files.write(directory.resolve("payload.bin"), content);
+
+		MappedFileResponseBody body = new MappedFileResponseBody(file, "application/octet-stream", 3_000);
+
+		assertThat(body.getLength(), is(10_000L));
+		assertThat(readAll(body), is(content));
+		assertThat(readAll(body), is(content));
+	}
+
+	@Test
+	public void shouldTakeTheContentTypeFromTheFileExtension() throws IOException {
+		Path file = Files.writeString(directory.resolve("fixture.xml"), "<fixture/>");
+
+		assertThat(MappedFileResponseBody.of(file).getContentType(), is("text/xml"));
+	}
+
+	private byte[] readAll(ResponseBody body) throws IOException {
+		try (InputStream stream = body.openStream()) {
+			return stream.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MismatchLogTest {
+	private final Map<String, List<String>> noParams = new HashMap<>();
+
+	@Test
+	public void shouldKeepTheFirstAndTheMostRecentMismatchesRecordedConcurrently() throws InterruptedException {
+		MismatchLog log = new MismatchLog();
+		int threads = 4;
+		int mismatchesPerThread = 250;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		for (int thread = 0; thread < threads; thread++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int mismatch = 0; mismatch < mismatchesPerThread; mismatch++) {
+					log.record(new MockRequest("GET", "/" + mismatch, new HashMap<>(), noParams, (String) null), new AssertionError());
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+
+		List<Mismatch> recent = log.recent();
+		assertThat(log.getCount(), is((long) threads * mismatchesPerThread));
+		assertThat(log.getFirst().getSequence(), is(0L));
+		assertThat(recent.size(), is(MismatchLog.CAPACITY));
+		for (int index = 0; index < recent.size(); index++) {
+			assertThat(recent.get(index).getSequence(), is((long) threads * mismatchesPerThread - MismatchLog.CAPACITY + index));
+		}
+	}
+
+	@Test
+	public void shouldDescribeTheClosestExpectationOnlyWhenReported() {
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, "GET", "/customers", noParams, null, Cardinality.allowing(), new MockResponse(200, "")),
+				new CompiledExpectation(1, "PUT", "/orders/1", null, List.of(HeaderPredicate.equalTo("Content-Type", "application/json")), noParams, BodyMatchers.containing("shipped"), Cardinality.exactly(1), new MockResponse(200, ""))));
+		MismatchLog log = new MismatchLog();
+		MockRequest request = new MockRequest("PUT", "/orders/1", Map.of("content-type", "text/plain"), noParams, "{\"status\":\"shipped\"}");
+
+		UnexpectedRequestError error = assertThrows(UnexpectedRequestError.class, () -> dispatcher.dispatch(request));
+		assertThat(error.getStackTrace().length, is(0));
+		log.record(request, error);
+		AssertionError report = log.report(dispatcher);
+
+		assertThat(report.getMessage(), containsString("1 request did not match an expectation:\n#0 PUT /orders/1 body \"{\"status\":\"shipped\"}\""));
+		assertThat(report.getMessage(), containsString("closest expectation expected exactly <1>, invoked <0>: PUT /orders/1"));
+		assertThat(report.getMessage(), containsString("header content-type: expected content-type: \"application/json\" but was \"text/plain\""));
+		assertThat(report.getMessage(), not(containsString("method:")));
+		assertThat(report.getCause() == error, is(true));
+	}
+}
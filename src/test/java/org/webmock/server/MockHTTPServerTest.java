@@ -6,18 +6,33 @@ import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
+import com.meterware.httpunit.WebConversation;
+import com.meterware.httpunit.WebResponse;
+import org.xml.sax.SAXException;
 
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.BindException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.shazam.shazamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 public class MockHTTPServerTest {
 	public final int port = 7666;
@@ -163,4 +178,206 @@ public class MockHTTPServerTest {
 		reusingPort = new ServerSocket(port);
 		reusingPort.close();
 	}
+
+	@Test
+	public void shouldServeRequestsOnABoundedWorkerPool() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withBoundedWorkerPool(2, 4);
+		builder.createNewExpectation().withExpectedURI("/pooled").willReturn("pooled");
+		MockHTTPServer server = builder.build(7670);
+		WebResponse response = new WebConversation().getResponse("http://localhost:7670/pooled");
+		assertThat(response.getText(), is("pooled"));
+		assertThat(server.getRunnerStatistics().getRejectedConnections(), is(0L));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldServeAgainOnTheWorkerPoolAfterTheServerIsStoppedAndStarted() throws IOException, SAXException {
+		MockHTTPServerBuilder builder = new MockHTTPServerBuilder().withIndexedMatching().withBoundedWorkerPool(2, 4);
+		builder.createNewExpectation().withExpectedURI("/pooled").willReturn("pooled").willBeInvoked(2);
+		MockHTTPServer server = builder.build(7672);
+		assertThat(new WebConversation().getResponse("http://localhost:7672/pooled").getText(), is("pooled"));
+
+		server.stop();
+		server.start();
+
+		assertThat(new WebConversation().getResponse("http://localhost:7672/pooled").getText(), is("pooled"));
+		assertThat(server.getRunnerStatistics().getRejectedConnections(), is(0L));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldQueueAndThenRejectConnectionsWhenTheWorkerPoolIsFull() throws IOException, InterruptedException {
+		MockHTTPServer server = new MockHTTPServerBuilder().withBoundedWorkerPool(1, 1).build(7671);
+		try (Socket busy = new Socket("localhost", 7671); Socket queued = new Socket("localhost", 7671); Socket rejected = new Socket("localhost", 7671)) {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (server.getRunnerStatistics().getRejectedConnections() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			RunnerStatistics statistics = server.getRunnerStatistics();
+			assertThat(statistics.getActiveConnections(), is(1));
+			assertThat(statistics.getQueueDepth(), is(1));
+			assertThat(statistics.getRejectedConnections(), is(1L));
+		} finally {
+			server.assertThatAllExpectationsAreMet();
+		}
+	}
+
+	@Test
+	public void shouldRefuseVirtualThreadsBeforeJdk21() {
+		assumeFalse(VirtualThreadAsyncRunner.isSupported());
+		assertThrows(UnsupportedOperationException.class, () -> new MockHTTPServerBuilder().withVirtualThreads());
+	}
+
+	@Test
+	public void shouldStartServersInParallelOnEphemeralPorts() throws Exception {
+		int servers = 32;
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<MockHTTPServer>> started = new ArrayList<>();
+		for (int server = 0; server < servers; server++) {
+			started.add(executor.submit(() -> new MockHTTPServerBuilder().withIndexedMatching().buildOnEphemeralPort()));
+		}
+		Set<Integer> ports = new HashSet<>();
+		for (Future<MockHTTPServer> server : started) {
+			MockHTTPServer mockHTTPServer = server.get();
+			ports.add(mockHTTPServer.getListeningPort());
+			assertThat(MockHTTPServer.getServerOnPort(mockHTTPServer.getListeningPort()), is(mockHTTPServer));
+		}
+		executor.shutdown();
+
+		assertThat(ports.size(), is(servers));
+		for (Future<MockHTTPServer> server : started) {
+			int serverPort = server.get().getListeningPort();
+			server.get().assertThatAllExpectationsAreMet();
+			assertThat(MockHTTPServer.getServerOnPort(serverPort) == null, is(true));
+		}
+	}
+
+	@Test
+	public void shouldServePipelinedRequestsInOrderOnOneConnection() throws IOException {
+		MockHTTPServer server = MockHTTPServer.startServer(0, new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/first", new HashMap<>(), null, Cardinality.exactly(1), new MockResponse(200, "one")),
+				new CompiledExpectation(1, null, "/second", new HashMap<>(), null, Cardinality.exactly(1), new MockResponse(200, "two")),
+				new CompiledExpectation(2, null, "/third", new HashMap<>(), null, Cardinality.exactly(1), new MockResponse(200, "three")))));
+		try (Socket socket = new Socket("localhost", server.getListeningPort())) {
+			socket.getOutputStream().write((get("/first") + get("/second") + get("/third")).getBytes(StandardCharsets.US_ASCII));
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+			assertThat(readResponseBody(in), is("one"));
+			assertThat(readResponseBody(in), is("two"));
+			assertThat(readResponseBody(in), is("three"));
+		}
+		server.assertThatAllExpectationsAreMet();
+		ConnectionStatistics connections = server.getConnectionStatistics();
+		assertThat(connections.getOpenedConnections(), is(1L));
+		assertThat(connections.getRequests(), is(3L));
+		assertThat(connections.getReusedRequests(), is(2L));
+		assertThat(connections.getMaxRequestsOnAConnection(), is(3L));
+	}
+
+	@Test
+	public void shouldCloseAConnectionAtTheRequestLimit() throws IOException {
+		MockHTTPServer server = MockHTTPServer.startServer(0, new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, null, "/test", new HashMap<>(), null, Cardinality.allowing(), new MockResponse(200, "ok")))),
+				new ServerConfiguration().withKeepAlive(Duration.ofSeconds(5), 2));
+		try (Socket socket = new Socket("localhost", server.getListeningPort())) {
+			socket.getOutputStream().write((get("/test") + get("/test") + get("/test")).getBytes(StandardCharsets.US_ASCII));
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+			assertThat(readResponseBody(in), is("ok"));
+			assertThat(readResponseBody(in), is("ok"));
+			assertThat(in.readLine() == null, is(true));
+		}
+		server.assertThatAllExpectationsAreMet();
+		assertThat(server.getConnectionStatistics().getRequests(), is(2L));
+		assertThat(server.getConnectionStatistics().getClosedAtRequestLimit(), is(1L));
+	}
+
+	@Test
+	public void shouldCloseAnIdleConnectionAfterTheIdleTimeout() throws IOException {
+		MockHTTPServer server = MockHTTPServer.startServer(0, new IndexedRequestDispatcher(List.of()),
+				new ServerConfiguration().withKeepAlive(Duration.ofMillis(100), 0));
+		try (Socket socket = new Socket("localhost", server.getListeningPort())) {
+			socket.setSoTimeout(5000);
+			long started = System.nanoTime();
+
+			assertThat(socket.getInputStream().read(), is(-1));
+			assertThat(Duration.ofNanos(System.nanoTime() - started).toMillis() < 4000, is(true));
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldAnswerABodyOverTheMaximumSizeWithPayloadTooLargeWithoutReadingIt() throws IOException {
+		MockHTTPServer server = MockHTTPServer.startServer(0, new IndexedRequestDispatcher(List.of(
+				new CompiledExpectation(0, "PUT", "/upload", new HashMap<>(), null, Cardinality.allowing(), new MockResponse(200, "stored")))),
+				new ServerConfiguration().withKeepAlive(Duration.ofSeconds(5), 0));
+		try (Socket socket = new Socket("localhost", server.getListeningPort())) {
+			socket.getOutputStream().write(("PUT /upload HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + Integer.MAX_VALUE + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+			assertThat(in.readLine().trim(), is("HTTP/1.1 413 Payload Too Large"));
+		}
+		try (Socket socket = new Socket("localhost", server.getListeningPort())) {
+			socket.getOutputStream().write("PUT /upload HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nshort".getBytes(StandardCharsets.US_ASCII));
+
+			assertThat(readResponseBody(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))), is("stored"));
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldReportAMismatchRecordedWhileTheServerIsVerified() throws Exception {
+		CountDownLatch dispatching = new CountDownLatch(1);
+		MockHTTPServer server = MockHTTPServer.startServer(0, new RequestDispatcher() {
+			@Override
+			public MockResponse dispatch(MockRequest request) {
+				dispatching.countDown();
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new UnexpectedRequestError(request);
+			}
+
+			@Override
+			public void assertIsSatisfied() {
+			}
+		});
+		ExecutorService client = Executors.newSingleThreadExecutor();
+		try (Socket socket = new Socket("localhost", server.getListeningPort())) {
+			Future<String> answered = client.submit(() -> {
+				socket.getOutputStream().write(get("/unexpected").getBytes(StandardCharsets.US_ASCII));
+				return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+			});
+			dispatching.await();
+
+			AssertionError error = assertThrows(AssertionError.class, server::verify);
+			assertThat(error.getMessage().startsWith("1 request did not match an expectation"), is(true));
+			assertThat(answered.get().trim(), is("HTTP/1.1 500 Internal Server Error"));
+		} finally {
+			client.shutdown();
+			server.stop();
+		}
+	}
+
+	private static String get(String uri) {
+		return "GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n\r\n";
+	}
+
+	private static String readResponseBody(BufferedReader in) throws IOException {
+		int length = 0;
+		String line;
+		while (!(line = in.readLine()).isEmpty()) {
+			if (line.toLowerCase().startsWith("content-length:")) {
+				length = Integer.parseInt(line.substring("content-length:".length()).trim());
+			}
+		}
+		char[] body = new char[length];
+		int read = 0;
+		while (read < length) {
+			read += in.read(body, read, length - read);
+		}
+		return new String(body);
+	}
 }
@@ -0,0 +1,315 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.core.Is.is;
+
+public class NioServerEngineTest {
+	private final Map<String, List<String>> noParams = new HashMap<>();
+
+	@Test
+	public void shouldServeRequestsThroughTheSameExpectations() throws IOException {
+		MockHTTPServer server = start(new ServerConfiguration(),
+				new CompiledExpectation(0, "GET", "/orders", Map.of("id", List.of("7")), null, Cardinality.exactly(1), new MockResponse(200, "order 7")),
+				new CompiledExpectation(1, "PUT", "/orders", noParams, BodyMatchers.containing("shipped"), Cardinality.exactly(1), new MockResponse(201, "updated")),
+				new CompiledExpectation(2, "POST", "/form", Map.of("name", List.of("bob")), null, Cardinality.exactly(1), new MockResponse(200, "form")));
+		String url = "http://localhost:" + server.getListeningPort();
+
+		assertThat(read(new URL(url + "/orders?id=7")), is("order 7"));
+		assertThat(send(url + "/orders", "PUT", "text/plain", "{\"status\":\"shipped\"}"), is("201 updated"));
+		assertThat(send(url + "/form", "POST", "application/x-www-form-urlencoded", "name=bob"), is("200 form"));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldAnswerPipelinedRequestsInOrderAndCloseAtTheRequestLimit() throws IOException {
+		MockHTTPServer server = start(new ServerConfiguration().withKeepAlive(Duration.ofSeconds(5), 3),
+				new CompiledExpectation(0, null, "/first", noParams, null, Cardinality.exactly(1), new MockResponse(200, "one")),
+				new CompiledExpectation(1, null, "/second", noParams, null, Cardinality.exactly(1), new MockResponse(200, "two")),
+				new CompiledExpectation(2, null, "/third", noParams, null, Cardinality.exactly(1), new MockResponse(200, "three")));
+		try (Socket socket = new Socket("localhost", server.getListeningPort())) {
+			socket.getOutputStream().write((get("/first") + get("/second") + get("/third") + get("/first")).getBytes(StandardCharsets.US_ASCII));
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+			assertThat(readResponseBody(in), is("one"));
+			assertThat(readResponseBody(in), is("two"));
+			assertThat(readResponseBody(in), is("three"));
+			assertThat(in.readLine() == null, is(true));
+		}
+		server.assertThatAllExpectationsAreMet();
+		ConnectionStatistics connections = server.getConnectionStatistics();
+		assertThat(connections.getRequests(), is(3L));
+		assertThat(connections.getMaxRequestsOnAConnection(), is(3L));
+		assertThat(connections.getClosedAtRequestLimit(), is(1L));
+	}
+
+	@Test
+	public void shouldStreamChunkedResponses() throws IOException {
+		MockHTTPServer server = start(new ServerConfiguration(),
+				new CompiledExpectation(0, null, "/feed", noParams, null, Cardinality.exactly(1),
+						new MockResponse(200, StreamingResponseBody.ndjson(Duration.ofMillis(5), List.of("{\"n\":1}", "{\"n\":2}", "{\"n\":3}")))));
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getListeningPort() + "/feed").openConnection();
+
+		assertThat(connection.getHeaderField("Transfer-Encoding"), is("chunked"));
+		assertThat(new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8), is("{\"n\":1}\n{\"n\":2}\n{\"n\":3}\n"));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldSendLargeBodiesToASlowReaderWithoutLosingBytes() throws IOException {
+		byte[] payload = new byte[4 * 1024 * 1024];
+		for (int index = 0; index < payload.length; index++) {
+			payload[index] = (byte) index;
+		}
+		MockHTTPServer server = start(new ServerConfiguration(),
+				new CompiledExpectation(0, null, "/large", noParams, null, Cardinality.exactly(1), new MockResponse(200, ByteBufferResponseBody.of(payload, ByteBufferResponseBody.OCTET_STREAM))));
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getListeningPort() + "/large").openConnection();
+
+		assertThat(connection.getContentLengthLong(), is((long) payload.length));
+		assertThat(Arrays.equals(connection.getInputStream().readAllBytes(), payload), is(true));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldAnswerMalformedRequestsWithBadRequest() throws IOException {
+		MockHTTPServer server = start(new ServerConfiguration());
+		try (Socket socket = new Socket("localhost", server.getListeningPort())) {
+			socket.getOutputStream().write("NONSENSE\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+			assertThat(in.readLine(), is("HTTP/1.1 400 Bad Request"));
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldHoldManyIdleConnectionsAndCloseThemAfterTheIdleTimeout() throws IOException, InterruptedException {
+		MockHTTPServer server = start(new ServerConfiguration().withKeepAlive(Duration.ofSeconds(2), 0),
+				new CompiledExpectation(0, null, "/ping", noParams, null, Cardinality.allowing(), new MockResponse(200, "pong")));
+		List<Socket> sockets = new ArrayList<>();
+		try {
+			for (int connection = 0; connection < 2000; connection++) {
+				sockets.add(new Socket("localhost", server.getListeningPort()));
+			}
+			for (Socket socket : sockets) {
+				socket.getOutputStream().write(get("/ping").getBytes(StandardCharsets.US_ASCII));
+			}
+			for (Socket socket : sockets) {
+				assertThat(readResponseBody(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))), is("pong"));
+			}
+			assertThat(server.getConnectionStatistics().getOpenConnections(), is(2000L));
+
+			long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+			while (server.getConnectionStatistics().getOpenConnections() > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(50);
+			}
+			assertThat(server.getConnectionStatistics().getOpenConnections(), is(0L));
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldHoldNoThreadWhileManyResponsesWaitOutTheirDelay() throws IOException, InterruptedException {
+		MockHTTPServer server = start(new ServerConfiguration(),
+				new CompiledExpectation(0, null, "/slow", noParams, null, Cardinality.allowing(),
+						new MockResponse(200, ShapedResponseBody.of(ByteBufferResponseBody.of("late".getBytes(StandardCharsets.UTF_8), null), LatencyDistributions.fixed(Duration.ofSeconds(1)), 0))));
+		List<Socket> sockets = new ArrayList<>();
+		try {
+			long started = System.nanoTime();
+			for (int connection = 0; connection < 500; connection++) {
+				Socket socket = new Socket("localhost", server.getListeningPort());
+				socket.getOutputStream().write(get("/slow").getBytes(StandardCharsets.US_ASCII));
+				sockets.add(socket);
+			}
+			Thread.sleep(300);
+
+			assertThat(threadsRunningWebMock() < 20, is(true));
+			for (Socket socket : sockets) {
+				assertThat(readResponseBody(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))), is("late"));
+			}
+			assertThat(System.nanoTime() - started >= Duration.ofSeconds(1).toNanos(), is(true));
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldThrottleBodiesWithoutHoldingAThreadBetweenSlices() throws IOException, InterruptedException {
+		byte[] payload = new byte[16 * 1024];
+		for (int index = 0; index < payload.length; index++) {
+			payload[index] = (byte) ('a' + index % 26);
+		}
+		MockHTTPServer server = start(new ServerConfiguration(),
+				new CompiledExpectation(0, null, "/throttled", noParams, null, Cardinality.allowing(),
+						new MockResponse(200, ShapedResponseBody.of(ByteBufferResponseBody.of(payload, null), null, 16 * 1024))));
+		List<Socket> sockets = new ArrayList<>();
+		try {
+			long started = System.nanoTime();
+			for (int connection = 0; connection < 200; connection++) {
+				Socket socket = new Socket("localhost", server.getListeningPort());
+				socket.getOutputStream().write(get("/throttled").getBytes(StandardCharsets.US_ASCII));
+				sockets.add(socket);
+			}
+			Thread.sleep(300);
+
+			assertThat(threadsRunningWebMock() < 20, is(true));
+			for (Socket socket : sockets) {
+				assertThat(readResponseBody(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))), is(new String(payload, StandardCharsets.US_ASCII)));
+			}
+			assertThat(System.nanoTime() - started >= Duration.ofMillis(900).toNanos(), is(true));
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldStreamToMoreClientsThanThereAreThreadsWithoutHoldingOnePerStream() throws IOException, InterruptedException {
+		List<String> events = new ArrayList<>();
+		for (int event = 0; event < 10; event++) {
+			events.add("event " + event);
+		}
+		MockHTTPServer server = start(new ServerConfiguration(),
+				new CompiledExpectation(0, null, "/events", noParams, null, Cardinality.allowing(),
+						new MockResponse(200, StreamingResponseBody.serverSentEvents(Duration.ofMillis(30), events))));
+		List<Socket> sockets = new ArrayList<>();
+		try {
+			for (int stream = 0; stream < 200; stream++) {
+				Socket socket = new Socket("localhost", server.getListeningPort());
+				socket.getOutputStream().write("GET /events HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+				sockets.add(socket);
+			}
+			Thread.sleep(150);
+
+			assertThat(threadsRunningWebMock() < 20, is(true));
+			for (Socket socket : sockets) {
+				String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+				assertThat(response, containsString("data: event 9\n\n"));
+				assertThat(response.endsWith("0\r\n\r\n"), is(true));
+			}
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldSendADeferredResponseFromADetachedBody() throws IOException {
+		ResponseBody confinedToTheRenderingWorker = new ResponseBody() {
+			@Override
+			public String getContentType() {
+				return null;
+			}
+
+			@Override
+			public long getLength() {
+				return 4;
+			}
+
+			@Override
+			public InputStream openStream() {
+				throw new IllegalStateException("read after the rendering worker moved on");
+			}
+
+			@Override
+			public ResponseBody detached() {
+				return ByteBufferResponseBody.of("late".getBytes(StandardCharsets.UTF_8), null);
+			}
+		};
+		MockHTTPServer server = start(new ServerConfiguration(),
+				new CompiledExpectation(0, null, "/delayed", noParams, null, Cardinality.exactly(1),
+						new MockResponse(200, ShapedResponseBody.of(confinedToTheRenderingWorker, LatencyDistributions.fixed(Duration.ofMillis(50)), 0))),
+				new CompiledExpectation(1, null, "/throttled", noParams, null, Cardinality.exactly(1),
+						new MockResponse(200, ShapedResponseBody.of(confinedToTheRenderingWorker, null, 1024))));
+		String url = "http://localhost:" + server.getListeningPort();
+
+		assertThat(read(new URL(url + "/delayed")), is("late"));
+		assertThat(read(new URL(url + "/throttled")), is("late"));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	@Test
+	public void shouldServeTheMetricsEndpoint() throws IOException {
+		MockHTTPServer server = start(new ServerConfiguration().withMetricsEndpoint(MockHTTPServer.METRICS_PATH));
+
+		assertThat(read(new URL("http://localhost:" + server.getListeningPort() + MockHTTPServer.METRICS_PATH)), containsString("\"connections\":{\"opened\":1"));
+		server.assertThatAllExpectationsAreMet();
+	}
+
+	private static MockHTTPServer start(ServerConfiguration configuration, CompiledExpectation... expectations) throws IOException {
+		return MockHTTPServer.startServer(0, new IndexedRequestDispatcher(List.of(expectations)), configuration.withEngine(() -> new NioServerEngine(2)));
+	}
+
+	/**
+	 * @return the threads with web-mock code on their stack, an idle pooled worker is not counted while a worker held for a delay is
+	 */
+	private static long threadsRunningWebMock() {
+		return Thread.getAllStackTraces().values().stream()
+				.filter(stack -> Arrays.stream(stack).anyMatch(frame -> frame.getClassName().startsWith("org.webmock.")))
+				.count();
+	}
+
+	private static String read(URL url) throws IOException {
+		return new String(url.openStream().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	private static String send(String url, String method, String contentType, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod(method);
+		connection.setRequestProperty("Content-Type", contentType);
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return connection.getResponseCode() + " " + new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	private static String get(String uri) {
+		return "GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n\r\n";
+	}
+
+	private static String readResponseBody(BufferedReader in) throws IOException {
+		int length = 0;
+		String line;
+		while (!(line = in.readLine()).isEmpty()) {
+			if (line.toLowerCase().startsWith("content-length:")) {
+				length = Integer.parseInt(line.substring("content-length:".length()).trim());
+			}
+		}
+		char[] body = new char[length];
+		int read = 0;
+		while (read < length) {
+			read += in.read(body, read, length - read);
+		}
+		return new String(body);
+	}
+}
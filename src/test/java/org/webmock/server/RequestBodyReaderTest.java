@@ -0,0 +1,24 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class RequestBodyReaderTest {
+
+	@Test
+	public void shouldOnlyPoolSmallBuffers() throws IOException {
+		RequestBodyReader reader = new RequestBodyReader(1024 * 1024);
+		int large = RequestBodyReader.MAX_POOLED_BUFFER_SIZE + 1;
+
+		reader.read(new ByteArrayInputStream(new byte[large]), large, StandardCharsets.UTF_8).release();
+		assertThat(reader.pooled(), is(0));
+		reader.read(new ByteArrayInputStream(new byte[100]), 100, StandardCharsets.UTF_8).release();
+		assertThat(reader.pooled(), is(1));
+	}
+}
@@ -0,0 +1,86 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+public class ResponseCacheTest {
+
+	@Test
+	public void shouldAnswerRequestsCarryingTheSameTemplateInputsFromTheCache() throws IOException {
+		ResponseCache cache = new ResponseCache(1024 * 1024);
+		ResponseTemplate template = ResponseTemplate.compile("{\"id\":{{path.id}},\"q\":\"{{query.q}}\"}", "application/json");
+
+		ResponseBody first = template.forRequest(request("42", "shoes", "a"), cache);
+		ResponseBody again = template.forRequest(request("42", "shoes", "b"), cache);
+		ResponseBody other = template.forRequest(request("43", "shoes", "a"), cache);
+
+		assertThat(again, sameInstance(first));
+		assertThat(read(again), is("{\"id\":42,\"q\":\"shoes\"}"));
+		assertThat(again.getContentType(), is("application/json"));
+		assertThat(read(other), is("{\"id\":43,\"q\":\"shoes\"}"));
+		ResponseCacheStatistics statistics = cache.getStatistics();
+		assertThat(statistics.getHits(), is(1L));
+		assertThat(statistics.getMisses(), is(2L));
+		assertThat(statistics.getEntries(), is(2L));
+	}
+
+	@Test
+	public void shouldEvictTheLeastRecentlyUsedResponsesBeyondItsBound() throws IOException {
+		ResponseCache cache = new ResponseCache(1000);
+		ResponseTemplate template = ResponseTemplate.compile("{{path.id}}" + "x".repeat(200));
+
+		template.forRequest(request("1", "", ""), cache);
+		template.forRequest(request("2", "", ""), cache);
+		template.forRequest(request("3", "", ""), cache);
+		template.forRequest(request("1", "", ""), cache);
+		template.forRequest(request("4", "", ""), cache);
+
+		ResponseCacheStatistics statistics = cache.getStatistics();
+		assertThat(statistics.getEvictions(), is(1L));
+		assertThat(statistics.getEntries(), is(3L));
+		assertThat(statistics.getBytes() <= 1000, is(true));
+		template.forRequest(request("1", "", ""), cache);
+		template.forRequest(request("2", "", ""), cache);
+		assertThat(cache.getStatistics().getHits(), is(2L));
+		assertThat(cache.getStatistics().getMisses(), is(5L));
+	}
+
+	@Test
+	public void shouldKeyScriptedTemplatesOnTheWholeRequestAndKeepItsOwnCopyOfIt() throws IOException {
+		ResponseCache cache = new ResponseCache(1024 * 1024);
+		ResponseTemplate template = ResponseTemplate.compile("{{script: request.getHeaders().get('x-user') + '/' + path.get('id')}}");
+		Map<String, String> headers = new HashMap<>(Map.of("x-user", "bob"));
+		MockRequest request = new MockRequest("GET", "/orders/1", headers, Map.of(), (String) null);
+		request.setPathVariables(Map.of("id", "1"));
+
+		assertThat(read(template.forRequest(request, cache)), is("bob/1"));
+		headers.clear();
+		MockRequest same = new MockRequest("GET", "/orders/1", Map.of("x-user", "bob"), Map.of(), (String) null);
+		same.setPathVariables(Map.of("id", "1"));
+		MockRequest otherUser = new MockRequest("GET", "/orders/1", Map.of("x-user", "alice"), Map.of(), (String) null);
+		otherUser.setPathVariables(Map.of("id", "1"));
+
+		assertThat(read(template.forRequest(same, cache)), is("bob/1"));
+		assertThat(read(template.forRequest(otherUser, cache)), is("alice/1"));
+		assertThat(cache.getStatistics().getHits(), is(1L));
+	}
+
+	private static MockRequest request(String id, String query, String trace) {
+		MockRequest request = new MockRequest("GET", "/orders/" + id, Map.of("x-trace", trace), Map.of("q", List.of(query)), (String) null);
+		request.setPathVariables(Map.of("id", id));
+		return request;
+	}
+
+	private static String read(ResponseBody body) throws IOException {
+		return new String(body.openStream().readAllBytes(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,59 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ResponseTemplateTest {
+
+	@Test
+	public void shouldEchoThePartsOfTheRequest() throws IOException {
+		ResponseTemplate template = ResponseTemplate.compile("{\"id\":\"{{path.id}}\",\"q\":\"{{query.q}}\",\"trace\":\"{{header.X-Trace}}\",\"request\":\"{{method}} {{uri}}\",\"echo\":{{body}}}", "application/json");
+		MockRequest request = new MockRequest("POST", "/orders/42", Map.of("x-trace", "abc"), Map.of("q", List.of("first", "second")), "{\"n\":1}");
+		request.setPathVariables(Map.of("id", "42"));
+
+		ResponseBody rendered = template.forRequest(request);
+
+		assertThat(rendered.getContentType(), is("application/json"));
+		assertThat(read(rendered), is("{\"id\":\"42\",\"q\":\"first\",\"trace\":\"abc\",\"request\":\"POST /orders/42\",\"echo\":{\"n\":1}}"));
+		assertThat(rendered.getLength(), is((long) read(rendered).getBytes(StandardCharsets.UTF_8).length));
+	}
+
+	@Test
+	public void shouldRenderMissingValuesAsNothingAndEncodeAsUtf8() throws IOException {
+		ResponseTemplate template = ResponseTemplate.compile("[{{query.missing}}{{header.missing}}{{path.missing}}{{body}}] héllo {{query.name}}");
+		MockRequest request = new MockRequest("GET", "/", Map.of(), Map.of("name", List.of("wörld 😀")), (String) null);
+
+		ResponseBody rendered = template.forRequest(request);
+
+		assertThat(read(rendered), is("[] héllo wörld 😀"));
+		assertThat(rendered.getLength(), is((long) "[] héllo wörld 😀".getBytes(StandardCharsets.UTF_8).length));
+	}
+
+	@Test
+	public void shouldEvaluateScriptsWithTheRequestInScope() throws IOException {
+		ResponseTemplate template = ResponseTemplate.compile("{{script: path.get('id') * 2}} {{script: request.getMethod().toLowerCase()}}{{script: undefined}}");
+		MockRequest request = new MockRequest("GET", "/orders/21", Map.of(), Map.of(), (String) null);
+		request.setPathVariables(Map.of("id", "21"));
+
+		assertThat(read(template.forRequest(request)), is("42 get"));
+	}
+
+	@Test
+	public void shouldRejectBadTemplatesWhenCompiled() {
+		assertThrows(IllegalArgumentException.class, () -> ResponseTemplate.compile("{{path.id"));
+		assertThrows(IllegalArgumentException.class, () -> ResponseTemplate.compile("{{cookie.id}}"));
+		assertThrows(IllegalArgumentException.class, () -> ResponseTemplate.compile("{{script: (}}"));
+	}
+
+	private static String read(ResponseBody body) throws IOException {
+		return new String(body.openStream().readAllBytes(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,109 @@
+package org.webmock.server;
+
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ScenarioTest {
+	private final Map<String, List<String>> noParams = new HashMap<>();
+
+	@Test
+	public void shouldAnswerTheSameUriDifferentlyInEachStateOfTheScenario() {
+		Scenario cart = new Scenario("cart");
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				expectation(0, "GET", "/cart", Cardinality.allowing(), "empty", cart.step(Scenario.STARTED, null)),
+				expectation(1, "POST", "/cart", Cardinality.allowing(), "added", cart.step(null, "filled")),
+				expectation(2, "GET", "/cart", Cardinality.allowing(), "one item", cart.step("filled", null))));
+
+		assertThat(body(dispatcher, "GET", "/cart"), is("empty"));
+		assertThat(cart.getState(), is(Scenario.STARTED));
+		assertThat(body(dispatcher, "POST", "/cart"), is("added"));
+		assertThat(cart.getState(), is("filled"));
+		assertThat(body(dispatcher, "GET", "/cart"), is("one item"));
+		assertThat(body(dispatcher, "POST", "/cart"), is("added"));
+		assertThat(body(dispatcher, "GET", "/cart"), is("one item"));
+	}
+
+	@Test
+	public void shouldOnlyMatchTheStepsOfASequenceInOrder() {
+		Sequence session = new Sequence("session");
+		IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+				expectation(0, "POST", "/login", Cardinality.exactly(1), "token", session.nextStep()),
+				expectation(1, "GET", "/orders", Cardinality.allowing(), "orders", session.nextStep()),
+				expectation(2, "GET", "/audit", Cardinality.atMost(1), "audit", session.nextStep()),
+				expectation(3, "POST", "/logout", Cardinality.exactly(1), "bye", session.nextStep())));
+
+		MockRequest early = request("POST", "/logout");
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(early));
+		StringDescription mismatch = new StringDescription();
+		dispatcher.describeMismatch(early, mismatch);
+		assertThat(mismatch.toString(), containsString("POST /logout as step <3> of sequence session\n      sequence session: step <3> out of order, the sequence is at step <0> which is not yet satisfied"));
+
+		assertThat(body(dispatcher, "POST", "/login"), is("token"));
+		assertThat(body(dispatcher, "GET", "/orders"), is("orders"));
+		assertThat(body(dispatcher, "GET", "/orders"), is("orders"));
+		assertThat(body(dispatcher, "POST", "/logout"), is("bye"));
+		assertThat(session.getPosition(), is(3));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("GET", "/orders")));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("GET", "/audit")));
+		dispatcher.assertIsSatisfied();
+	}
+
+	@Test
+	public void shouldMoveTheScenarioOnlyOnceWhenClientsRaceForTheSameTransition() throws InterruptedException {
+		int threads = 8;
+		int rounds = 200;
+		Map<String, AtomicInteger> answers = new ConcurrentHashMap<>();
+		for (int round = 0; round < rounds; round++) {
+			Scenario payment = new Scenario("payment");
+			IndexedRequestDispatcher dispatcher = new IndexedRequestDispatcher(List.of(
+					expectation(0, "POST", "/pay", Cardinality.allowing(), "paid", payment.step(Scenario.STARTED, "paid")),
+					expectation(1, "POST", "/pay", Cardinality.allowing(), "already paid", payment.step("paid", null))));
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			CountDownLatch start = new CountDownLatch(1);
+			for (int thread = 0; thread < threads; thread++) {
+				executor.execute(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					answers.computeIfAbsent(body(dispatcher, "POST", "/pay"), answer -> new AtomicInteger()).incrementAndGet();
+				});
+			}
+			start.countDown();
+			executor.shutdown();
+			executor.awaitTermination(30, TimeUnit.SECONDS);
+			assertThat(payment.getState(), is("paid"));
+		}
+
+		assertThat(answers.get("paid").get(), is(rounds));
+		assertThat(answers.get("already paid").get(), is(rounds * (threads - 1)));
+	}
+
+	private CompiledExpectation expectation(int ordinal, String method, String uri, Cardinality cardinality, String body, ScenarioStep step) {
+		return new CompiledExpectation(ordinal, method, uri, null, List.of(), noParams, null, cardinality, new MockResponse(200, body), step);
+	}
+
+	private String body(RequestDispatcher dispatcher, String method, String uri) {
+		return dispatcher.dispatch(request(method, uri)).getBody().toString();
+	}
+
+	private MockRequest request(String method, String uri) {
+		return new MockRequest(method, uri, new HashMap<>(), noParams, (String) null);
+	}
+}
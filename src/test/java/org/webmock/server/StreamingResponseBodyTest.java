@@ -0,0 +1,92 @@
+package org.webmock.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StreamingResponseBodyTest {
+
+	@Test
+	public void shouldFormatServerSentEventsAndNdjson() throws IOException {
+		String events = read(StreamingResponseBody.serverSentEvents(Duration.ZERO, List.of("first", "two\nlines")).openStream());
+		String lines = read(StreamingResponseBody.ndjson(Duration.ZERO, List.of("{\"n\":1}", "{\"n\":2}")).openStream());
+
+		assertThat(events, is("data: first\n\ndata: two\ndata: lines\n\n"));
+		assertThat(lines, is("{\"n\":1}\n{\"n\":2}\n"));
+	}
+
+	@Test
+	public void shouldReturnOneChunkPerReadAndRestartForEveryResponse() throws IOException {
+		StreamingResponseBody body = StreamingResponseBody.drip("abcdefg".getBytes(StandardCharsets.UTF_8), "text/plain", 3, Duration.ofMillis(1));
+		byte[] buffer = new byte[16];
+
+		for (int response = 0; response < 2; response++) {
+			try (InputStream stream = body.openStream()) {
+				assertThat(stream.read(buffer, 0, buffer.length), is(3));
+				assertThat(stream.read(buffer, 0, buffer.length), is(3));
+				assertThat(stream.read(buffer, 0, buffer.length), is(1));
+				assertThat(stream.read(buffer, 0, buffer.length), is(-1));
+			}
+		}
+	}
+
+	@Test
+	public void shouldStopProducingWhileTheClientIsBehind() throws IOException, InterruptedException {
+		AtomicLong produced = new AtomicLong();
+		StreamingResponseBody body = StreamingResponseBody.of("text/plain", Duration.ZERO, 2, index -> {
+			produced.incrementAndGet();
+			return index < 1000 ? new byte[]{'x'} : null;
+		});
+
+		try (InputStream stream = body.openStream()) {
+			TimeUnit.MILLISECONDS.sleep(100);
+			assertThat(produced.get(), lessThanOrEqualTo(3L));
+			assertThat(read(stream).length(), is(1000));
+		}
+		assertThat(produced.get(), is(1001L));
+	}
+
+	@Test
+	public void shouldStopTheProducerWhenTheStreamIsClosed() throws IOException, InterruptedException {
+		AtomicLong produced = new AtomicLong();
+		StreamingResponseBody body = StreamingResponseBody.of("text/plain", Duration.ofMillis(5), 1000, index -> {
+			produced.incrementAndGet();
+			return new byte[]{'x'};
+		});
+
+		InputStream stream = body.openStream();
+		stream.read();
+		stream.close();
+		long afterClose = produced.get();
+		TimeUnit.MILLISECONDS.sleep(50);
+
+		assertThat(produced.get(), lessThanOrEqualTo(afterClose + 1));
+	}
+
+	@Test
+	public void shouldFailTheStreamWhenTheProducerThrows() {
+		StreamingResponseBody body = StreamingResponseBody.of("text/plain", Duration.ZERO, index -> {
+			if (index == 1) {
+				throw new IllegalStateException("feed broken");
+			}
+			return new byte[]{'x'};
+		});
+
+		assertThrows(IOException.class, () -> read(body.openStream()));
+	}
+
+	private static String read(InputStream stream) throws IOException {
+		return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+	}
+}
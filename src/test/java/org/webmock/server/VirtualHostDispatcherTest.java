@@ -0,0 +1,71 @@
+package org.webmock.server;
+
+import org.hamcrest.StringDescription;
+import org.jmock.api.ExpectationError;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.shazam.shazamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VirtualHostDispatcherTest {
+	private final Map<String, List<String>> noParams = new HashMap<>();
+
+	@Test
+	public void shouldRouteByHostThenByTheLongestPathPrefixAndStripThePrefix() {
+		VirtualHostDispatcher dispatcher = new VirtualHostDispatcher(dispatcher("/users", "default"),
+				List.of(new VirtualHost("users.local", dispatcher("/users", "users host"))),
+				List.of(new VirtualHost("/billing", dispatcher("/invoices", "billing")),
+						new VirtualHost("/billing/v2", new IndexedRequestDispatcher(List.of(
+								new CompiledExpectation(0, null, UriPattern.template("/invoices/{id}"), noParams, null, Cardinality.allowing(), new MockResponse(200, "billing v2")))))));
+
+		assertThat(body(dispatcher, "/users", "localhost:8080"), is("default"));
+		assertThat(body(dispatcher, "/users", "USERS.local:8080"), is("users host"));
+		assertThat(body(dispatcher, "/billing/invoices", "localhost"), is("billing"));
+		MockRequest v2 = request("/billing/v2/invoices/7", "localhost");
+		assertThat(dispatcher.dispatch(v2).getBody().toString(), is("billing v2"));
+		assertThat(v2.getPathVariables(), is(Map.of("id", "7")));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/billingservice/invoices", "localhost")));
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(request("/users", "users.local")));
+	}
+
+	@Test
+	public void shouldVerifyEachVirtualHostOnItsOwn() {
+		VirtualHost users = new VirtualHost("users.local", dispatcher("/users", "users"));
+		VirtualHost billing = new VirtualHost("/billing", dispatcher("/invoices", "billing"));
+		VirtualHostDispatcher dispatcher = new VirtualHostDispatcher(new IndexedRequestDispatcher(List.of()), List.of(users), List.of(billing));
+
+		body(dispatcher, "/users", "users.local");
+		MockRequest wrong = request("/billing/receipts", "localhost");
+		assertThrows(AssertionError.class, () -> dispatcher.dispatch(wrong));
+
+		users.assertThatAllExpectationsAreMet();
+		AssertionError report = assertThrows(AssertionError.class, billing::assertThatAllExpectationsAreMet);
+		assertThat(report.getMessage(), containsString("#0 GET /receipts\n    closest expectation expected exactly <1>, invoked <0>: ANY /invoices"));
+		assertThat(billing.getMismatches().size(), is(1));
+		assertThat(users.getMismatches().size(), is(0));
+		StringDescription description = new StringDescription();
+		dispatcher.describeMismatch(wrong, description);
+		assertThat(description.toString(), containsString("virtual host /billing: closest expectation"));
+		assertThrows(ExpectationError.class, dispatcher::assertIsSatisfied);
+	}
+
+	private IndexedRequestDispatcher dispatcher(String uri, String body) {
+		return new IndexedRequestDispatcher(List.of(new CompiledExpectation(0, null, uri, noParams, null, Cardinality.exactly(1), new MockResponse(200, body))));
+	}
+
+	private String body(RequestDispatcher dispatcher, String uri, String host) {
+		return dispatcher.dispatch(request(uri, host)).getBody().toString();
+	}
+
+	private MockRequest request(String uri, String host) {
+		Map<String, String> headers = new HashMap<>();
+		headers.put("host", host);
+		return new MockRequest("GET", uri, headers, noParams, (String) null);
+	}
+}